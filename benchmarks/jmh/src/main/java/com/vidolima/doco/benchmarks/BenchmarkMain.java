@@ -0,0 +1,43 @@
+package com.vidolima.doco.benchmarks;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the allocation profiler, writes the JMH results to {@code jmh-result.json} and prints the
+ * ops/s and the bytes/op of each benchmark and shape. The JMH command line options are accepted, e.g.
+ * {@code -p shape=FLAT,DEEP} or {@code -f 1}.
+ */
+public final class BenchmarkMain {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder().parent(new CommandLineOptions(args))
+            .include(ConversionBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class)
+            .resultFormat(ResultFormatType.JSON).result("jmh-result.json").build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println(String.format("%-14s %-12s %16s %14s", "Benchmark", "Shape", "ops/s", "bytes/op"));
+        for (RunResult result : results) {
+            String benchmark = result.getParams().getBenchmark();
+            Result<?> allocation = result.getSecondaryResults().get(ALLOCATION);
+            System.out.println(String.format("%-14s %-12s %16.1f %14.1f",
+                benchmark.substring(benchmark.lastIndexOf('.') + 1), result.getParams().getParam("shape"),
+                result.getPrimaryResult().getScore(), allocation == null ? Double.NaN : allocation.getScore()));
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.vidolima.doco.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.appengine.api.search.Document;
+import com.vidolima.doco.Doco;
+
+/**
+ * Measures {@link Doco#toDocument(Object)} and {@link Doco#fromDocument(Document, Class)} for each of the
+ * {@link Shapes}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ConversionBenchmark {
+
+    @Param
+    Shapes shape;
+
+    private Doco doco;
+    private Object object;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        doco = new Doco();
+        object = shape.create();
+        document = doco.toDocument(object);
+    }
+
+    @Benchmark
+    public Document toDocument() {
+        return doco.toDocument(object);
+    }
+
+    @Benchmark
+    public Object fromDocument() {
+        return doco.fromDocument(document, shape.getType());
+    }
+}
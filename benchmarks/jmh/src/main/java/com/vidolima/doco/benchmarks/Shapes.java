@@ -0,0 +1,247 @@
+package com.vidolima.doco.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.search.GeoPoint;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.FacetType;
+import com.vidolima.doco.annotation.FieldType;
+
+/**
+ * The shapes of the benchmarked classes, each one stressing a different part of the conversion.
+ */
+public enum Shapes {
+
+    /**
+     * One field of each type, like the Foo of the tests.
+     */
+    FLAT(Flat.class) {
+        @Override
+        Object create() {
+            Flat flat = new Flat();
+            flat.id = 1L;
+            flat.text = "Text field declaration with name and type";
+            flat.atom = "atom";
+            flat.html = "<html><title>Doco</title><body>Doco benchmark</body></html>";
+            flat.number = 1986d;
+            flat.date = new Date(1420070400000L);
+            flat.geoPoint = new GeoPoint(-23.5, -46.6);
+            return flat;
+        }
+    },
+
+    /**
+     * Many fields of a few types.
+     */
+    WIDE(Wide.class) {
+        @Override
+        Object create() {
+            Wide wide = new Wide();
+            wide.id = 1L;
+            wide.t0 = wide.t1 = wide.t2 = wide.t3 = wide.t4 = wide.t5 = wide.t6 = wide.t7 = "some words of text";
+            wide.t8 = wide.t9 = wide.t10 = wide.t11 = wide.t12 = wide.t13 = wide.t14 = wide.t15 = "more text";
+            wide.n0 = wide.n1 = wide.n2 = wide.n3 = wide.n4 = wide.n5 = wide.n6 = wide.n7 = 42d;
+            wide.n8 = wide.n9 = wide.n10 = wide.n11 = wide.n12 = wide.n13 = wide.n14 = wide.n15 = 7;
+            return wide;
+        }
+    },
+
+    /**
+     * A chain of embedded objects.
+     */
+    DEEP(Deep.class) {
+        @Override
+        Object create() {
+            Deep deep = new Deep();
+            deep.id = 1L;
+            deep.name = "root";
+            deep.level1 = new Level1();
+            deep.level1.name = "level 1";
+            deep.level1.level2 = new Level2();
+            deep.level1.level2.name = "level 2";
+            deep.level1.level2.level3 = new Level3();
+            deep.level1.level2.level3.name = "level 3";
+            deep.level1.level2.level3.level4 = new Level4();
+            deep.level1.level2.level3.level4.name = "level 4";
+            deep.level1.level2.level3.level4.number = 4;
+            return deep;
+        }
+    },
+
+    /**
+     * A large multi-valued field.
+     */
+    COLLECTION(WithCollection.class) {
+        @Override
+        Object create() {
+            WithCollection withCollection = new WithCollection();
+            withCollection.id = 1L;
+            withCollection.tags = new ArrayList<String>();
+            for (int i = 0; i < 500; i++) {
+                withCollection.tags.add("tag" + i);
+            }
+            return withCollection;
+        }
+    },
+
+    /**
+     * Fields which are also facets.
+     */
+    FACETS(WithFacets.class) {
+        @Override
+        Object create() {
+            WithFacets withFacets = new WithFacets();
+            withFacets.id = 1L;
+            withFacets.category = "books";
+            withFacets.brand = "doco";
+            withFacets.price = 19.9;
+            withFacets.stock = 12;
+            return withFacets;
+        }
+    },
+
+    /**
+     * Enum fields, converted by name.
+     */
+    ENUMS(WithEnums.class) {
+        @Override
+        Object create() {
+            WithEnums withEnums = new WithEnums();
+            withEnums.id = 1L;
+            withEnums.status = Status.ACTIVE;
+            withEnums.previousStatus = Status.PENDING;
+            withEnums.origin = Status.ARCHIVED;
+            return withEnums;
+        }
+    };
+
+    private final Class<?> type;
+
+    private Shapes(Class<?> type) {
+        this.type = type;
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return a new object of the shape
+     */
+    abstract Object create();
+
+    @DocumentIndex
+    static class Flat {
+        @DocumentId
+        Long id;
+        @DocumentField(type = FieldType.TEXT)
+        String text;
+        @DocumentField(type = FieldType.ATOM)
+        String atom;
+        @DocumentField(type = FieldType.HTML)
+        String html;
+        @DocumentField(type = FieldType.NUMBER)
+        Double number;
+        @DocumentField(type = FieldType.DATE)
+        Date date;
+        @DocumentField(type = FieldType.GEO_POINT)
+        GeoPoint geoPoint;
+    }
+
+    @DocumentIndex
+    static class Wide {
+        @DocumentId
+        Long id;
+        @DocumentField String t0, t1, t2, t3, t4, t5, t6, t7, t8, t9, t10, t11, t12, t13, t14, t15;
+        @DocumentField(type = FieldType.NUMBER) double n0, n1, n2, n3, n4, n5, n6, n7;
+        @DocumentField(type = FieldType.NUMBER) int n8, n9, n10, n11, n12, n13, n14, n15;
+    }
+
+    @DocumentIndex
+    static class Deep {
+        @DocumentId
+        Long id;
+        @DocumentField
+        String name;
+        @DocumentEmbed
+        Level1 level1;
+    }
+
+    static class Level1 {
+        @DocumentField
+        String name;
+        @DocumentEmbed
+        Level2 level2;
+    }
+
+    static class Level2 {
+        @DocumentField
+        String name;
+        @DocumentEmbed
+        Level3 level3;
+    }
+
+    static class Level3 {
+        @DocumentField
+        String name;
+        @DocumentEmbed
+        Level4 level4;
+    }
+
+    static class Level4 {
+        @DocumentField
+        String name;
+        @DocumentField(type = FieldType.NUMBER)
+        long number;
+    }
+
+    @DocumentIndex
+    static class WithCollection {
+        @DocumentId
+        Long id;
+        @DocumentCollection(type = DocumentCollectionType.ARRAYLIST, fieldType = FieldType.ATOM)
+        List<String> tags;
+    }
+
+    @DocumentIndex
+    static class WithFacets {
+        @DocumentId
+        Long id;
+        @DocumentField(type = FieldType.ATOM)
+        @FacetField(type = FacetType.ATOM)
+        String category;
+        @DocumentField(type = FieldType.ATOM)
+        @FacetField(type = FacetType.ATOM)
+        String brand;
+        @DocumentField(type = FieldType.NUMBER)
+        @FacetField(type = FacetType.NUMBER)
+        double price;
+        @DocumentField(type = FieldType.NUMBER)
+        @FacetField(type = FacetType.NUMBER)
+        int stock;
+    }
+
+    enum Status {
+        PENDING, ACTIVE, ARCHIVED
+    }
+
+    @DocumentIndex
+    static class WithEnums {
+        @DocumentId
+        Long id;
+        @DocumentField(type = FieldType.ATOM)
+        Status status;
+        @DocumentField(type = FieldType.ATOM)
+        Status previousStatus;
+        @DocumentField(type = FieldType.ATOM)
+        Status origin;
+    }
+}
@@ -0,0 +1,269 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.annotation.PrefixField;
+
+/**
+ * The compiled mapping of a class: all the annotated fields found in the class (and in its super classes when
+ * annotated with {@link DocumentIndexSubClass}) with their names and types already resolved.
+ *
+ * The mapping is built from the mapper generated at compile time for the class when there is one (see
+ * {@link DocoMapper}), otherwise from the annotations read through reflection. Instances are immutable and therefore
+ * can be shared between threads. Use {@link MappingRegistry} to obtain them.
+ */
+final class ClassMapping {
+
+    private final Class<?> type;
+    private final String indexName;
+    private final String discriminator;
+    private final List<Class<?>> subclasses;
+    private final Instantiator instantiator;
+    private final List<FieldAccessor> idFields;
+    private final List<FieldMapping> fields;
+    private final FieldSlots slots;
+    private final List<FacetMapping> facets;
+    private final List<PrefixMapping> prefixes;
+    private final List<NestedMapping> refs;
+    private final List<NestedMapping> embeds;
+
+    private ClassMapping(Class<?> type, String indexName, String discriminator, List<Class<?>> subclasses,
+        Instantiator instantiator, List<FieldAccessor> idFields, List<FieldMapping> fields, List<FacetMapping> facets,
+        List<PrefixMapping> prefixes, List<NestedMapping> refs, List<NestedMapping> embeds) {
+        this.type = type;
+        this.indexName = indexName;
+        this.discriminator = discriminator;
+        this.subclasses = Collections.unmodifiableList(subclasses);
+        this.instantiator = instantiator;
+        this.idFields = Collections.unmodifiableList(idFields);
+        this.fields = Collections.unmodifiableList(fields);
+        this.slots = new FieldSlots(fields);
+        this.facets = Collections.unmodifiableList(facets);
+        this.prefixes = Collections.unmodifiableList(prefixes);
+        this.refs = Collections.unmodifiableList(refs);
+        this.embeds = Collections.unmodifiableList(embeds);
+    }
+
+    /**
+     * Reads the Doco annotations of the given class and creates its mapping, with the default converters.
+     *
+     * @param classOfObj
+     *            the class to be mapped
+     * @return the {@link ClassMapping} of the class
+     */
+    static ClassMapping create(Class<?> classOfObj) {
+        return create(classOfObj, ConverterRegistry.getDefault());
+    }
+
+    /**
+     * Reads the Doco annotations of the given class and creates its mapping.
+     *
+     * @param classOfObj
+     *            the class to be mapped
+     * @param converters
+     *            the registry where the converters of the fields are resolved
+     * @return the {@link ClassMapping} of the class
+     */
+    static ClassMapping create(Class<?> classOfObj, ConverterRegistry converters) {
+        List<FieldAccessor> idFields = new ArrayList<FieldAccessor>(1);
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, DocumentId.class)) {
+            idFields.add(FieldAccessor.create(f));
+        }
+
+        List<FieldMapping> fields = new ArrayList<FieldMapping>();
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, DocumentField.class)) {
+            fields.add(FieldMapping.forDocumentField(f));
+        }
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, DocumentCollection.class)) {
+            fields.add(FieldMapping.forDocumentCollection(f));
+        }
+
+        List<FacetMapping> facets = new ArrayList<FacetMapping>();
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, FacetField.class)) {
+            facets.add(FacetMapping.forFacetField(f));
+        }
+
+        List<PrefixMapping> prefixes = new ArrayList<PrefixMapping>();
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, PrefixField.class)) {
+            prefixes.add(PrefixMapping.forPrefixField(f));
+        }
+
+        List<NestedMapping> refs = new ArrayList<NestedMapping>();
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, DocumentRef.class)) {
+            refs.add(NestedMapping.forRef(f));
+        }
+
+        List<NestedMapping> embeds = new ArrayList<NestedMapping>();
+        for (java.lang.reflect.Field f : ReflectionUtils.getAnnotatedFields(classOfObj, DocumentEmbed.class)) {
+            embeds.add(NestedMapping.forEmbed(f));
+        }
+
+        String indexName = null;
+        if (classOfObj.isAnnotationPresent(DocumentIndex.class)
+            || classOfObj.isAnnotationPresent(DocumentIndexSubClass.class)) {
+            indexName = ObjectParser.getIndexName(classOfObj);
+        }
+
+        return new ClassMapping(classOfObj, indexName, getDiscriminator(classOfObj),
+            Collections.<Class<?>> emptyList(), Instantiator.create(classOfObj), idFields,
+            sortFields(fields, converters), facets, prefixes, refs, embeds);
+    }
+
+    /**
+     * Creates the mapping described by a mapper generated at compile time, with the default converters.
+     *
+     * @param mapper
+     *            the generated {@link DocoMapper}
+     * @return the {@link ClassMapping} of the mapped class
+     */
+    static ClassMapping create(DocoMapper<?> mapper) {
+        return create(mapper, ConverterRegistry.getDefault());
+    }
+
+    /**
+     * Creates the mapping described by a mapper generated at compile time. No annotation is read and no reflection is
+     * used to access the fields of the class.
+     *
+     * @param mapper
+     *            the generated {@link DocoMapper}
+     * @param converters
+     *            the registry where the converters of the fields are resolved
+     * @return the {@link ClassMapping} of the mapped class
+     */
+    static ClassMapping create(DocoMapper<?> mapper, ConverterRegistry converters) {
+        return new ClassMapping(mapper.getType(), mapper.getIndexName(), mapper.getDiscriminator(),
+            new ArrayList<Class<?>>(mapper.getSubclasses()), Instantiator.create(mapper),
+            new ArrayList<FieldAccessor>(mapper.getIdFields()), sortFields(mapper.getFields(), converters),
+            new ArrayList<FacetMapping>(mapper.getFacets()), new ArrayList<PrefixMapping>(mapper.getPrefixes()),
+            new ArrayList<NestedMapping>(mapper.getRefs()), new ArrayList<NestedMapping>(mapper.getEmbeds()));
+    }
+
+    /**
+     * @return the discriminator declared with {@link DocumentIndexSubClass}, or the simple name of the class by
+     *         default, or null if the class is not annotated with it
+     */
+    static String getDiscriminator(Class<?> classOfObj) {
+        DocumentIndexSubClass annotation = classOfObj.getAnnotation(DocumentIndexSubClass.class);
+        if (annotation == null) {
+            return null;
+        }
+        String discriminator = annotation.discriminator();
+        return discriminator.length() > 0 ? discriminator : classOfObj.getSimpleName();
+    }
+
+    /**
+     * Sorts the fields in the order of {@link FieldType}, @DocumentField before @DocumentCollection, which is the
+     * order they have always been added to documents. Fields of the same kind keep their declaration order. Their
+     * converters are resolved in the given registry.
+     */
+    private static List<FieldMapping> sortFields(List<FieldMapping> unsorted, ConverterRegistry converters) {
+        List<FieldMapping> fields = new ArrayList<FieldMapping>(unsorted.size());
+        for (FieldType fieldType : FieldType.values()) {
+            for (FieldMapping mapping : unsorted) {
+                if (!mapping.isCollection() && mapping.getFieldType() == fieldType) {
+                    fields.add(mapping.withConverters(converters));
+                }
+            }
+            for (FieldMapping mapping : unsorted) {
+                if (mapping.isCollection() && mapping.getFieldType() == fieldType) {
+                    fields.add(mapping.withConverters(converters));
+                }
+            }
+        }
+        return fields;
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return the name of the index defined by {@link DocumentIndex} or {@link DocumentIndexSubClass}, or null if the
+     *         class has none of them
+     */
+    String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * @return the value stored in the documents of the class to identify it among the subclasses of its super classes,
+     *         or null if the class is not annotated with {@link DocumentIndexSubClass}
+     */
+    String getDiscriminator() {
+        return discriminator;
+    }
+
+    /**
+     * @return the subclasses annotated with {@link DocumentIndexSubClass} declared by the generated mapper of the
+     *         class, which were compiled with it; empty for the mappings read through reflection
+     */
+    List<Class<?>> getSubclasses() {
+        return subclasses;
+    }
+
+    /**
+     * Creates a new instance of the mapped class using its no-arg constructor.
+     *
+     * @return the new instance
+     * @throws InstantiationException
+     *             if the class has no no-arg constructor or can not be instantiated
+     * @throws IllegalAccessException
+     *             if the constructor is not accessible
+     */
+    Object newInstance() throws InstantiationException, IllegalAccessException {
+        return instantiator.newInstance();
+    }
+
+    /**
+     * @return the accessors of all the fields annotated with {@link DocumentId}. A valid mapping has exactly one, but
+     *         classes which are only embedded or referenced may have none.
+     */
+    List<FieldAccessor> getIdFields() {
+        return idFields;
+    }
+
+    /**
+     * @return the {@link DocumentField} and {@link DocumentCollection} mappings
+     */
+    List<FieldMapping> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the slots of the {@link #getFields()}, to read them from a document
+     */
+    FieldSlots getSlots() {
+        return slots;
+    }
+
+    List<FacetMapping> getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return the {@link PrefixField} mappings, whose prefixes are only added to the documents of this class, not to
+     *         the fields of the objects which reference or embed it
+     */
+    List<PrefixMapping> getPrefixes() {
+        return prefixes;
+    }
+
+    List<NestedMapping> getRefs() {
+        return refs;
+    }
+
+    List<NestedMapping> getEmbeds() {
+        return embeds;
+    }
+}
@@ -0,0 +1,119 @@
+package com.vidolima.doco;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+
+/**
+ * Finds the classes annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass} in a package and its sub
+ * packages, looking at the directories and jar files of the class path. The classes are loaded without being
+ * initialized; classes which can not be loaded are ignored.
+ */
+final class ClassScanner {
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private ClassScanner() {
+    }
+
+    /**
+     * Finds the indexed classes of a package.
+     *
+     * @param packageName
+     *            the name of the package, e.g. "com.example.model"
+     * @param classLoader
+     *            the class loader of the classes
+     * @return the indexed classes, sorted by name
+     */
+    static List<Class<?>> findIndexedClasses(String packageName, ClassLoader classLoader) {
+        String path = packageName.replace('.', '/');
+        Set<String> classNames = new LinkedHashSet<String>();
+        try {
+            Enumeration<URL> resources = classLoader.getResources(path);
+            while (resources.hasMoreElements()) {
+                URL resource = resources.nextElement();
+                if ("file".equals(resource.getProtocol())) {
+                    findInDirectory(new File(decode(resource.getPath())), packageName, classNames);
+                } else if ("jar".equals(resource.getProtocol())) {
+                    findInJar(((JarURLConnection) resource.openConnection()).getJarFile(), path, classNames);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("The package " + packageName + " can not be scanned.", e);
+        }
+
+        List<Class<?>> indexed = new ArrayList<Class<?>>();
+        for (String className : classNames) {
+            Class<?> type = load(className, classLoader);
+            if (type != null && (type.isAnnotationPresent(DocumentIndex.class)
+                || type.isAnnotationPresent(DocumentIndexSubClass.class))) {
+                indexed.add(type);
+            }
+        }
+        Collections.sort(indexed, new Comparator<Class<?>>() {
+            @Override
+            public int compare(Class<?> a, Class<?> b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return indexed;
+    }
+
+    private static void findInDirectory(File directory, String packageName, Set<String> classNames) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                findInDirectory(file, packageName + "." + name, classNames);
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                classNames.add(packageName + "." + name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            }
+        }
+    }
+
+    private static void findInJar(JarFile jar, String path, Set<String> classNames) {
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            String name = entries.nextElement().getName();
+            if (name.startsWith(path + "/") && name.endsWith(CLASS_SUFFIX)) {
+                classNames.add(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+            }
+        }
+    }
+
+    private static Class<?> load(String className, ClassLoader classLoader) {
+        try {
+            return Class.forName(className, false, classLoader);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (LinkageError e) {
+            return null;
+        }
+    }
+
+    private static String decode(String path) {
+        try {
+            return URLDecoder.decode(path, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
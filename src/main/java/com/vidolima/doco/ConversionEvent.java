@@ -0,0 +1,91 @@
+package com.vidolima.doco;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Facet;
+import com.google.appengine.api.search.Field;
+
+/**
+ * A conversion made by {@link Doco}, passed to the {@link ConversionListener}. The counts and the size are taken from
+ * the {@link Document} produced or read by the conversion.
+ */
+public final class ConversionEvent {
+
+    /**
+     * The direction of a conversion.
+     */
+    public enum Direction {
+        TO_DOCUMENT, FROM_DOCUMENT
+    }
+
+    private final Class<?> type;
+    private final Direction direction;
+    private final long durationNanos;
+    private final int fieldCount;
+    private final int facetCount;
+    private final long estimatedBytes;
+
+    ConversionEvent(Class<?> type, Direction direction, long durationNanos, Document document) {
+        this.type = type;
+        this.direction = direction;
+        this.durationNanos = durationNanos;
+
+        int fields = 0;
+        for (Field field : document.getFields()) {
+            fields++;
+        }
+        int facets = 0;
+        for (Facet facet : document.getFacets()) {
+            facets++;
+        }
+        this.fieldCount = fields;
+        this.facetCount = facets;
+        this.estimatedBytes = DocumentLimits.estimateBytes(document);
+    }
+
+    /**
+     * @return the class of the converted object
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return the duration of the conversion in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the number of fields of the document, counting each value of a multi-valued field
+     */
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * @return the number of facets of the document
+     */
+    public int getFacetCount() {
+        return facetCount;
+    }
+
+    /**
+     * @return an estimate of the size of the serialized document, made as {@link DocumentLimits} makes it: the UTF-8
+     *         bytes of the id and of the names and string values of its fields and facets, plus a fixed size for the
+     *         other values and for the framing of each field
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ConversionEvent(" + type.getName() + ", " + direction + ", " + durationNanos + "ns, " + fieldCount
+            + " fields, " + facetCount + " facets, " + estimatedBytes + " bytes)";
+    }
+}
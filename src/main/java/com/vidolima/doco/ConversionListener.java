@@ -0,0 +1,21 @@
+package com.vidolima.doco;
+
+/**
+ * Receives an event after each conversion made by {@link Doco}, from an object to a document or back. Register it
+ * with {@link Doco.Builder#conversionListener(ConversionListener)}.
+ *
+ * The listener is called in the thread which made the conversion, which may be a thread of the executor of a
+ * parallel conversion, so implementations must be thread-safe and fast.
+ *
+ * @see ConversionMetrics
+ */
+public interface ConversionListener {
+
+    /**
+     * Called after a successful conversion.
+     *
+     * @param event
+     *            the conversion
+     */
+    void onConversion(ConversionEvent event);
+}
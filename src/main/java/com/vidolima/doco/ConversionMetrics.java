@@ -0,0 +1,103 @@
+package com.vidolima.doco;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vidolima.doco.ConversionEvent.Direction;
+
+/**
+ * A {@link ConversionListener} which keeps, per class and direction, {@link Histogram}s of the duration of the
+ * conversions, of the estimated size of the documents and of their number of fields.
+ *
+ * <pre>
+ * ConversionMetrics metrics = new ConversionMetrics();
+ * Doco doco = Doco.newBuilder().conversionListener(metrics).build();
+ * ...
+ * Histogram.Snapshot sizes = metrics.getStats(Foo.class, Direction.TO_DOCUMENT).getEstimatedBytes().snapshot();
+ * </pre>
+ */
+public final class ConversionMetrics implements ConversionListener {
+
+    private final ConcurrentMap<Class<?>, Stats[]> statsByClass = new ConcurrentHashMap<Class<?>, Stats[]>();
+
+    @Override
+    public void onConversion(ConversionEvent event) {
+        Stats stats = getOrCreate(event.getType())[event.getDirection().ordinal()];
+        stats.durationNanos.record(event.getDurationNanos());
+        stats.estimatedBytes.record(event.getEstimatedBytes());
+        stats.fieldCount.record(event.getFieldCount());
+    }
+
+    private Stats[] getOrCreate(Class<?> type) {
+        Stats[] stats = statsByClass.get(type);
+        if (stats == null) {
+            Stats[] created = new Stats[Direction.values().length];
+            for (int i = 0; i < created.length; i++) {
+                created[i] = new Stats();
+            }
+            stats = statsByClass.putIfAbsent(type, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return the classes converted so far
+     */
+    public Set<Class<?>> getTypes() {
+        return Collections.unmodifiableSet(new HashSet<Class<?>>(statsByClass.keySet()));
+    }
+
+    /**
+     * Obtains the statistics of the conversions of a class in one direction.
+     *
+     * @param type
+     *            the converted class
+     * @param direction
+     *            the direction of the conversions
+     * @return the statistics, empty if the class was not converted in that direction
+     */
+    public Stats getStats(Class<?> type, Direction direction) {
+        Stats[] stats = statsByClass.get(type);
+        return stats == null ? new Stats() : stats[direction.ordinal()];
+    }
+
+    /**
+     * The histograms of the conversions of a class in one direction.
+     */
+    public static final class Stats {
+
+        private final Histogram durationNanos = new Histogram();
+        private final Histogram estimatedBytes = new Histogram();
+        private final Histogram fieldCount = new Histogram();
+
+        private Stats() {
+        }
+
+        /**
+         * @return the durations of the conversions, in nanoseconds
+         */
+        public Histogram getDurationNanos() {
+            return durationNanos;
+        }
+
+        /**
+         * @return the estimated sizes of the documents, in bytes
+         */
+        public Histogram getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * @return the numbers of fields of the documents
+         */
+        public Histogram getFieldCount() {
+            return fieldCount;
+        }
+    }
+}
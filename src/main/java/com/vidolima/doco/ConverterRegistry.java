@@ -0,0 +1,359 @@
+package com.vidolima.doco;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.appengine.api.datastore.GeoPt;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.search.GeoPoint;
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.ObjectParseException;
+
+/**
+ * Thread-safe registry of the {@link TypeConverter}s, keyed by Java type and {@link FieldType}. It comes with
+ * converters for the Java types supported by Doco: String, the numbers (including {@link BigDecimal}), {@link Date},
+ * the java.time instants and dates, {@link GeoPoint}, {@link GeoPt}, {@link UUID}, enums and the Objectify and
+ * datastore keys.
+ */
+final class ConverterRegistry {
+
+    private static final ConverterRegistry DEFAULT = new ConverterRegistry();
+
+    private final Map<FieldType, ConcurrentMap<Class<?>, TypeConverter<?, ?>>> converters =
+        new EnumMap<FieldType, ConcurrentMap<Class<?>, TypeConverter<?, ?>>>(FieldType.class);
+
+    ConverterRegistry() {
+        for (FieldType fieldType : FieldType.values()) {
+            converters.put(fieldType, new ConcurrentHashMap<Class<?>, TypeConverter<?, ?>>());
+        }
+        registerBuiltIns();
+    }
+
+    /**
+     * Creates a registry with the converters registered in the given one at this moment. The converters registered
+     * later in either registry are not seen by the other.
+     *
+     * @param converters
+     *            the registry to be copied
+     */
+    ConverterRegistry(ConverterRegistry converters) {
+        for (FieldType fieldType : FieldType.values()) {
+            this.converters.put(fieldType,
+                new ConcurrentHashMap<Class<?>, TypeConverter<?, ?>>(converters.converters.get(fieldType)));
+        }
+    }
+
+    /**
+     * @return the registry of the converters registered with {@link Doco#registerConverter}, used by the mappings of
+     *         the Docos not built with their own converters
+     */
+    static ConverterRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Registers a converter, replacing the one registered for the same type and {@link FieldType}.
+     */
+    <T> void register(Class<T> type, FieldType fieldType, TypeConverter<T, ?> converter) {
+        if (type == null || fieldType == null || converter == null) {
+            throw new IllegalArgumentException("The type, the FieldType and the converter can not be null.");
+        }
+        converters.get(fieldType).put(wrap(type), converter);
+    }
+
+    /**
+     * Resolves the converter of a Java type for a {@link FieldType}: the converter registered for the type, or else
+     * for its closest super class, or an enum converter for enums stored as strings.
+     *
+     * @return the converter, or null if there is none
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    TypeConverter<Object, Object> resolve(Class<?> type, FieldType fieldType) {
+        ConcurrentMap<Class<?>, TypeConverter<?, ?>> byType = converters.get(fieldType);
+        for (Class<?> c = wrap(type); c != null; c = c.getSuperclass()) {
+            TypeConverter<?, ?> converter = byType.get(c);
+            if (converter != null) {
+                return (TypeConverter<Object, Object>) converter;
+            }
+        }
+        if (type.isEnum() && isString(fieldType)) {
+            return new EnumConverter(type);
+        }
+        return null;
+    }
+
+    static boolean isString(FieldType fieldType) {
+        return fieldType == FieldType.TEXT || fieldType == FieldType.HTML || fieldType == FieldType.ATOM;
+    }
+
+    private static Class<?> wrap(Class<?> type) {
+        if (Integer.TYPE.equals(type))
+            return Integer.class;
+        if (Long.TYPE.equals(type))
+            return Long.class;
+        if (Float.TYPE.equals(type))
+            return Float.class;
+        if (Double.TYPE.equals(type))
+            return Double.class;
+        return type;
+    }
+
+    /**
+     * Registers a converter for the TEXT, HTML and ATOM field types.
+     */
+    private <T> void registerString(Class<T> type, TypeConverter<T, String> converter) {
+        register(type, FieldType.TEXT, converter);
+        register(type, FieldType.HTML, converter);
+        register(type, FieldType.ATOM, converter);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void registerBuiltIns() {
+        registerString(String.class, new TypeConverter<String, String>() {
+            @Override
+            public String toSearchValue(String value) {
+                return value;
+            }
+
+            @Override
+            public String fromSearchValue(String searchValue) {
+                return searchValue;
+            }
+        });
+
+        register(Integer.class, FieldType.NUMBER, new TypeConverter<Integer, Double>() {
+            @Override
+            public Double toSearchValue(Integer value) {
+                return value.doubleValue();
+            }
+
+            @Override
+            public Integer fromSearchValue(Double searchValue) {
+                return searchValue.intValue();
+            }
+        });
+        register(Long.class, FieldType.NUMBER, new TypeConverter<Long, Double>() {
+            @Override
+            public Double toSearchValue(Long value) {
+                return value.doubleValue();
+            }
+
+            @Override
+            public Long fromSearchValue(Double searchValue) {
+                return searchValue.longValue();
+            }
+        });
+        register(Float.class, FieldType.NUMBER, new TypeConverter<Float, Double>() {
+            @Override
+            public Double toSearchValue(Float value) {
+                return value.doubleValue();
+            }
+
+            @Override
+            public Float fromSearchValue(Double searchValue) {
+                return searchValue.floatValue();
+            }
+        });
+        register(Double.class, FieldType.NUMBER, new TypeConverter<Double, Double>() {
+            @Override
+            public Double toSearchValue(Double value) {
+                return value;
+            }
+
+            @Override
+            public Double fromSearchValue(Double searchValue) {
+                return searchValue;
+            }
+        });
+        register(BigDecimal.class, FieldType.NUMBER, new TypeConverter<BigDecimal, Double>() {
+            @Override
+            public Double toSearchValue(BigDecimal value) {
+                return value.doubleValue();
+            }
+
+            @Override
+            public BigDecimal fromSearchValue(Double searchValue) {
+                return BigDecimal.valueOf(searchValue);
+            }
+        });
+        // as a string the value is kept exactly, with its scale
+        registerString(BigDecimal.class, new TypeConverter<BigDecimal, String>() {
+            @Override
+            public String toSearchValue(BigDecimal value) {
+                return value.toString();
+            }
+
+            @Override
+            public BigDecimal fromSearchValue(String searchValue) {
+                return new BigDecimal(searchValue);
+            }
+        });
+
+        register(Date.class, FieldType.DATE, new TypeConverter<Date, Date>() {
+            @Override
+            public Date toSearchValue(Date value) {
+                return value;
+            }
+
+            @Override
+            public Date fromSearchValue(Date searchValue) {
+                return searchValue;
+            }
+        });
+        register(Instant.class, FieldType.DATE, new TypeConverter<Instant, Date>() {
+            @Override
+            public Date toSearchValue(Instant value) {
+                return Date.from(value);
+            }
+
+            @Override
+            public Instant fromSearchValue(Date searchValue) {
+                return searchValue.toInstant();
+            }
+        });
+        // the local dates and times are stored as UTC, the offsets and zones are read back as UTC
+        register(LocalDate.class, FieldType.DATE, new TypeConverter<LocalDate, Date>() {
+            @Override
+            public Date toSearchValue(LocalDate value) {
+                return Date.from(value.atStartOfDay(ZoneOffset.UTC).toInstant());
+            }
+
+            @Override
+            public LocalDate fromSearchValue(Date searchValue) {
+                return searchValue.toInstant().atOffset(ZoneOffset.UTC).toLocalDate();
+            }
+        });
+        register(LocalDateTime.class, FieldType.DATE, new TypeConverter<LocalDateTime, Date>() {
+            @Override
+            public Date toSearchValue(LocalDateTime value) {
+                return Date.from(value.toInstant(ZoneOffset.UTC));
+            }
+
+            @Override
+            public LocalDateTime fromSearchValue(Date searchValue) {
+                return LocalDateTime.ofInstant(searchValue.toInstant(), ZoneOffset.UTC);
+            }
+        });
+        register(OffsetDateTime.class, FieldType.DATE, new TypeConverter<OffsetDateTime, Date>() {
+            @Override
+            public Date toSearchValue(OffsetDateTime value) {
+                return Date.from(value.toInstant());
+            }
+
+            @Override
+            public OffsetDateTime fromSearchValue(Date searchValue) {
+                return searchValue.toInstant().atOffset(ZoneOffset.UTC);
+            }
+        });
+        register(ZonedDateTime.class, FieldType.DATE, new TypeConverter<ZonedDateTime, Date>() {
+            @Override
+            public Date toSearchValue(ZonedDateTime value) {
+                return Date.from(value.toInstant());
+            }
+
+            @Override
+            public ZonedDateTime fromSearchValue(Date searchValue) {
+                return searchValue.toInstant().atZone(ZoneOffset.UTC);
+            }
+        });
+
+        register(GeoPoint.class, FieldType.GEO_POINT, new TypeConverter<GeoPoint, GeoPoint>() {
+            @Override
+            public GeoPoint toSearchValue(GeoPoint value) {
+                return value;
+            }
+
+            @Override
+            public GeoPoint fromSearchValue(GeoPoint searchValue) {
+                return searchValue;
+            }
+        });
+        register(GeoPt.class, FieldType.GEO_POINT, new TypeConverter<GeoPt, GeoPoint>() {
+            @Override
+            public GeoPoint toSearchValue(GeoPt value) {
+                return new GeoPoint(value.getLatitude(), value.getLongitude());
+            }
+
+            @Override
+            public GeoPt fromSearchValue(GeoPoint searchValue) {
+                return new GeoPt((float) searchValue.getLatitude(), (float) searchValue.getLongitude());
+            }
+        });
+
+        registerString(UUID.class, new TypeConverter<UUID, String>() {
+            @Override
+            public String toSearchValue(UUID value) {
+                return value.toString();
+            }
+
+            @Override
+            public UUID fromSearchValue(String searchValue) {
+                return UUID.fromString(searchValue);
+            }
+        });
+        registerString(Key.class, new TypeConverter<Key, String>() {
+            @Override
+            public String toSearchValue(Key value) {
+                return value.getString();
+            }
+
+            @Override
+            public Key fromSearchValue(String searchValue) {
+                return Key.create(searchValue);
+            }
+        });
+        registerString(com.google.appengine.api.datastore.Key.class,
+            new TypeConverter<com.google.appengine.api.datastore.Key, String>() {
+                @Override
+                public String toSearchValue(com.google.appengine.api.datastore.Key value) {
+                    return KeyFactory.keyToString(value);
+                }
+
+                @Override
+                public com.google.appengine.api.datastore.Key fromSearchValue(String searchValue) {
+                    return KeyFactory.stringToKey(searchValue);
+                }
+            });
+    }
+
+    /**
+     * Stores an enum by the name of the constant. The string "null", written for a null value, is read as null.
+     */
+    private static final class EnumConverter<E extends Enum<E>> implements TypeConverter<E, String> {
+
+        private final Class<E> type;
+
+        EnumConverter(Class<E> type) {
+            this.type = type;
+        }
+
+        @Override
+        public String toSearchValue(E value) {
+            return value.name();
+        }
+
+        @Override
+        public E fromSearchValue(String searchValue) {
+            if ("null".equals(searchValue)) {
+                return null;
+            }
+            try {
+                return Enum.valueOf(type, searchValue);
+            } catch (IllegalArgumentException e) {
+                throw new ObjectParseException("'" + searchValue + "' is not a constant of " + type.getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.vidolima.doco;
+
+import java.util.List;
+import java.util.Set;
+
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.annotation.DocumentRef;
+
+/**
+ * Records which documents include the fields of the entities referenced with {@link DocumentRef}, so the documents
+ * made stale by a change of an entity can be found and put again with {@link Doco#reindexDependents(Key, Dependent, int)}.
+ * The dependencies of a document are recorded each time it is converted. Implementations must be thread-safe.
+ *
+ * @see InMemoryDependencyIndex
+ */
+public interface DependencyIndex {
+
+    /**
+     * Records the entities whose fields are part of a document, replacing the ones recorded before for it.
+     *
+     * @param type
+     *            the class of the object converted to the document
+     * @param documentId
+     *            the id of the document
+     * @param keys
+     *            the keys of the entities referenced by the object, directly or not; empty if there are none
+     */
+    void record(Class<?> type, String documentId, Set<Key<?>> keys);
+
+    /**
+     * Obtains the documents which include the fields of an entity.
+     *
+     * @param key
+     *            the key of the entity
+     * @return the dependent documents, in any order
+     */
+    List<Dependent> getDependents(Key<?> key);
+
+    /**
+     * Removes the dependencies of a document which was deleted.
+     *
+     * @param type
+     *            the class of the object converted to the document
+     * @param documentId
+     *            the id of the document
+     */
+    void remove(Class<?> type, String documentId);
+
+    /**
+     * A document which includes the fields of a referenced entity.
+     */
+    final class Dependent {
+
+        private final Class<?> type;
+        private final String documentId;
+
+        public Dependent(Class<?> type, String documentId) {
+            this.type = type;
+            this.documentId = documentId;
+        }
+
+        /**
+         * @return the class of the object converted to the document
+         */
+        public Class<?> getType() {
+            return type;
+        }
+
+        /**
+         * @return the id of the document
+         */
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Dependent)) {
+                return false;
+            }
+            Dependent other = (Dependent) obj;
+            return type.equals(other.type) && documentId.equals(other.documentId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + documentId.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return type.getName() + "(" + documentId + ")";
+        }
+    }
+}
@@ -1,42 +1,300 @@
 package com.vidolima.doco;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.google.appengine.api.NamespaceManager;
+import com.google.appengine.api.search.Cursor;
 import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.GetRequest;
+import com.google.appengine.api.search.GetResponse;
 import com.google.appengine.api.search.Index;
 import com.google.appengine.api.search.IndexSpec;
+import com.google.appengine.api.search.OperationResult;
+import com.google.appengine.api.search.PutException;
+import com.google.appengine.api.search.Query;
+import com.google.appengine.api.search.QueryOptions;
+import com.google.appengine.api.search.Results;
+import com.google.appengine.api.search.ScoredDocument;
+import com.google.appengine.api.search.SearchService;
+import com.google.appengine.api.search.SearchServiceConfig;
 import com.google.appengine.api.search.SearchServiceFactory;
+import com.google.appengine.api.search.StatusCode;
+import com.google.appengine.api.search.checkers.SearchApiLimits;
+import com.google.apphosting.api.ApiProxy;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.vidolima.doco.ConversionEvent.Direction;
 import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.annotation.PrefixField;
 import com.vidolima.doco.exception.AnnotationNotFoundException;
+import com.vidolima.doco.exception.DocumentLimitException;
 import com.vidolima.doco.exception.DocumentParseException;
+import com.vidolima.doco.exception.MappingValidationException;
 import com.vidolima.doco.exception.ObjectParseException;
 
 /**
  * This is the main class to use Doco. Doco (Document Converter) is a lightweight Java library used to converts (from
  * and to) indexed Documents provided by Search API in Google App Engine.
  * 
+ * A Doco is immutable once built with {@link #newBuilder()}: it holds the {@link SearchService}, the parsers, the
+ * optional collaborators, the {@link ObjectifyFactory} and the {@link TypeConverter}s, and the mappings of the classes
+ * built with those converters. It is safe to build a single Doco at startup and use it from all the request threads.
+ * The Docos created with {@link #Doco()} or {@link #Doco(SearchService)} instead share the mappings and the converters
+ * registered with the static {@link #registerConverter} and {@link #register}.
+ * 
  * @author Marcos Alexandre Vidolin de Lima
  * @since January 22, 2014
  */
 public class Doco {
 
+    private static final String DEFAULT_NAMESPACE = "";
+
+    // the order of the pages of reindexDependents, which does not depend on the order of the DependencyIndex
+    private static final Comparator<DependencyIndex.Dependent> DEPENDENT_ORDER =
+        new Comparator<DependencyIndex.Dependent>() {
+            @Override
+            public int compare(DependencyIndex.Dependent a, DependencyIndex.Dependent b) {
+                int byType = a.getType().getName().compareTo(b.getType().getName());
+                return byType != 0 ? byType : a.getDocumentId().compareTo(b.getDocumentId());
+            }
+        };
+
+    private final SearchService searchService;
+
+    // notified of each conversion, null when no listener is registered
+    private final ConversionListener conversionListener;
+
+    // what is done with the documents which violate the limits of the Search API
+    private final LimitPolicy limitPolicy;
+
+    // the fields of the referenced entities reused across conversions, null when they are always built
+    private final FragmentCache fragmentCache;
+
+    // records the referenced entities of each converted document, null when they are not recorded
+    private final DependencyIndex dependencyIndex;
+
+    // the mappings of the classes, with the converters of this Doco
+    private final MappingRegistry mappingRegistry;
+
+    // the factory of the Objectify which loads the referenced and dependent entities, null for the one of
+    // ObjectifyService
+    private final ObjectifyFactory objectifyFactory;
+
+    // the parsers keep no state of their own between conversions, so they are shared by all the threads
+    private final DocumentParser documentParser;
+    private final ObjectParser objectParser;
+
+    // Index handles by namespace and class, created on first use
+    private final ConcurrentMap<String, ConcurrentMap<Class<?>, Index>> indexes =
+        new ConcurrentHashMap<String, ConcurrentMap<Class<?>, Index>>();
+
+    /**
+     * Creates a Doco which obtains the {@link Index}es from the default {@link SearchService} of the current namespace
+     * (see {@link NamespaceManager}).
+     */
+    public Doco() {
+        this(new Builder(), MappingRegistry.getDefault());
+    }
+
+    /**
+     * Creates a Doco which obtains the {@link Index}es from the given {@link SearchService} (e.g. one created with a
+     * custom deadline or namespace through {@link SearchServiceFactory#getSearchService(SearchServiceConfig)}).
+     * 
+     * @param searchService
+     *            the {@link SearchService} to be used
+     */
+    public Doco(SearchService searchService) {
+        this(new Builder().searchService(searchService), MappingRegistry.getDefault());
+    }
+
+    private Doco(Builder builder, MappingRegistry mappingRegistry) {
+        this.searchService = builder.searchService;
+        this.conversionListener = builder.conversionListener;
+        this.limitPolicy = builder.limitPolicy;
+        this.fragmentCache = builder.fragmentCache;
+        this.dependencyIndex = builder.dependencyIndex;
+        this.mappingRegistry = mappingRegistry;
+        this.objectifyFactory = builder.objectifyFactory;
+        this.documentParser = new DocumentParser(mappingRegistry, limitPolicy, fragmentCache, objectifyFactory);
+        this.objectParser = new ObjectParser(mappingRegistry);
+    }
+
+    /**
+     * @return a {@link Builder} of a Doco with the default settings
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Registers the converter of a Java type for a {@link FieldType}, replacing the built-in one if any. The converter
+     * is also used for the sub classes of the type which have none of their own. Converters are resolved when the
+     * mapping of a class is built, so they must be registered before the classes which use them are registered or
+     * converted.
+     * 
+     * The converters registered here are used by the Docos created with {@link #Doco()} or
+     * {@link #Doco(SearchService)}. A Doco built with {@link #newBuilder()} starts with the ones registered when it is
+     * built, and is not affected by the ones registered later (see {@link Builder#converter}).
+     *
+     * @param type
+     *            the Java type of the fields
+     * @param fieldType
+     *            the {@link FieldType} of the fields
+     * @param converter
+     *            the thread-safe converter
+     */
+    public static <T> void registerConverter(Class<T> type, FieldType fieldType, TypeConverter<T, ?> converter) {
+        ConverterRegistry.getDefault().register(type, fieldType, converter);
+    }
+
+    /**
+     * Builds the mappings of the given indexed classes, and of the classes they reference or embed, and validates them
+     * (e.g. at the startup of an instance), so mapping errors and the cost of reading the annotations do not reach the
+     * first conversion. Calling it more than once for a class is harmless.
+     * 
+     * @param classes
+     *            the classes annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass}
+     * @throws MappingValidationException
+     *             with all the problems found in the mappings
+     */
+    public static void register(Class<?>... classes) throws MappingValidationException {
+        register(MappingRegistry.getDefault(), Arrays.asList(classes));
+    }
+
+    /**
+     * Builds and validates the mappings of the given indexed classes in a {@link MappingRegistry}.
+     */
+    private static void register(MappingRegistry mappingRegistry, List<Class<?>> classes)
+        throws MappingValidationException {
+        MappingValidator validator = new MappingValidator(mappingRegistry);
+        for (Class<?> type : classes) {
+            validator.validateIndexed(type);
+        }
+        if (!validator.getProblems().isEmpty()) {
+            throw new MappingValidationException(validator.getProblems());
+        }
+    }
+
+    /**
+     * Finds the classes annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass} in the given package and
+     * its sub packages, in the class path of the context class loader, and registers them with
+     * {@link #register(Class...)}.
+     * 
+     * @param packageName
+     *            the name of the package, e.g. "com.example.model"
+     * @return the registered classes
+     * @throws MappingValidationException
+     *             with all the problems found in the mappings
+     */
+    public static List<Class<?>> registerPackage(String packageName) throws MappingValidationException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = Doco.class.getClassLoader();
+        }
+        List<Class<?>> classes = ClassScanner.findIndexedClasses(packageName, classLoader);
+        register(classes.toArray(new Class<?>[classes.size()]));
+        return classes;
+    }
+
     /**
-     * Obtains the Index.
+     * Records the referenced entities of a converted document, if there is a {@link DependencyIndex}.
+     */
+    private static void recordDependencies(DependencyIndex index, Class<?> type, Document document,
+        Set<Key<?>> refKeys) {
+        if (index != null && document.getId() != null) {
+            index.record(type, document.getId(), refKeys);
+        }
+    }
+
+    /**
+     * Notifies the listener of a conversion started at the given {@link System#nanoTime()}.
+     */
+    private static void fireConversion(ConversionListener listener, Class<?> type, Direction direction,
+        long startNanos, Document document) {
+        listener.onConversion(new ConversionEvent(type, direction, System.nanoTime() - startNanos, document));
+    }
+
+    /**
+     * Obtains the Index. The {@link Index} handle is created once per class (and per namespace when the default
+     * {@link SearchService} is used) and then reused. This method is thread-safe.
      * 
      * @param clazz
      *            the class
      * @return the {@link Index} specified with the {@link DocumentIndex} annotation.
      */
     public Index getIndex(Class<?> clazz) {
-        String indexName;
+        String namespace = searchService != null ? DEFAULT_NAMESPACE : getCurrentNamespace();
+
+        ConcurrentMap<Class<?>, Index> namespaceIndexes = indexes.get(namespace);
+        if (namespaceIndexes == null) {
+            ConcurrentMap<Class<?>, Index> created = new ConcurrentHashMap<Class<?>, Index>();
+            namespaceIndexes = indexes.putIfAbsent(namespace, created);
+            if (namespaceIndexes == null) {
+                namespaceIndexes = created;
+            }
+        }
+
+        Index index = namespaceIndexes.get(clazz);
+        if (index == null) {
+            IndexSpec indexSpec = IndexSpec.newBuilder().setName(getIndexName(clazz)).build();
+            SearchService service = searchService != null ? searchService : SearchServiceFactory
+                .getSearchService(SearchServiceConfig.newBuilder().setNamespace(namespace).build());
+            // concurrent creations of the same handle are harmless, only the first one is kept
+            Index created = service.getIndex(indexSpec);
+            index = namespaceIndexes.putIfAbsent(clazz, created);
+            if (index == null) {
+                index = created;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Obtains the name of the index of the given class from its cached mapping.
+     */
+    private String getIndexName(Class<?> clazz) {
+        String indexName = mappingRegistry.getMapping(clazz).getIndexName();
+        if (indexName != null) {
+            return indexName;
+        }
         try {
-            indexName = ObjectParser.getIndexName(clazz);
+            // not annotated, reported by the parser
+            return ObjectParser.getIndexName(clazz);
         } catch (AnnotationNotFoundException e) {
             throw new AnnotationNotFoundException(e.getMessage());
         }
+    }
 
-        IndexSpec indexSpec = IndexSpec.newBuilder().setName(indexName).build();
-        Index index = SearchServiceFactory.getSearchService().getIndex(indexSpec);
-
-        return index;
+    /**
+     * @return the namespace set in the {@link NamespaceManager}, or the default namespace outside of a request
+     */
+    private static String getCurrentNamespace() {
+        if (ApiProxy.getCurrentEnvironment() == null) {
+            return DEFAULT_NAMESPACE;
+        }
+        String namespace = NamespaceManager.get();
+        return namespace == null ? DEFAULT_NAMESPACE : namespace;
     }
 
     /**
@@ -49,24 +307,35 @@ public class Doco {
      * @param documentId
      *            user defined id of document (e.g. 'Key' of a datastore entity).
      * @return {@link Document} representation of obj
+     * @throws DocumentLimitException
+     *             if the document violates the limits of the Search API and the {@link LimitPolicy} is
+     *             {@link LimitPolicy#REJECT}
      */
-    public Document toDocument(Object obj, String documentId, Class<?> classOfObj) throws DocumentParseException {
+    public Document toDocument(Object obj, String documentId, Class<?> classOfObj) throws DocumentParseException,
+        DocumentLimitException {
 
         if (obj == null) {
             return null;
         }
-
-        Document document = Document.newBuilder().build();
-        DocumentParser parser = new DocumentParser();
+        long startNanos = conversionListener == null ? 0L : System.nanoTime();
+        Document document = null;
+        Set<Key<?>> refKeys = dependencyIndex == null ? null : new HashSet<Key<?>>();
 
         try {
-            document = parser.parseDocument(obj, documentId, classOfObj);
+            PrefetchedRefs prefetched = new RefPrefetcher(mappingRegistry, fragmentCache, objectifyFactory)
+                .prefetch(Collections.singletonList(obj));
+            document = documentParser.parseDocument(obj, documentId, classOfObj, prefetched,
+                new DocumentLimits(limitPolicy), refKeys);
         } catch (IllegalArgumentException e) {
             throw new DocumentParseException("Conversion failed.", e);
         } catch (IllegalAccessException e) {
             throw new DocumentParseException("Conversion failed.", e);
         }
+        recordDependencies(dependencyIndex, classOfObj, document, refKeys);
 
+        if (conversionListener != null) {
+            fireConversion(conversionListener, classOfObj, Direction.TO_DOCUMENT, startNanos, document);
+        }
         return document;
     }
 
@@ -95,30 +364,886 @@ public class Doco {
     }
 
     /**
-     * This method converts the specified {@link Document}, into an object T.
+     * This method converts the specified {@link Document}, into an object T. A document created from a subclass of T
+     * annotated with {@link DocumentIndexSubClass} is converted to that subclass, identified by the discriminator the
+     * document holds. The subclasses compiled with T are known from its generated mapper; the others must be
+     * registered with {@link #register(Class...)} at startup.
      * 
      * @param doc
      *            the {@link Document} for which object T representation is to be created
      * @param classOfT
      *            the class of T
      * @return T
+     * @throws ObjectParseException
+     *             if the document holds the discriminator of a subclass of T which is not known
      */
     public <T> T fromDocument(Document doc, Class<T> classOfT) throws ObjectParseException {
         if (doc == null) {
             return null;
         }
-
+        long startNanos = conversionListener == null ? 0L : System.nanoTime();
         T instanceOfT = null;
-        ObjectParser parser = new ObjectParser();
 
         try {
-            instanceOfT = (T) parser.parseObject(doc, classOfT);
+            instanceOfT = objectParser.parseObject(doc, classOfT);
         } catch (InstantiationException e) {
             throw new ObjectParseException("Conversion failed.", e);
         } catch (IllegalAccessException e) {
             throw new ObjectParseException("Conversion failed.", e);
         }
 
+        if (conversionListener != null) {
+            fireConversion(conversionListener, classOfT, Direction.FROM_DOCUMENT, startNanos, doc);
+        }
         return instanceOfT;
     }
-}
\ No newline at end of file
+
+    /**
+     * This method converts the specified {@link Document}, obtained with a projection of T, into an object T. Only the
+     * fields of the projection are filled.
+     * 
+     * @param doc
+     *            the {@link Document} for which object T representation is to be created
+     * @param classOfT
+     *            the class of T
+     * @param projection
+     *            the fields of T to be filled
+     * @return T
+     */
+    public <T> T fromDocument(Document doc, Class<T> classOfT, Projection projection) throws ObjectParseException {
+        return objectConversion(classOfT, resolve(classOfT, projection)).convert(doc);
+    }
+
+    /**
+     * Restricts the fields returned by the specified query to the fields of a projection of T. The names of the fields
+     * in the documents, including the prefixes of the embedded and referenced fields, are set as the
+     * {@link QueryOptions#getFieldsToReturn() fields to return} of the query options.
+     * 
+     * @param query
+     *            the query
+     * @param classOfT
+     *            the class of T
+     * @param projection
+     *            the fields of T to be returned
+     * @return a copy of the query returning only the fields of the projection
+     */
+    public Query project(Query query, Class<?> classOfT, Projection projection) {
+        return project(query, resolve(classOfT, projection));
+    }
+
+    /**
+     * Builds the query string which finds the documents whose {@link PrefixField} starts with the words typed by a
+     * user, e.g. for autocomplete: each word of the input is normalized as the prefixes stored in the documents and
+     * matched exactly, and all of them must match. For example "New Yo" gives {@code city_prefix:"new" AND
+     * city_prefix:"yo"}. The query string can be combined with other criteria.
+     * 
+     * @param classOfT
+     *            the indexed class
+     * @param fieldName
+     *            the Java name of the field annotated with {@link PrefixField}
+     * @param input
+     *            the text typed by the user
+     * @return the query string, or null if the input has no word as long as the shortest prefix stored
+     * @throws IllegalArgumentException
+     *             if the class has no such field annotated with {@link PrefixField}
+     */
+    public String prefixQuery(Class<?> classOfT, String fieldName, String input) {
+        for (PrefixMapping prefixes : mappingRegistry.getMapping(classOfT).getPrefixes()) {
+            if (prefixes.getAccessor().getName().equals(fieldName)) {
+                StringBuilder query = new StringBuilder();
+                for (String term : prefixes.getQueryTerms(input)) {
+                    if (query.length() > 0) {
+                        query.append(" AND ");
+                    }
+                    query.append(prefixes.getName()).append(":\"").append(term).append('"');
+                }
+                return query.length() == 0 ? null : query.toString();
+            }
+        }
+        throw new IllegalArgumentException(classOfT + " has no field '" + fieldName + "' annotated with @PrefixField.");
+    }
+
+    private static Query project(Query query, ProjectionMapping projection) {
+        QueryOptions options = query.getOptions();
+        QueryOptions.Builder optionsBuilder = options == null ? QueryOptions.newBuilder() : QueryOptions
+            .newBuilder(options);
+        return Query.newBuilder(query).setOptions(optionsBuilder.setFieldsToReturn(projection.getFieldsToReturn()))
+            .build();
+    }
+
+    private ProjectionMapping resolve(Class<?> classOfT, Projection projection) {
+        return projection.resolve(mappingRegistry.getMapping(classOfT), mappingRegistry);
+    }
+
+    /**
+     * This method converts the specified objects, into their equivalent {@link Document} representations. The
+     * entities referenced with {@link DocumentRef} are loaded with one batch load per level of references, each entity
+     * only once.
+     * 
+     * @param objs
+     *            the objects for which {@link Document} representations are to be created
+     * @return the {@link Document} representations, in the same order of the objects (null for null objects)
+     * @throws DocumentLimitException
+     *             if a document violates the limits of the Search API and the {@link LimitPolicy} is
+     *             {@link LimitPolicy#REJECT}
+     */
+    public List<Document> toDocuments(Iterable<?> objs) throws DocumentParseException {
+        return toDocuments(objs, null);
+    }
+
+    /**
+     * This method converts the specified objects, into their equivalent {@link Document} representations, splitting
+     * large batches across the given executor. The result is the same of {@link #toDocuments(Iterable)}.
+     * 
+     * @param objs
+     *            the objects for which {@link Document} representations are to be created
+     * @param executor
+     *            the executor which runs the conversion (preferably a {@link ForkJoinPool}), or null to convert in the
+     *            calling thread
+     * @return the {@link Document} representations, in the same order of the objects (null for null objects)
+     */
+    public List<Document> toDocuments(Iterable<?> objs, ExecutorService executor) throws DocumentParseException {
+        List<Object> objects = new ArrayList<Object>();
+        for (Object obj : objs) {
+            objects.add(obj);
+        }
+        return toDocuments(objects, executor, null);
+    }
+
+    /**
+     * Converts the objects, checking each document with its own {@link DocumentLimits}. When the limits are collected
+     * in the given array, a rejected document is converted to null instead of failing the whole batch.
+     * 
+     * @param limits
+     *            receives the limits of each document, in the same order of the objects, or null to throw a
+     *            {@link DocumentLimitException} for the first rejected document
+     */
+    private List<Document> toDocuments(final List<Object> objects, ExecutorService executor,
+        final DocumentLimits[] limits) throws DocumentParseException {
+        // the referenced entities of the whole batch are loaded before any document is built
+        final PrefetchedRefs prefetched = new RefPrefetcher(mappingRegistry, fragmentCache, objectifyFactory)
+            .prefetch(objects);
+
+        List<Integer> positions = new ArrayList<Integer>(objects.size());
+        for (int i = 0; i < objects.size(); i++) {
+            positions.add(i);
+        }
+
+        return ParallelConverter.convert(positions, new ParallelConverter.Conversion<Integer, Document>() {
+            @Override
+            public Document convert(Integer position) {
+                Object obj = objects.get(position);
+                if (obj == null) {
+                    return null;
+                }
+                long startNanos = conversionListener == null ? 0L : System.nanoTime();
+                DocumentLimits documentLimits = new DocumentLimits(limitPolicy);
+                if (limits != null) {
+                    limits[position] = documentLimits;
+                }
+                Set<Key<?>> refKeys = dependencyIndex == null ? null : new HashSet<Key<?>>();
+                try {
+                    Document document = documentParser.parseDocument(obj, null, obj.getClass(), prefetched,
+                        documentLimits, refKeys);
+                    recordDependencies(dependencyIndex, obj.getClass(), document, refKeys);
+                    if (conversionListener != null) {
+                        fireConversion(conversionListener, obj.getClass(), Direction.TO_DOCUMENT, startNanos, document);
+                    }
+                    return document;
+                } catch (DocumentLimitException e) {
+                    if (limits == null) {
+                        throw e;
+                    }
+                    return null;
+                } catch (IllegalArgumentException e) {
+                    throw new DocumentParseException("Conversion failed.", e);
+                } catch (IllegalAccessException e) {
+                    throw new DocumentParseException("Conversion failed.", e);
+                }
+            }
+        }, executor);
+    }
+
+    /**
+     * This method converts the specified {@link Document}s, into objects T, each of them an instance of the subclass
+     * its document was created from, as {@link #fromDocument(Document, Class)} does.
+     * 
+     * @param docs
+     *            the {@link Document}s for which object T representations are to be created
+     * @param classOfT
+     *            the class of T
+     * @return the objects T, in the same order of the documents (null for null documents)
+     */
+    public <T> List<T> fromDocuments(Iterable<? extends Document> docs, Class<T> classOfT)
+        throws ObjectParseException {
+        return fromDocuments(docs, classOfT, null);
+    }
+
+    /**
+     * This method converts the specified {@link Document}s, into objects T, splitting large batches across the given
+     * executor. The result is the same of {@link #fromDocuments(Iterable, Class)}.
+     * 
+     * @param docs
+     *            the {@link Document}s for which object T representations are to be created
+     * @param classOfT
+     *            the class of T
+     * @param executor
+     *            the executor which runs the conversion (preferably a {@link ForkJoinPool}), or null to convert in the
+     *            calling thread
+     * @return the objects T, in the same order of the documents (null for null documents)
+     */
+    public <T> List<T> fromDocuments(Iterable<? extends Document> docs, Class<T> classOfT,
+        ExecutorService executor) throws ObjectParseException {
+        List<Document> documents = new ArrayList<Document>();
+        for (Document doc : docs) {
+            documents.add(doc);
+        }
+
+        return ParallelConverter.convert(documents, objectConversion(classOfT), executor);
+    }
+
+    /**
+     * Creates the conversion of {@link Document}s into objects T shared by the batch and lazy conversions.
+     */
+    private <T> ParallelConverter.Conversion<Document, T> objectConversion(Class<T> classOfT) {
+        return objectConversion(classOfT, null);
+    }
+
+    /**
+     * Creates the conversion of {@link Document}s into objects T which fills only the fields of the given projection,
+     * or all the fields if it is null.
+     */
+    private <T> ParallelConverter.Conversion<Document, T> objectConversion(final Class<T> classOfT,
+        final ProjectionMapping projection) {
+
+        return new ParallelConverter.Conversion<Document, T>() {
+            @Override
+            public T convert(Document doc) {
+                if (doc == null) {
+                    return null;
+                }
+                long startNanos = conversionListener == null ? 0L : System.nanoTime();
+                try {
+                    T instanceOfT = projection == null ? objectParser.parseObject(doc, classOfT) : objectParser.parseObject(
+                        doc, classOfT, projection);
+                    if (conversionListener != null) {
+                        fireConversion(conversionListener, classOfT, Direction.FROM_DOCUMENT, startNanos, doc);
+                    }
+                    return instanceOfT;
+                } catch (InstantiationException e) {
+                    throw new ObjectParseException("Conversion failed.", e);
+                } catch (IllegalAccessException e) {
+                    throw new ObjectParseException("Conversion failed.", e);
+                }
+            }
+        };
+    }
+
+    /**
+     * This method lazily converts the {@link ScoredDocument}s of the specified search {@link Results} into objects T.
+     * Each object is created only when it is reached by the iteration.
+     * 
+     * @param results
+     *            the results of a search
+     * @param classOfT
+     *            the class of T
+     * @return the objects T, in the same order of the results
+     */
+    public <T> Iterable<T> stream(Results<ScoredDocument> results, Class<T> classOfT) throws ObjectParseException {
+        return ObjectIterator.lazy(results, objectConversion(classOfT));
+    }
+
+    /**
+     * This method lazily converts the {@link Document}s of the specified {@link GetResponse} into objects T. Each
+     * object is created only when it is reached by the iteration.
+     * 
+     * @param response
+     *            the response of {@link Index#getRange(GetRequest)}
+     * @param classOfT
+     *            the class of T
+     * @return the objects T, in the same order of the response
+     */
+    public <T> Iterable<T> stream(GetResponse<Document> response, Class<T> classOfT) throws ObjectParseException {
+        return ObjectIterator.lazy(response, objectConversion(classOfT));
+    }
+
+    /**
+     * This method searches the {@link Index} of T and lazily converts all the matching documents into objects T,
+     * following the {@link Cursor} of each page of results (the limit of the query options is the page size). Only
+     * one page is held in memory at a time, and each iteration runs the search again.
+     * 
+     * @param query
+     *            the query, with or without a cursor
+     * @param classOfT
+     *            the class of T
+     * @return the objects T of all the pages
+     */
+    public <T> Iterable<T> stream(Query query, Class<T> classOfT) throws ObjectParseException {
+        return stream(query, classOfT, 0);
+    }
+
+    /**
+     * This method searches the {@link Index} of T and lazily converts all the matching documents into objects T, like
+     * {@link #stream(Query, Class)}, but requests the pages with {@link Index#searchAsync(Query)}: the following page
+     * is requested as soon as a page arrives, so the search overlaps with the conversion of the current page.
+     * 
+     * @param query
+     *            the query, with or without a cursor
+     * @param classOfT
+     *            the class of T
+     * @param prefetchDepth
+     *            the maximum number of pages received ahead of the one being converted, from 0 (no prefetch) to
+     *            {@value SearchPageIterator#MAX_PREFETCH_DEPTH}
+     * @return the objects T of all the pages
+     */
+    public <T> Iterable<T> stream(final Query query, final Class<T> classOfT, final int prefetchDepth)
+        throws ObjectParseException {
+        SearchPageIterator.checkPrefetchDepth(prefetchDepth);
+        final Index index = getIndex(classOfT);
+        final ParallelConverter.Conversion<Document, T> conversion = objectConversion(classOfT);
+
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new ObjectIterator<T>(new SearchPageIterator(index, query, prefetchDepth), conversion);
+            }
+        };
+    }
+
+    /**
+     * This method searches the {@link Index} of T returning only the fields of a projection of T, and lazily converts
+     * all the matching documents into objects T with only those fields filled. The pages are followed like in
+     * {@link #stream(Query, Class)}.
+     * 
+     * @param query
+     *            the query, with or without a cursor
+     * @param classOfT
+     *            the class of T
+     * @param projection
+     *            the fields of T to be returned and filled
+     * @return the objects T of all the pages
+     */
+    public <T> Iterable<T> stream(Query query, Class<T> classOfT, Projection projection)
+        throws ObjectParseException {
+        ProjectionMapping projectionMapping = resolve(classOfT, projection);
+        final Index index = getIndex(classOfT);
+        final Query projectedQuery = project(query, projectionMapping);
+        final ParallelConverter.Conversion<Document, T> conversion = objectConversion(classOfT, projectionMapping);
+
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new ObjectIterator<T>(new SearchPageIterator(index, projectedQuery), conversion);
+            }
+        };
+    }
+
+    /**
+     * This method lazily converts the documents of the {@link Index} of T into objects T in id order, requesting each
+     * page of {@link Index#getRange(GetRequest)} after the last id of the previous one (the limit of the request is
+     * the page size). Only one page is held in memory at a time, so a whole index can be walked.
+     * 
+     * @param request
+     *            the request of the first page
+     * @param classOfT
+     *            the class of T
+     * @return the objects T of all the pages
+     */
+    public <T> Iterable<T> stream(final GetRequest request, final Class<T> classOfT) throws ObjectParseException {
+        final Index index = getIndex(classOfT);
+        final ParallelConverter.Conversion<Document, T> conversion = objectConversion(classOfT);
+
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new ObjectIterator<T>(new RangePageIterator(index, request), conversion);
+            }
+        };
+    }
+
+    /**
+     * Like {@link #stream(Results, Class)}, but returns a sequential {@link Stream}, so the objects can be filtered and
+     * mapped lazily.
+     */
+    public <T> Stream<T> asStream(Results<ScoredDocument> results, Class<T> classOfT) throws ObjectParseException {
+        return toStream(stream(results, classOfT));
+    }
+
+    /**
+     * Like {@link #stream(GetResponse, Class)}, but returns a sequential {@link Stream}.
+     */
+    public <T> Stream<T> asStream(GetResponse<Document> response, Class<T> classOfT) throws ObjectParseException {
+        return toStream(stream(response, classOfT));
+    }
+
+    /**
+     * Like {@link #stream(Query, Class)}, but returns a sequential {@link Stream}. The search runs once, when the
+     * stream is consumed; a short-circuiting operation, e.g. {@link Stream#limit(long)}, stops requesting pages.
+     */
+    public <T> Stream<T> asStream(Query query, Class<T> classOfT) throws ObjectParseException {
+        return toStream(stream(query, classOfT));
+    }
+
+    /**
+     * Like {@link #stream(Query, Class, int)}, but returns a sequential {@link Stream}.
+     */
+    public <T> Stream<T> asStream(Query query, Class<T> classOfT, int prefetchDepth) throws ObjectParseException {
+        return toStream(stream(query, classOfT, prefetchDepth));
+    }
+
+    /**
+     * Like {@link #stream(Query, Class, Projection)}, but returns a sequential {@link Stream}.
+     */
+    public <T> Stream<T> asStream(Query query, Class<T> classOfT, Projection projection) throws ObjectParseException {
+        return toStream(stream(query, classOfT, projection));
+    }
+
+    /**
+     * Like {@link #stream(GetRequest, Class)}, but returns a sequential {@link Stream}.
+     */
+    public <T> Stream<T> asStream(GetRequest request, Class<T> classOfT) throws ObjectParseException {
+        return toStream(stream(request, classOfT));
+    }
+
+    private static <T> Stream<T> toStream(Iterable<T> objects) {
+        return StreamSupport.stream(objects.spliterator(), false);
+    }
+
+    /**
+     * Converts the specified objects and puts the {@link Document}s in their indexes. The documents are grouped by
+     * the {@link Index} of their classes and put in batches of up to
+     * {@link SearchApiLimits#PUT_MAXIMUM_DOCS_PER_REQUEST} documents, so each batch takes a single call to the Search
+     * API. The documents rejected by the {@link LimitPolicy} are not put; their result has the code
+     * {@link StatusCode#INVALID_REQUEST}.
+     * 
+     * @param objs
+     *            the objects to be put
+     * @return the {@link OperationResult} of each document, in the same order of the objects
+     */
+    public List<OperationResult> putAll(Iterable<?> objs) throws DocumentParseException {
+        List<PutResult> putResults = putAll(objs, null);
+        List<OperationResult> results = new ArrayList<OperationResult>(putResults.size());
+        for (PutResult putResult : putResults) {
+            results.add(putResult.getOperationResult());
+        }
+        return results;
+    }
+
+    /**
+     * Converts the specified objects and puts the {@link Document}s in their indexes like {@link #putAll(Iterable)},
+     * skipping the documents whose {@link DocumentFingerprint} is the same stored for their ids in the given
+     * {@link FingerprintStore}. The fingerprints of the documents put successfully are then stored. Each
+     * {@link PutResult} carries the {@link LimitViolation}s of its document.
+     * 
+     * @param objs
+     *            the objects to be put
+     * @param fingerprintStore
+     *            the fingerprints of the documents already in the indexes, or null to put all the documents
+     * @return the {@link PutResult} of each document, in the same order of the objects
+     */
+    public List<PutResult> putAll(Iterable<?> objs, FingerprintStore fingerprintStore) throws DocumentParseException {
+        List<Object> objects = new ArrayList<Object>();
+        Map<String, Class<?>> classesByIndex = new LinkedHashMap<String, Class<?>>();
+        Map<String, List<Integer>> positionsByIndex = new LinkedHashMap<String, List<Integer>>();
+
+        for (Object obj : objs) {
+            if (obj == null) {
+                throw new IllegalArgumentException("Can not put a null object.");
+            }
+            Class<?> classOfObj = obj.getClass();
+            String indexName = getIndexName(classOfObj);
+
+            List<Integer> positions = positionsByIndex.get(indexName);
+            if (positions == null) {
+                positions = new ArrayList<Integer>();
+                positionsByIndex.put(indexName, positions);
+                classesByIndex.put(indexName, classOfObj);
+            }
+            positions.add(objects.size());
+            objects.add(obj);
+        }
+        DocumentLimits[] limits = new DocumentLimits[objects.size()];
+        List<Document> documents = toDocuments(objects, null, limits);
+
+        PutResult[] results = new PutResult[documents.size()];
+        String[] fingerprints = new String[documents.size()];
+        for (Map.Entry<String, List<Integer>> entry : positionsByIndex.entrySet()) {
+            Index index = getIndex(classesByIndex.get(entry.getKey()));
+            List<Integer> positions = skipRejected(entry.getValue(), limits, results);
+            if (fingerprintStore != null) {
+                positions = skipUnchanged(index, documents, positions, fingerprintStore, fingerprints, results,
+                    limits);
+            }
+
+            for (int from = 0; from < positions.size(); from += SearchApiLimits.PUT_MAXIMUM_DOCS_PER_REQUEST) {
+                List<Integer> batchPositions = positions.subList(from,
+                    Math.min(from + SearchApiLimits.PUT_MAXIMUM_DOCS_PER_REQUEST, positions.size()));
+                List<Document> batch = new ArrayList<Document>(batchPositions.size());
+                for (Integer position : batchPositions) {
+                    batch.add(documents.get(position));
+                }
+
+                List<OperationResult> batchResults = put(index, batch);
+                Map<String, String> putFingerprints = new LinkedHashMap<String, String>();
+                for (int i = 0; i < batchPositions.size(); i++) {
+                    int position = batchPositions.get(i);
+                    Document document = documents.get(position);
+                    OperationResult result = batchResults.get(i);
+                    results[position] = PutResult.put(document, fingerprints[position], result,
+                        limits[position].getViolations());
+                    if (fingerprints[position] != null && document.getId() != null
+                        && result.getCode() == StatusCode.OK) {
+                        putFingerprints.put(document.getId(), fingerprints[position]);
+                    }
+                }
+                if (!putFingerprints.isEmpty()) {
+                    fingerprintStore.putAll(index, putFingerprints);
+                }
+            }
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Puts again the documents which include the fields of an entity referenced with {@link DocumentRef}, after the
+     * entity changed. The dependent documents are found in the {@link DependencyIndex} and their objects are loaded
+     * with Objectify, so their classes must be Objectify entities whose ids are the ids of the documents. The fields
+     * of the entity are also removed from the {@link FragmentCache}, if any.
+     * 
+     * To throttle the fan-out of an entity referenced by many documents, at most maxDocuments dependents are processed
+     * by each call, in the order of their class names and document ids. The next call continues after the
+     * {@link ReindexPage#getCursor() cursor} of the previous one while it {@link ReindexPage#hasMore() has more}
+     * (e.g. from a task queue). Paging by the last dependent processed, and not by a position, keeps the pages stable
+     * while the dependencies change: the dependents put again are recorded again, and the ones whose objects no
+     * longer exist are removed from the {@link DependencyIndex} once their page is processed.
+     * 
+     * @param key
+     *            the key of the entity which changed
+     * @param cursor
+     *            the last dependent processed by the previous call, or null to start with the first one
+     * @param maxDocuments
+     *            the maximum number of dependents processed by this call
+     * @return the {@link PutResult}s of the documents put and the cursor of the next call
+     */
+    public ReindexPage reindexDependents(Key<?> key, DependencyIndex.Dependent cursor, int maxDocuments)
+        throws DocumentParseException {
+        if (dependencyIndex == null) {
+            throw new IllegalStateException("There is no DependencyIndex, see Builder.dependencyIndex.");
+        }
+        if (maxDocuments <= 0) {
+            throw new IllegalArgumentException("Invalid maxDocuments " + maxDocuments + ".");
+        }
+        if (fragmentCache != null) {
+            fragmentCache.invalidate(key);
+        }
+
+        List<DependencyIndex.Dependent> dependents = new ArrayList<DependencyIndex.Dependent>(
+            dependencyIndex.getDependents(key));
+        Collections.sort(dependents, DEPENDENT_ORDER);
+        int first = 0;
+        if (cursor != null) {
+            while (first < dependents.size() && DEPENDENT_ORDER.compare(dependents.get(first), cursor) <= 0) {
+                first++;
+            }
+        }
+        int last = Math.min(first + maxDocuments, dependents.size());
+        if (first == last) {
+            return new ReindexPage(Collections.<PutResult> emptyList(), 0, cursor, false);
+        }
+        List<DependencyIndex.Dependent> page = dependents.subList(first, last);
+
+        List<Key<Object>> keys = new ArrayList<Key<Object>>(page.size());
+        for (DependencyIndex.Dependent dependent : page) {
+            keys.add(getEntityKey(dependent));
+        }
+        Objectify ofy = objectifyFactory != null ? objectifyFactory.begin() : ObjectifyService.ofy();
+        Map<Key<Object>, Object> entities = ofy.load().keys(keys);
+
+        List<Object> objects = new ArrayList<Object>(page.size());
+        List<DependencyIndex.Dependent> missing = new ArrayList<DependencyIndex.Dependent>();
+        for (int i = 0; i < page.size(); i++) {
+            Object entity = entities.get(keys.get(i));
+            if (entity != null) {
+                objects.add(entity);
+            } else {
+                missing.add(page.get(i));
+            }
+        }
+        List<PutResult> results = putAll(objects, null);
+        for (DependencyIndex.Dependent dependent : missing) {
+            dependencyIndex.remove(dependent.getType(), dependent.getDocumentId());
+        }
+        return new ReindexPage(results, page.size(), page.get(page.size() - 1), last < dependents.size());
+    }
+
+    /**
+     * @return the Objectify key of the entity converted to a dependent document, whose id is the id of the document
+     * @throws IllegalArgumentException
+     *             if the @DocumentId of the class is not a Long, long or String, the types of the Objectify ids
+     */
+    @SuppressWarnings("unchecked")
+    private Key<Object> getEntityKey(DependencyIndex.Dependent dependent) {
+        Class<Object> type = (Class<Object>) dependent.getType();
+        List<FieldAccessor> idFields = mappingRegistry.getMapping(type).getIdFields();
+        Class<?> idType = idFields.isEmpty() ? null : idFields.get(0).getType();
+        if (String.class.equals(idType)) {
+            return Key.create(type, dependent.getDocumentId());
+        }
+        if (Long.class.equals(idType) || Long.TYPE.equals(idType)) {
+            try {
+                return Key.create(type, Long.parseLong(dependent.getDocumentId()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The id '" + dependent.getDocumentId() + "' of the dependent "
+                    + dependent + " is not the Long id of an entity.", e);
+            }
+        }
+        throw new IllegalArgumentException("The entities of " + type + " can not be loaded by the ids of their "
+            + "documents: the @DocumentId must be a Long, long or String, like the Objectify ids, not " + idType + ".");
+    }
+
+    /**
+     * Marks the documents rejected by their {@link DocumentLimits} as not put.
+     * 
+     * @return the positions of the documents which can be put
+     */
+    private static List<Integer> skipRejected(List<Integer> positions, DocumentLimits[] limits, PutResult[] results) {
+        List<Integer> accepted = new ArrayList<Integer>(positions.size());
+        for (Integer position : positions) {
+            if (limits[position].isRejected()) {
+                results[position] = PutResult.rejected(limits[position].getDocumentId(),
+                    limits[position].getViolations());
+            } else {
+                accepted.add(position);
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Computes the fingerprints of the documents of one index and marks the unchanged ones as skipped.
+     * 
+     * @return the positions of the documents which must be put
+     */
+    private static List<Integer> skipUnchanged(Index index, List<Document> documents, List<Integer> positions,
+        FingerprintStore fingerprintStore, String[] fingerprints, PutResult[] results, DocumentLimits[] limits) {
+        List<String> documentIds = new ArrayList<String>(positions.size());
+        for (Integer position : positions) {
+            Document document = documents.get(position);
+            fingerprints[position] = DocumentFingerprint.of(document);
+            if (document.getId() != null) {
+                documentIds.add(document.getId());
+            }
+        }
+        Map<String, String> stored = documentIds.isEmpty() ? Collections.<String, String> emptyMap()
+            : fingerprintStore.getAll(index, documentIds);
+
+        List<Integer> changed = new ArrayList<Integer>(positions.size());
+        for (Integer position : positions) {
+            Document document = documents.get(position);
+            if (document.getId() != null && fingerprints[position].equals(stored.get(document.getId()))) {
+                results[position] = PutResult.skipped(document, fingerprints[position],
+                    limits[position].getViolations());
+            } else {
+                changed.add(position);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Puts the documents in the index with a single call.
+     * 
+     * @return the {@link OperationResult} of each document
+     */
+    private static List<OperationResult> put(Index index, List<Document> documents) {
+        try {
+            return index.put(documents).getResults();
+        } catch (PutException e) {
+            List<OperationResult> results = e.getResults();
+            if (results != null && results.size() == documents.size()) {
+                return results;
+            }
+            // the whole request failed
+            return Collections.nCopies(documents.size(), e.getOperationResult());
+        }
+    }
+
+    /**
+     * Builds an immutable {@link Doco}. A builder is not thread-safe, but the Docos it builds are.
+     */
+    public static final class Builder {
+
+        private SearchService searchService;
+        private ConversionListener conversionListener;
+        private LimitPolicy limitPolicy = LimitPolicy.REJECT;
+        private FragmentCache fragmentCache;
+        private DependencyIndex dependencyIndex;
+        private ObjectifyFactory objectifyFactory;
+        private final List<ConverterRegistration<?>> converters = new ArrayList<ConverterRegistration<?>>();
+        private final List<Class<?>> classes = new ArrayList<Class<?>>();
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the {@link SearchService} which provides the {@link Index}es (e.g. one created with a custom deadline
+         * or namespace through {@link SearchServiceFactory#getSearchService(SearchServiceConfig)}). By default the
+         * {@link Index}es are obtained from the default {@link SearchService} of the current namespace (see
+         * {@link NamespaceManager}).
+         * 
+         * @param searchService
+         *            the {@link SearchService} to be used
+         * @return this builder
+         */
+        public Builder searchService(SearchService searchService) {
+            if (searchService == null) {
+                throw new IllegalArgumentException("The SearchService can not be null.");
+            }
+            this.searchService = searchService;
+            return this;
+        }
+
+        /**
+         * Sets the listener notified after each conversion. When there is no listener the conversions are not
+         * measured at all.
+         * 
+         * @param conversionListener
+         *            the thread-safe listener, or null for none
+         * @return this builder
+         */
+        public Builder conversionListener(ConversionListener conversionListener) {
+            this.conversionListener = conversionListener;
+            return this;
+        }
+
+        /**
+         * Sets what is done with the documents which violate the limits of the Search API (see
+         * {@link LimitViolation}). The limits are checked while each document is built, so an invalid document never
+         * reaches the Search API. The default is {@link LimitPolicy#REJECT}.
+         * 
+         * @param limitPolicy
+         *            the policy
+         * @return this builder
+         */
+        public Builder limitPolicy(LimitPolicy limitPolicy) {
+            if (limitPolicy == null) {
+                throw new IllegalArgumentException("The LimitPolicy can not be null.");
+            }
+            this.limitPolicy = limitPolicy;
+            return this;
+        }
+
+        /**
+         * Sets the cache of the fields built from the entities referenced with {@link DocumentRef}. The documents of
+         * the objects which reference the same entities then reuse their fields instead of loading and converting the
+         * entities again. By default the referenced entities are converted for each document.
+         * 
+         * @param fragmentCache
+         *            the cache, or null for none
+         * @return this builder
+         */
+        public Builder fragmentCache(FragmentCache fragmentCache) {
+            this.fragmentCache = fragmentCache;
+            return this;
+        }
+
+        /**
+         * Sets the index where the entities referenced with {@link DocumentRef} by each converted document are
+         * recorded, so {@link Doco#reindexDependents(Key, DependencyIndex.Dependent, int)} can put again the
+         * documents made stale by a change of an entity. Only the documents with an id are recorded.
+         * 
+         * @param dependencyIndex
+         *            the index, or null for none
+         * @return this builder
+         */
+        public Builder dependencyIndex(DependencyIndex dependencyIndex) {
+            this.dependencyIndex = dependencyIndex;
+            return this;
+        }
+
+        /**
+         * Sets the factory of the Objectify which loads the entities referenced with {@link DocumentRef} and the
+         * dependents put again by {@link Doco#reindexDependents(Key, DependencyIndex.Dependent, int)}. By default
+         * they are loaded with {@link ObjectifyService#ofy()}.
+         * 
+         * @param objectifyFactory
+         *            the factory, or null for the default one
+         * @return this builder
+         */
+        public Builder objectifyFactory(ObjectifyFactory objectifyFactory) {
+            this.objectifyFactory = objectifyFactory;
+            return this;
+        }
+
+        /**
+         * Sets the converter of a Java type for a {@link FieldType} used by the Doco, like
+         * {@link Doco#registerConverter} does for the Docos which are not built. The Doco starts with the converters
+         * registered with {@link Doco#registerConverter} when it is built, and then these ones.
+         * 
+         * @param type
+         *            the Java type of the fields
+         * @param fieldType
+         *            the {@link FieldType} of the fields
+         * @param converter
+         *            the thread-safe converter
+         * @return this builder
+         */
+        public <T> Builder converter(Class<T> type, FieldType fieldType, TypeConverter<T, ?> converter) {
+            if (type == null || fieldType == null || converter == null) {
+                throw new IllegalArgumentException("The type, the FieldType and the converter can not be null.");
+            }
+            converters.add(new ConverterRegistration<T>(type, fieldType, converter));
+            return this;
+        }
+
+        /**
+         * Adds indexed classes whose mappings are built and validated with the converters of the Doco when it is
+         * built, like {@link Doco#register} does for the Docos which are not built.
+         * 
+         * @param classes
+         *            the classes annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass}
+         * @return this builder
+         */
+        public Builder register(Class<?>... classes) {
+            this.classes.addAll(Arrays.asList(classes));
+            return this;
+        }
+
+        /**
+         * @return a new {@link Doco} with the settings of this builder
+         * @throws MappingValidationException
+         *             with all the problems found in the mappings of the registered classes
+         */
+        public Doco build() throws MappingValidationException {
+            ConverterRegistry converterRegistry = new ConverterRegistry(ConverterRegistry.getDefault());
+            for (ConverterRegistration<?> registration : converters) {
+                registration.registerIn(converterRegistry);
+            }
+            // the subclasses registered with Doco.register stay known to the Doco
+            MappingRegistry mappingRegistry = new MappingRegistry(converterRegistry, MappingRegistry.getDefault());
+            Doco.register(mappingRegistry, classes);
+            return new Doco(this, mappingRegistry);
+        }
+    }
+
+    /**
+     * A converter given to a {@link Builder}, registered in the {@link ConverterRegistry} of each Doco it builds.
+     */
+    private static final class ConverterRegistration<T> {
+
+        private final Class<T> type;
+        private final FieldType fieldType;
+        private final TypeConverter<T, ?> converter;
+
+        ConverterRegistration(Class<T> type, FieldType fieldType, TypeConverter<T, ?> converter) {
+            this.type = type;
+            this.fieldType = fieldType;
+            this.converter = converter;
+        }
+
+        void registerIn(ConverterRegistry converterRegistry) {
+            converterRegistry.register(type, fieldType, converter);
+        }
+    }
+}
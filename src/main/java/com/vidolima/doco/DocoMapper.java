@@ -0,0 +1,241 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.FacetType;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.annotation.PrefixField;
+
+/**
+ * Base class of the mappers generated at compile time by {@link com.vidolima.doco.processor.DocoMapperProcessor}. A
+ * generated mapper describes the mapping of one class with names and types resolved from its annotations, and accesses
+ * its fields and constructor with plain Java code. When a generated mapper is found for a class, Doco builds the
+ * mapping from it instead of reading the annotations through reflection.
+ *
+ * The mapper of a class {@code com.example.Foo} is named {@code com.example.Foo_DocoMapper}; for a nested class
+ * {@code com.example.Outer.Inner} it is named {@code com.example.Outer_Inner_DocoMapper}. This class is not meant to be
+ * extended by hand.
+ *
+ * @param <T>
+ *            the mapped class
+ */
+public abstract class DocoMapper<T> {
+
+    /**
+     * The suffix appended to the name of the mapped class to obtain the name of its mapper.
+     */
+    public static final String SUFFIX = "_DocoMapper";
+
+    private final Class<T> type;
+    private String indexName;
+    private String discriminator;
+    private final List<Class<?>> subclasses = new ArrayList<Class<?>>();
+    private final List<FieldAccessor> idFields = new ArrayList<FieldAccessor>(1);
+    private final List<FieldMapping> fields = new ArrayList<FieldMapping>();
+    private final List<FacetMapping> facets = new ArrayList<FacetMapping>();
+    private final List<PrefixMapping> prefixes = new ArrayList<PrefixMapping>();
+    private final List<NestedMapping> refs = new ArrayList<NestedMapping>();
+    private final List<NestedMapping> embeds = new ArrayList<NestedMapping>();
+
+    protected DocoMapper(Class<T> type) {
+        this.type = type;
+    }
+
+    /**
+     * Obtains the generated mapper of the given class.
+     *
+     * @param classOfObj
+     *            the mapped class
+     * @return the mapper, or null if no mapper was generated for the class
+     */
+    static DocoMapper<?> forClass(Class<?> classOfObj) {
+        if (classOfObj.isPrimitive() || classOfObj.isArray() || classOfObj.getName().startsWith("java.")) {
+            return null;
+        }
+
+        Class<?> mapperClass;
+        try {
+            mapperClass = Class.forName(getMapperName(classOfObj), true, classOfObj.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+
+        try {
+            DocoMapper<?> mapper = (DocoMapper<?>) mapperClass.newInstance();
+            if (!classOfObj.equals(mapper.getType())) {
+                throw new IllegalStateException(mapperClass.getName() + " does not map " + classOfObj);
+            }
+            return mapper;
+        } catch (InstantiationException e) {
+            throw new IllegalStateException("Could not create the mapper " + mapperClass.getName(), e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Could not create the mapper " + mapperClass.getName(), e);
+        }
+    }
+
+    /**
+     * Obtains the binary name of the mapper generated for the given class.
+     *
+     * @param classOfObj
+     *            the mapped class
+     * @return the name of the mapper class
+     */
+    static String getMapperName(Class<?> classOfObj) {
+        String name = classOfObj.getName();
+        int lastDot = name.lastIndexOf('.');
+        String packagePrefix = lastDot < 0 ? "" : name.substring(0, lastDot + 1);
+        return packagePrefix + name.substring(lastDot + 1).replace('$', '_') + SUFFIX;
+    }
+
+    /**
+     * @return the mapped class
+     */
+    public final Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Creates a new instance of the mapped class. Mappers of classes without an accessible no-arg constructor do not
+     * override this method.
+     *
+     * @return the new instance
+     * @throws InstantiationException
+     *             if the class can not be instantiated by the mapper
+     */
+    public T newInstance() throws InstantiationException {
+        throw new InstantiationException(type.getName() + " has no accessible no-arg constructor.");
+    }
+
+    /**
+     * Declares the name of the index defined by {@link DocumentIndex} or {@link DocumentIndexSubClass}.
+     */
+    protected final void indexName(String name) {
+        this.indexName = name;
+    }
+
+    /**
+     * Declares the discriminator defined by {@link DocumentIndexSubClass}.
+     */
+    protected final void discriminator(String discriminator) {
+        this.discriminator = discriminator;
+    }
+
+    /**
+     * Declares a subclass annotated with {@link DocumentIndexSubClass} compiled with the class.
+     */
+    protected final void subclass(Class<?> subclass) {
+        subclasses.add(subclass);
+    }
+
+    /**
+     * Declares the field annotated with {@link DocumentId}.
+     */
+    protected final void id(FieldAccessor accessor) {
+        idFields.add(accessor);
+    }
+
+    /**
+     * Declares a field annotated with {@link DocumentField}.
+     */
+    protected final void field(String name, FieldType fieldType, FieldAccessor accessor) {
+        fields.add(FieldMapping.forField(accessor, name, fieldType));
+    }
+
+    /**
+     * Declares a field annotated with {@link DocumentCollection} whose element type is not declared.
+     */
+    protected final void collection(String name, FieldType fieldType, DocumentCollectionType collectionType,
+        FieldAccessor accessor) {
+        fields.add(FieldMapping.forCollection(accessor, name, fieldType, collectionType, null));
+    }
+
+    /**
+     * Declares a field annotated with {@link DocumentCollection} with the type of its elements.
+     */
+    protected final void collection(String name, FieldType fieldType, DocumentCollectionType collectionType,
+        Class<?> elementType, FieldAccessor accessor) {
+        fields.add(FieldMapping.forCollection(accessor, name, fieldType, collectionType, elementType));
+    }
+
+    /**
+     * Declares a field annotated with {@link FacetField}.
+     */
+    protected final void facet(String name, FacetType facetType, FieldAccessor accessor) {
+        facets.add(new FacetMapping(accessor, name, facetType));
+    }
+
+    /**
+     * Declares a field annotated with {@link PrefixField}.
+     */
+    protected final void prefix(String name, int minLength, int maxLength, int maxTerms, FieldAccessor accessor) {
+        prefixes.add(new PrefixMapping(accessor, name, minLength, maxLength, maxTerms));
+    }
+
+    /**
+     * Declares a field annotated with {@link DocumentRef}.
+     */
+    protected final void ref(Class<?> targetClass, FieldAccessor accessor) {
+        refs.add(new NestedMapping(accessor, targetClass));
+    }
+
+    /**
+     * Declares a field annotated with {@link DocumentEmbed}.
+     */
+    protected final void embed(FieldAccessor accessor) {
+        embeds.add(new NestedMapping(accessor, accessor.getType()));
+    }
+
+    /**
+     * Declares a collection or an array of embedded objects annotated with {@link DocumentEmbed}.
+     */
+    protected final void embed(Class<?> elementType, DocumentCollectionType collectionType, boolean readBack,
+        FieldAccessor accessor) {
+        embeds.add(new NestedMapping(accessor, elementType, true, collectionType, readBack));
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    String getDiscriminator() {
+        return discriminator;
+    }
+
+    List<Class<?>> getSubclasses() {
+        return subclasses;
+    }
+
+    List<FieldAccessor> getIdFields() {
+        return idFields;
+    }
+
+    List<FieldMapping> getFields() {
+        return fields;
+    }
+
+    List<FacetMapping> getFacets() {
+        return facets;
+    }
+
+    List<PrefixMapping> getPrefixes() {
+        return prefixes;
+    }
+
+    List<NestedMapping> getRefs() {
+        return refs;
+    }
+
+    List<NestedMapping> getEmbeds() {
+        return embeds;
+    }
+}
@@ -0,0 +1,157 @@
+package com.vidolima.doco;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Facet;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.Index;
+
+/**
+ * Computes a stable hash of the content of a {@link Document}: its id, locale, fields (name, type, locale and value)
+ * and facets. Fields and facets are hashed in the order of their names, and the values of a multi-valued field in
+ * the order they were added, so two documents built from the same object have the same fingerprint.
+ *
+ * The rank is not part of the fingerprint: Doco does not set it, and the Search API defaults it to the time the
+ * document is built.
+ *
+ * @see FingerprintStore
+ */
+public final class DocumentFingerprint {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final Comparator<Field> FIELD_ORDER = new Comparator<Field>() {
+        @Override
+        public int compare(Field f1, Field f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    private static final Comparator<Facet> FACET_ORDER = new Comparator<Facet>() {
+        @Override
+        public int compare(Facet f1, Facet f2) {
+            return f1.getName().compareTo(f2.getName());
+        }
+    };
+
+    private final MessageDigest digest;
+
+    private DocumentFingerprint() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available.", e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of the given document.
+     *
+     * @param document
+     *            the {@link Document}
+     * @return the fingerprint as an hexadecimal string
+     */
+    public static String of(Document document) {
+        return new DocumentFingerprint().compute(document);
+    }
+
+    /**
+     * Obtains the key identifying a document in a {@link FingerprintStore}: the namespace and name of its index and
+     * its id.
+     */
+    static String key(Index index, String documentId) {
+        return index.getNamespace() + "/" + index.getName() + "/" + documentId;
+    }
+
+    private String compute(Document document) {
+        update(document.getId());
+        update(document.getLocale());
+
+        // the sort is stable, the values of a multi-valued field keep their order
+        List<Field> fields = new ArrayList<Field>();
+        for (Field field : document.getFields()) {
+            fields.add(field);
+        }
+        Collections.sort(fields, FIELD_ORDER);
+        update(fields.size());
+        for (Field field : fields) {
+            update(field.getName());
+            update(field.getType().name());
+            update(field.getLocale());
+            update(getValue(field));
+        }
+
+        List<Facet> facets = new ArrayList<Facet>();
+        for (Facet facet : document.getFacets()) {
+            facets.add(facet);
+        }
+        Collections.sort(facets, FACET_ORDER);
+        update(facets.size());
+        for (Facet facet : facets) {
+            update(facet.getName());
+            update(facet.getAtom());
+            update(facet.getNumber() == null ? null : facet.getNumber().toString());
+        }
+
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static String getValue(Field field) {
+        switch (field.getType()) {
+        case TEXT:
+            return field.getText();
+        case HTML:
+            return field.getHTML();
+        case ATOM:
+            return field.getAtom();
+        case DATE:
+            return field.getDate() == null ? null : String.valueOf(field.getDate().getTime());
+        case NUMBER:
+            return field.getNumber() == null ? null : field.getNumber().toString();
+        case GEO_POINT:
+            return field.getGeoPoint() == null ? null : field.getGeoPoint().getLatitude() + ","
+                + field.getGeoPoint().getLongitude();
+        default:
+            throw new IllegalStateException("Unknown field type " + field.getType());
+        }
+    }
+
+    private void update(int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+    }
+
+    private void update(Locale locale) {
+        update(locale == null ? null : locale.toString());
+    }
+
+    /**
+     * Hashes the length before the bytes, so consecutive values can not be confused. Null is hashed as length -1.
+     */
+    private void update(String value) {
+        if (value == null) {
+            update(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        update(bytes.length);
+        digest.update(bytes);
+    }
+}
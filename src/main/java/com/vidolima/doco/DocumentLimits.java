@@ -0,0 +1,318 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Facet;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.checkers.SearchApiLimits;
+import com.vidolima.doco.LimitViolation.Action;
+import com.vidolima.doco.LimitViolation.Kind;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.DocumentLimitException;
+
+/**
+ * Checks the values of one document against the limits of the Search API while {@link DocumentParser} builds it, and
+ * keeps an estimate of its encoded size: the UTF-8 bytes of the id and of the names and string values, plus a fixed
+ * size for the other values and for each field. The violations are handled according to the {@link LimitPolicy} and
+ * recorded as {@link LimitViolation}s.
+ *
+ * Instances are not thread-safe; each document is built with its own.
+ */
+final class DocumentLimits {
+
+    // estimated encoded sizes of the values which are not strings, and upper bounds of the framing of each field
+    // (tags, lengths, type and language) and of the document (language and rank)
+    private static final int NUMBER_BYTES = 8;
+    private static final int DATE_BYTES = 8;
+    private static final int GEO_POINT_BYTES = 16;
+    private static final int FIELD_BYTES = 24;
+    private static final int DOCUMENT_BYTES = 32;
+
+    private final LimitPolicy policy;
+    private final List<LimitViolation> violations = new ArrayList<LimitViolation>(0);
+    private String documentId;
+    private long estimatedBytes = DOCUMENT_BYTES;
+    private boolean rejected;
+
+    DocumentLimits(LimitPolicy policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("The LimitPolicy can not be null.");
+        }
+        this.policy = policy;
+    }
+
+    /**
+     * Checks the id of the document, which is never truncated: a document with an id too long is always rejected.
+     */
+    void checkId(String id) {
+        this.documentId = id;
+        if (id == null) {
+            return;
+        }
+        int bytes = utf8Length(id);
+        estimatedBytes += bytes;
+        if (bytes > SearchApiLimits.MAXIMUM_DOCUMENT_ID_LENGTH) {
+            rejected = true;
+            violations.add(new LimitViolation(Kind.ID_TOO_LONG, null, Action.REJECTED, "the id has " + bytes
+                + " bytes, the maximum is " + SearchApiLimits.MAXIMUM_DOCUMENT_ID_LENGTH + "."));
+        }
+    }
+
+    /**
+     * Checks a TEXT, HTML or ATOM value.
+     *
+     * @return the value to be added, truncated if needed, or null if the field must be dropped
+     */
+    String checkString(String name, String value, FieldType fieldType) {
+        boolean atom = FieldType.ATOM.equals(fieldType);
+        int limit = atom ? SearchApiLimits.MAXIMUM_ATOM_LENGTH : SearchApiLimits.MAXIMUM_TEXT_LENGTH;
+        String checked = value;
+        int bytes = utf8Length(value);
+
+        if (bytes > limit) {
+            String message = "the value has " + bytes + " bytes, the maximum is " + limit + ".";
+            Kind kind = atom ? Kind.ATOM_TOO_LONG : Kind.TEXT_TOO_LONG;
+            if (atom || policy != LimitPolicy.TRUNCATE) {
+                violate(kind, name, message);
+                return null;
+            }
+            checked = truncate(value, limit);
+            bytes = utf8Length(checked);
+            violations.add(new LimitViolation(kind, name, Action.TRUNCATED, message));
+        }
+
+        if (!atom && policy == LimitPolicy.TRUNCATE) {
+            long available = SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH - estimatedBytes - utf8Length(name) - FIELD_BYTES;
+            if (bytes > available && available > 0) {
+                violations.add(new LimitViolation(Kind.DOCUMENT_TOO_LARGE, name, Action.TRUNCATED, "the value was "
+                    + "truncated to " + available + " bytes to keep the document within "
+                    + SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH + " bytes."));
+                checked = truncate(checked, (int) available);
+                bytes = utf8Length(checked);
+            }
+        }
+        return fits(name, bytes) ? checked : null;
+    }
+
+    /**
+     * Checks a NUMBER value.
+     *
+     * @return true if the field can be added
+     */
+    boolean checkNumber(String name, double value) {
+        if (value < SearchApiLimits.MINIMUM_NUMBER_VALUE || value > SearchApiLimits.MAXIMUM_NUMBER_VALUE) {
+            violate(Kind.NUMBER_OUT_OF_RANGE, name, "the value " + value + " is out of the range "
+                + (long) SearchApiLimits.MINIMUM_NUMBER_VALUE + " to " + (long) SearchApiLimits.MAXIMUM_NUMBER_VALUE
+                + ".");
+            return false;
+        }
+        return fits(name, NUMBER_BYTES);
+    }
+
+    /**
+     * Checks a DATE value.
+     *
+     * @return true if the field can be added
+     */
+    boolean checkDate(String name, Date value) {
+        if (value.before(SearchApiLimits.MINIMUM_DATE_VALUE) || value.after(SearchApiLimits.MAXIMUM_DATE_VALUE)) {
+            violate(Kind.DATE_OUT_OF_RANGE, name, "the value " + value + " is out of the range "
+                + SearchApiLimits.MINIMUM_DATE_VALUE + " to " + SearchApiLimits.MAXIMUM_DATE_VALUE + ".");
+            return false;
+        }
+        return fits(name, DATE_BYTES);
+    }
+
+    /**
+     * Checks a GEO_POINT value, whose coordinates are checked by the {@link com.google.appengine.api.search.GeoPoint}.
+     *
+     * @return true if the field can be added
+     */
+    boolean checkGeoPoint(String name) {
+        return fits(name, GEO_POINT_BYTES);
+    }
+
+    /**
+     * Checks a facet.
+     *
+     * @return true if the facet can be added
+     */
+    boolean checkFacet(String name, String atom) {
+        return fits(name, atom == null ? NUMBER_BYTES : utf8Length(atom));
+    }
+
+    /**
+     * Finishes the checks of the document.
+     *
+     * @throws DocumentLimitException
+     *             if the document was rejected
+     */
+    void finish() throws DocumentLimitException {
+        if (policy == LimitPolicy.REJECT && estimatedBytes > SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH) {
+            rejected = true;
+            violations.add(new LimitViolation(Kind.DOCUMENT_TOO_LARGE, null, Action.REJECTED, "the document has about "
+                + estimatedBytes + " bytes, the maximum is " + SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH + "."));
+        }
+        if (rejected) {
+            throw new DocumentLimitException("The document '" + documentId
+                + "' violates the limits of the Search API.", violations);
+        }
+    }
+
+    /**
+     * @return the id of the document, or null if it will be assigned by the Search API
+     */
+    String getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * @return true if the document was rejected
+     */
+    boolean isRejected() {
+        return rejected;
+    }
+
+    /**
+     * @return the estimated size of the fields and facets checked so far
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return the violations found so far
+     */
+    List<LimitViolation> getViolations() {
+        return Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * Counts a field in the size of the document. When the document is not rejected as a whole, the fields which do
+     * not fit are dropped.
+     */
+    private boolean fits(String name, long valueBytes) {
+        long fieldBytes = fieldBytes(name, valueBytes);
+        if (policy != LimitPolicy.REJECT && estimatedBytes + fieldBytes > SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH) {
+            violations.add(new LimitViolation(Kind.DOCUMENT_TOO_LARGE, name, Action.DROPPED, "the field has "
+                + fieldBytes + " bytes, only " + (SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH - estimatedBytes)
+                + " are left of " + SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH + "."));
+            return false;
+        }
+        estimatedBytes += fieldBytes;
+        return true;
+    }
+
+    /**
+     * Records a violation of a field which can not be truncated. The field is dropped in any case, so it does not
+     * fail the {@link com.google.appengine.api.search.Field.Builder}; with {@link LimitPolicy#REJECT} the document is
+     * rejected once all its fields are checked.
+     */
+    private void violate(Kind kind, String name, String message) {
+        if (policy == LimitPolicy.REJECT) {
+            rejected = true;
+            violations.add(new LimitViolation(kind, name, Action.REJECTED, message));
+        } else {
+            violations.add(new LimitViolation(kind, name, Action.DROPPED, message));
+        }
+    }
+
+    /**
+     * Estimates the size of a document already built, as it is estimated while the document is checked.
+     *
+     * @return the estimated size of the id and of all the fields and facets of the document
+     */
+    static long estimateBytes(Document document) {
+        long bytes = DOCUMENT_BYTES + utf8Length(document.getId());
+        for (Field field : document.getFields()) {
+            bytes += fieldBytes(field.getName(), valueBytes(field));
+        }
+        for (Facet facet : document.getFacets()) {
+            bytes += fieldBytes(facet.getName(), facet.getAtom() == null ? NUMBER_BYTES : utf8Length(facet.getAtom()));
+        }
+        return bytes;
+    }
+
+    private static long fieldBytes(String name, long valueBytes) {
+        return utf8Length(name) + valueBytes + FIELD_BYTES;
+    }
+
+    private static long valueBytes(Field field) {
+        switch (field.getType()) {
+        case TEXT:
+            return utf8Length(field.getText());
+        case HTML:
+            return utf8Length(field.getHTML());
+        case ATOM:
+            return utf8Length(field.getAtom());
+        case NUMBER:
+            return NUMBER_BYTES;
+        case DATE:
+            return DATE_BYTES;
+        case GEO_POINT:
+            return GEO_POINT_BYTES;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of bytes of the string encoded in UTF-8
+     */
+    static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the longest prefix of the string with at most the given number of bytes in UTF-8, never splitting a
+     *         surrogate pair
+     */
+    static String truncate(String value, int maxBytes) {
+        int bytes = 0;
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int charBytes;
+            int chars = 1;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                charBytes = 4;
+                chars = 2;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                break;
+            }
+            bytes += charBytes;
+            i += chars;
+        }
+        return value.substring(0, i);
+    }
+}
@@ -2,13 +2,13 @@ package com.vidolima.doco;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.lang3.StringUtils;
-
-import com.google.appengine.api.datastore.GeoPt;
 import com.google.appengine.api.search.Document;
 import com.google.appengine.api.search.Facet;
 import com.google.appengine.api.search.Field;
@@ -17,13 +17,10 @@ import com.google.common.base.Strings;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.Ref;
-import com.vidolima.doco.annotation.DocumentCollection;
-import com.vidolima.doco.annotation.DocumentEmbed;
-import com.vidolima.doco.annotation.DocumentField;
 import com.vidolima.doco.annotation.DocumentId;
-import com.vidolima.doco.annotation.DocumentRef;
-import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
 import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.DocumentLimitException;
 import com.vidolima.doco.exception.DocumentParseException;
 
 /**
@@ -35,60 +32,68 @@ import com.vidolima.doco.exception.DocumentParseException;
 final class DocumentParser {
 
     private static final String DEFAULT_FIELD_NAME_PREFIX = "";
-    
-    private ObjectifyFactory objectifyFactory = new ObjectifyFactory();
-    
+
     /**
-     * Obtains the {@link java.lang.reflect.Field} annotated with {@link DocumentId} annotation.
-     * 
-     * @param classOfObj
-     *            the class of the object that contains the field
-     * @return the {@link java.lang.reflect.Field} that contains the {@link DocumentId} annotation
-     * @exception DocumentParseException
+     * The name of the ATOM field holding the discriminator of a class annotated with {@link DocumentIndexSubClass}.
      */
-    private java.lang.reflect.Field getDocumentIdField(Class<?> classOfObj) throws DocumentParseException {
-        List<java.lang.reflect.Field> result = ReflectionUtils.getAnnotatedFields(classOfObj, DocumentId.class);
-        
-        if (result.size() > 1) {
-            throw new DocumentParseException("More than one occurrence of @DocumentId found in " + classOfObj);
-        }
-
-        if (result.isEmpty()) {
-            throw new DocumentParseException("No @DocumentId annotation was found in " + classOfObj);
-        }
-
-        return result.get(0);
-    }
+    static final String TYPE_FIELD_NAME = "doco_type";
 
     /**
-     * Obtains all the {@link java.lang.reflect.Field}s annotated with the {@link DocumentId}.
-     * 
-     * @param classOfObj
-     *            the class of the object that contains the fields to be search
-     * @return all the annotated {@link java.lang.reflect.Field} that contains the {@link DocumentField} annotation.
+     * The empty ATOM written in place of a missing value of an element of a collection of embedded objects read back,
+     * so the values of the following elements keep their position.
      */
-    List<java.lang.reflect.Field> getAllDocumentField(Class<?> classOfObj) {
-        return ReflectionUtils.getAnnotatedFields(classOfObj, DocumentField.class);
+    static final String MISSING_VALUE = "";
+
+    private final MappingRegistry mappingRegistry;
+
+    private final LimitPolicy limitPolicy;
+
+    // the fields of the referenced entities built by previous conversions, null when they are always built
+    private final FragmentCache fragmentCache;
+
+    // the factory of the Objectify which loads the referenced entities, null for the one of ObjectifyService
+    private final ObjectifyFactory objectifyFactory;
+
+    DocumentParser() {
+        this(MappingRegistry.getDefault(), LimitPolicy.REJECT);
     }
 
-    private List<java.lang.reflect.Field> getAllRefFields(Class<?> classOfObj) {
-        return ReflectionUtils.getAnnotatedFields(classOfObj, DocumentRef.class);
+    DocumentParser(LimitPolicy limitPolicy) {
+        this(MappingRegistry.getDefault(), limitPolicy);
     }
 
-    private List<java.lang.reflect.Field> getAllEmbedFields(Class<?> classOfObj) {
-        return ReflectionUtils.getAnnotatedFields(classOfObj, DocumentEmbed.class);
+    DocumentParser(MappingRegistry mappingRegistry, LimitPolicy limitPolicy) {
+        this(mappingRegistry, limitPolicy, null, null);
     }
 
-    List<java.lang.reflect.Field> getAllFacetFields(Class<?> classOfObj) {
-        return ReflectionUtils.getAnnotatedFields(classOfObj, FacetField.class);
+    DocumentParser(MappingRegistry mappingRegistry, LimitPolicy limitPolicy, FragmentCache fragmentCache,
+        ObjectifyFactory objectifyFactory) {
+        this.mappingRegistry = mappingRegistry;
+        this.limitPolicy = limitPolicy;
+        this.fragmentCache = fragmentCache;
+        this.objectifyFactory = objectifyFactory;
     }
-    
+
     /**
-     * Obtains all the {@link java.lang.reflect.Field}s annotated with {@link DocumentCollection}
-     * @author James Huang
+     * Obtains the accessor of the field annotated with {@link DocumentId} annotation.
+     * 
+     * @param mapping
+     *            the mapping of the class that contains the field
+     * @return the {@link FieldAccessor} of the field that contains the {@link DocumentId} annotation
+     * @exception DocumentParseException
      */
-    List<java.lang.reflect.Field> getAllDocumentCollection(Class<?> classOfObj){
-    	return ReflectionUtils.getAnnotatedFields(classOfObj, DocumentCollection.class);
+    private FieldAccessor getDocumentIdField(ClassMapping mapping) throws DocumentParseException {
+        List<FieldAccessor> result = mapping.getIdFields();
+        
+        if (result.size() > 1) {
+            throw new DocumentParseException("More than one occurrence of @DocumentId found in " + mapping.getType());
+        }
+
+        if (result.isEmpty()) {
+            throw new DocumentParseException("No @DocumentId annotation was found in " + mapping.getType());
+        }
+
+        return result.get(0);
     }
 
     /**
@@ -96,18 +101,13 @@ final class DocumentParser {
      * 
      * @param obj
      *            the object base
-     * @param classOfObj
-     *            the class of object
+     * @param field
+     *            the accessor of the field annotated with {@link DocumentId}
      * @return the id of the document
-     * @throws IllegalArgumentException
-     * @throws IllegalAccessException
      */
-    @SuppressWarnings({ "unchecked", "rawtypes" })
-    private <T> T getId(Object obj, Class<?> classOfObj, Class classOfT) throws IllegalArgumentException,
-        IllegalAccessException {
+    private Object getId(Object obj, FieldAccessor field) {
 
-        java.lang.reflect.Field field = getDocumentIdField(classOfObj);
-        T id = (T) ReflectionUtils.getFieldValue(field, obj, classOfT);
+        Object id = field.get(obj);
 
 //        if (id == null) {
 //        	//if fieldType is Long auto generate and Id
@@ -128,175 +128,345 @@ final class DocumentParser {
     }
 
     /**
-     * Obtains a {@link com.google.appengine.api.search.Field} given a name, value and type.
+     * Adds a NUMBER {@link com.google.appengine.api.search.Field} given a name and value. The value of primitive
+     * fields is read through the primitive accessor, so it is never boxed; the others are converted by the
+     * {@link TypeConverter} of the field.
      * 
-     * @param fieldValue
-     *            the value to be set to the returned field
+     * @param builder
+     *            the {@link Document.Builder} that receives the field
      * @param name
-     *            the name of returned field
-     * @param field
-     *            the {@link java.lang.reflect.Field}
+     *            the name of the field
+     * @param fieldMapping
+     *            the mapping of the field
      * @param obj
      *            the object base
+     * @param limits
+     *            the limits of the document
+     * @return true if the field was added, false if the value is null or was dropped
+     */
+    private boolean addSearchNumberField(Document.Builder builder, String name, FieldMapping fieldMapping, Object obj,
+        DocumentLimits limits) {
+
+        FieldAccessor accessor = fieldMapping.getAccessor();
+        double number;
+        if (fieldMapping.isPrimitiveNumber()) {
+            number = accessor.getDouble(obj);
+        } else {
+            Object fieldValue = accessor.get(obj);
+            if (fieldValue == null)
+                return false;
+            number = (Double) toSearchValue(fieldMapping, fieldValue);
+        }
+
+        return addSearchNumberField(builder, name, number, limits);
+    }
+
+    /**
+     * Adds a NUMBER {@link com.google.appengine.api.search.Field} given a name and a primitive value, dropped if it
+     * violates the limits.
      * 
-     * @return com.google.appengine.api.search.Field
+     * @param builder
+     *            the {@link Document.Builder} that receives the field
+     * @param name
+     *            the name of the field
+     * @param number
+     *            the value of the field
+     * @param limits
+     *            the limits of the document
+     * @return true if the field was added, false if it was dropped
      */
-    private com.google.appengine.api.search.Field getSearchNumberField(String name, java.lang.reflect.Field field,
-        Object fieldValue) {
+    private boolean addSearchNumberField(Document.Builder builder, String name, double number,
+        DocumentLimits limits) {
+        if (limits.checkNumber(name, number)) {
+            builder.addField(Field.newBuilder().setName(name).setNumber(number));
+            return true;
+        }
+        return false;
+    }
 
-        if (fieldValue == null)
-            return null;
+    /**
+     * Adds a {@link com.google.appengine.api.search.Field} of any {@link FieldType} given a name and a value already
+     * converted to a search value.
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the field
+     * @param name
+     *            the name of the field
+     * @param searchValue
+     *            the value returned by the {@link TypeConverter} of the field
+     * @param fieldType
+     *            the {@link FieldType} of the field
+     * @param limits
+     *            the limits of the document
+     * @return true if the field was added, false if it was dropped
+     */
+    private boolean addSearchField(Document.Builder builder, String name, Object searchValue, FieldType fieldType,
+        DocumentLimits limits) {
+        switch (fieldType) {
+        case TEXT:
+        case HTML:
+        case ATOM:
+            return addSearchStringField(builder, name, (String) searchValue, fieldType, limits);
+        case NUMBER:
+            return addSearchNumberField(builder, name, (Double) searchValue, limits);
+        case DATE:
+            if (limits.checkDate(name, (Date) searchValue)) {
+                builder.addField(Field.newBuilder().setName(name).setDate((Date) searchValue));
+                return true;
+            }
+            return false;
+        case GEO_POINT:
+            if (limits.checkGeoPoint(name)) {
+                builder.addField(Field.newBuilder().setName(name).setGeoPoint((GeoPoint) searchValue));
+                return true;
+            }
+            return false;
+        default:
+            return false;
+        }
+    }
 
-        if (Integer.TYPE.equals(field.getType()) || Integer.class.equals(field.getType())) {
-            Integer number = (Integer) fieldValue;
-            return Field.newBuilder().setName(name).setNumber(number).build();
+    /**
+     * Adds a {@link com.google.appengine.api.search.Field} with the same name for each value of a @DocumentCollection
+     * field. The values of primitive arrays are added without boxing, the others are converted by the
+     * {@link TypeConverter} of the element type. Null values are skipped. NUMBER and DATE fields can not be repeated,
+     * so their values are added as ATOM fields (see {@link RepeatedValues}).
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the fields
+     * @param name
+     *            the name of the fields
+     * @param fieldMapping
+     *            the mapping of the field
+     * @param obj
+     *            the object base
+     * @param limits
+     *            the limits of the document
+     */
+    @SuppressWarnings("rawtypes")
+    private void addSearchCollectionFields(Document.Builder builder, String name, FieldMapping fieldMapping,
+        Object obj, DocumentLimits limits) {
+        Object fieldValue = fieldMapping.getAccessor().get(obj);
+        if (fieldValue == null) {
+            return;
         }
-        if (Long.TYPE.equals(field.getType()) || Long.class.equals(field.getType())) {
-            Long number = (Long) fieldValue;
-            return Field.newBuilder().setName(name).setNumber(number).build();
+
+        if (fieldMapping.isPrimitiveArray()) {
+            if (fieldValue instanceof int[]) {
+                for (int value : (int[]) fieldValue) {
+                    addSearchStringField(builder, name, RepeatedValues.formatNumber(value), FieldType.ATOM, limits);
+                }
+            } else if (fieldValue instanceof long[]) {
+                for (long value : (long[]) fieldValue) {
+                    addSearchStringField(builder, name, RepeatedValues.formatNumber(value), FieldType.ATOM, limits);
+                }
+            } else if (fieldValue instanceof float[]) {
+                for (float value : (float[]) fieldValue) {
+                    addSearchStringField(builder, name, RepeatedValues.formatNumber(value), FieldType.ATOM, limits);
+                }
+            } else {
+                for (double value : (double[]) fieldValue) {
+                    addSearchStringField(builder, name, RepeatedValues.formatNumber(value), FieldType.ATOM, limits);
+                }
+            }
+            return;
         }
-        if (Float.TYPE.equals(field.getType()) || Float.class.equals(field.getType())) {
-            Float number = (Float) fieldValue;
-            return Field.newBuilder().setName(name).setNumber(number).build();
+
+        if (!(fieldValue instanceof Collection)) {
+            throw new IllegalArgumentException("multi-valued field must be of type Collection: "
+                + fieldMapping.getAccessor().getName());
         }
-        if (Double.TYPE.equals(field.getType()) || Double.class.equals(field.getType())) {
-            Double number = (Double) fieldValue;
-            return Field.newBuilder().setName(name).setNumber(number).build();
+        Class<?> elementType = fieldMapping.getElementType();
+        for (Object item : (Collection) fieldValue) {
+            if (item == null) {
+                continue;
+            }
+            if (!elementType.isInstance(item)) {
+                throw new IllegalArgumentException("The values of the multi-valued field '"
+                    + fieldMapping.getAccessor().getName() + "' must be " + elementType.getName() + ", found "
+                    + item.getClass().getName());
+            }
+            Object searchValue = toSearchValue(fieldMapping, item);
+            switch (fieldMapping.getFieldType()) {
+            case NUMBER:
+                addSearchStringField(builder, name, RepeatedValues.formatNumber((Double) searchValue), FieldType.ATOM,
+                    limits);
+                break;
+            case DATE:
+                addSearchStringField(builder, name, RepeatedValues.formatDate((Date) searchValue), FieldType.ATOM,
+                    limits);
+                break;
+            default:
+                addSearchField(builder, name, searchValue, fieldMapping.getFieldType(), limits);
+                break;
+            }
         }
+    }
 
-        throw new DocumentParseException(
-            "A DocumentField typed as NUMBER must be Long, Integer, Float or Double. Field '" + field.getName()
-                + "' is incompatible.");
+    /**
+     * Adds a NUMBER or DATE field of an element of a collection of embedded objects. The field is repeated once per
+     * element, so its value is added as an ATOM field (see {@link RepeatedValues}). Null values are skipped.
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the field
+     * @param name
+     *            the name of the field
+     * @param fieldMapping
+     *            the mapping of the field
+     * @param obj
+     *            the element
+     * @param limits
+     *            the limits of the document
+     * @return true if the field was added, false if the value is null or was dropped
+     */
+    private boolean addRepeatedSearchField(Document.Builder builder, String name, FieldMapping fieldMapping,
+        Object obj, DocumentLimits limits) {
+        String value;
+        if (fieldMapping.isPrimitiveNumber()) {
+            value = RepeatedValues.formatNumber(fieldMapping.getAccessor().getDouble(obj));
+        } else {
+            Object fieldValue = fieldMapping.getAccessor().get(obj);
+            if (fieldValue == null) {
+                return false;
+            }
+            Object searchValue = toSearchValue(fieldMapping, fieldValue);
+            value = FieldType.NUMBER.equals(fieldMapping.getFieldType()) ? RepeatedValues
+                .formatNumber((Double) searchValue) : RepeatedValues.formatDate((Date) searchValue);
+        }
+        return addSearchStringField(builder, name, value, FieldType.ATOM, limits);
     }
 
     /**
-     * Obtains a List of {@link com.google.appengine.api.search.Field} given a name, value and type.
-     * Note by James Huang: Modified to return a list of fields if using @DocumentCollection annotation
-     * 						if the field is instanceof Collection.class the List will have more than 1 field in the return list,
-     * 						otherwise the return List of fields will only have 1 field
+     * Converts the value of a field with the {@link TypeConverter} resolved by its mapping.
+     * 
+     * @param fieldMapping
+     *            the mapping of the field
      * @param fieldValue
-     *            the value to be set to the returned field
+     *            the value of the field, not null
+     * @return the value of the search field
+     */
+    private Object toSearchValue(FieldMapping fieldMapping, Object fieldValue) {
+        TypeConverter<Object, Object> converter = fieldMapping.getConverter();
+        if (converter == null) {
+            if (FieldType.NUMBER.equals(fieldMapping.getFieldType())) {
+                throw new DocumentParseException(
+                    "A DocumentField typed as NUMBER must be Long, Integer, Float or Double. Field '"
+                        + fieldMapping.getAccessor().getName() + "' is incompatible.");
+            }
+            Class<?> type = fieldMapping.isCollection() ? fieldMapping.getElementType() : fieldMapping.getType();
+            throw new DocumentParseException("There is no TypeConverter of " + type.getName()
+                + " for " + fieldMapping.getFieldType() + ". Field '" + fieldMapping.getAccessor().getName()
+                + "' is incompatible.");
+        }
+        return converter.toSearchValue(fieldValue);
+    }
+
+    /**
+     * Adds a TEXT, HTML or ATOM {@link com.google.appengine.api.search.Field} given a name and value, truncated or
+     * dropped if it violates the limits.
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the field
      * @param name
-     *            the name of returned field
-     * @param field
-     *            the {@link java.lang.reflect.Field}
+     *            the name of the field
+     * @param value
+     *            the string value of the field
+     * @param fieldType
+     *            TEXT, HTML or ATOM
+     * @param limits
+     *            the limits of the document
+     * @return true if the field was added, false if it was dropped
+     */
+    private boolean addSearchStringField(Document.Builder builder, String name, String value, FieldType fieldType,
+        DocumentLimits limits) {
+        String checked = limits.checkString(name, value, fieldType);
+        if (checked == null) {
+            return false;
+        }
+        switch (fieldType) {
+        case TEXT:
+            builder.addField(Field.newBuilder().setName(name).setText(checked));
+            break;
+        case HTML:
+            builder.addField(Field.newBuilder().setName(name).setHTML(checked));
+            break;
+        case ATOM:
+            builder.addField(Field.newBuilder().setName(name).setAtom(checked));
+            break;
+        default:
+            throw new IllegalArgumentException("Not a string FieldType: " + fieldType);
+        }
+        return true;
+    }
+
+    /**
+     * Adds the {@link com.google.appengine.api.search.Field}s of a mapped field to the document. If the field is a
+     * @DocumentCollection (or a @DocumentField holding a {@link Collection} of Strings) each item is added as a
+     * separate field with the same name, otherwise only one field is added.
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the fields
+     * @param name
+     *            the name of the fields
+     * @param fieldMapping
+     *            the mapping of the field
      * @param obj
      *            the object base
-     * @return the  List<{@link com.google.appengine.api.search.Field}>
-     * @throws IllegalAccessException
+     * @param repeated
+     *            true if the field belongs to an element of a collection of embedded objects, so its name is repeated
+     * @param limits
+     *            the limits of the document
+     * @return false if a single valued field was not added because its value is null or was dropped
      */
     @SuppressWarnings("rawtypes")
-	private List<com.google.appengine.api.search.Field> getSearchFieldByFieldType(String name, java.lang.reflect.Field field,
-        Object obj, FieldType fieldType) throws IllegalAccessException {
+    private boolean addSearchFields(Document.Builder builder, String name, FieldMapping fieldMapping, Object obj,
+        boolean repeated, DocumentLimits limits) {
 
-    	List<com.google.appengine.api.search.Field> fieldsToReturn = new ArrayList<>();
-    	
-        Object fieldValue = field.get(obj); // gets the value of field from obj
-        
-        if (FieldType.TEXT.equals(fieldType)) {
-        	//Check if the fieldValue is a Collection
-        	//if it is add each item in the Collection as a separate field with the same name but different value
-        	if( fieldValue instanceof Collection ){
-        		
-				Collection col = (Collection) fieldValue;
-				Iterator colIterator = col.iterator(); 
-        		while( colIterator.hasNext() ){
-        			Object text = colIterator.next();
-        			if( text instanceof String){ // multi-value fields can only be Strings, not Date of Number
-        				fieldsToReturn.add( Field.newBuilder().setName(name).setText((String) text).build() ); // we know text is a String so we can add it to the collection
-        			}
-        			else{
-//        				logger.warn("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue );
-        				throw new IllegalArgumentException("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue);
-        			}
-        			
-        		}
-        	}
-        	else{
-//        		String text = null;
-//        		if( fieldValue != null){
-//        			String.valueOf(fieldValue); // if fieldValue is not null then set the TEXT value other wise set null for the value of the field
-//        		}
-        		
-        		String text = String.valueOf(fieldValue);
-        		fieldsToReturn.add( Field.newBuilder().setName(name).setText(text).build() );
-        	}
-            
+        FieldType fieldType = fieldMapping.getFieldType();
+        if (fieldMapping.isCollection()) {
+            addSearchCollectionFields(builder, name, fieldMapping, obj, limits);
+            return true;
         }
-        if ( FieldType.HTML.equals(fieldType)) {
-        	//Check if the fieldValue is a Collection
-        	//if it is add each item in the Collection as a separate field with the same name but different value
-        	if( fieldValue instanceof Collection ){
-        		Collection col = (Collection) fieldValue;
-        		Iterator colIterator = col.iterator();
-        		while( colIterator.hasNext() ){
-        			Object html = colIterator.next();
-        			if( html instanceof String){ // multi-value fields can only be Strings not Date of Number
-        				fieldsToReturn.add( Field.newBuilder().setName(name).setHTML( (String) html).build() );
-        			}
-        			else{
-//        				logger.warn("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue );
-        				throw new IllegalArgumentException("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue);
-        			}
-        		}
-        	}
-        	else{
-//        		String html = null;
-//        		if( fieldValue != null){
-//        			html = String.valueOf(fieldValue); // if fieldValue is not null then  set the HTML value other wise set null for the value of the field
-//        		}
-        		String html = String.valueOf(fieldValue);
-	            fieldsToReturn.add( Field.newBuilder().setName(name).setHTML(html).build() );
-        	}
-        }
-        if (FieldType.ATOM.equals(fieldType)) {
-        	
-        	if( fieldValue instanceof Collection ){
-        		Collection col = (Collection) fieldValue;
-        		Iterator colIterator = col.iterator();
-        		while( colIterator.hasNext() ){
-        			Object atom = colIterator.next();
-        			if( atom instanceof String){ // multi-value fields can only be Strings not Date or Number
-        				fieldsToReturn.add( Field.newBuilder().setName(name).setAtom( (String) atom).build() );
-        			}
-        			else{
-//        				logger.warn("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue );
-        				throw new IllegalArgumentException("getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:" + fieldValue);
-        			}
-        			
-        		}
-        	}
-        	else{
-//        		String atom = null;
-//        		if( fieldValue != null){
-//        			atom = String.valueOf(fieldValue); // if fieldValue is not null then  set the ATOM value other wise set null for the value of the field
-//        		}
-        		
-        		String atom = String.valueOf(fieldValue);
-        		fieldsToReturn.add( Field.newBuilder().setName(name).setAtom(atom).build() );
-        	}
-            
+        if (repeated && (FieldType.NUMBER.equals(fieldType) || FieldType.DATE.equals(fieldType))) {
+            return addRepeatedSearchField(builder, name, fieldMapping, obj, limits);
         }
-        if (FieldType.DATE.equals(fieldType)) {
-            if (fieldValue != null) {
-                Date date = (Date) fieldValue;
-                fieldsToReturn.add( Field.newBuilder().setName(name).setDate(date).build() );
-            }
+        if (FieldType.NUMBER.equals(fieldType)) {
+            return addSearchNumberField(builder, name, fieldMapping, obj, limits);
         }
-        if (FieldType.GEO_POINT.equals(fieldType)) {
-            if (fieldValue != null) {
-                if (fieldValue instanceof GeoPt) {
-                    GeoPt geoPt = (GeoPt) fieldValue;
-                    GeoPoint geoPoint = new GeoPoint(geoPt.getLatitude(), geoPt.getLongitude());
-                    fieldsToReturn.add( Field.newBuilder().setName(name).setGeoPoint(geoPoint).build() );
-                } else {
-                    GeoPoint geoPoint = (GeoPoint) fieldValue;
-                    fieldsToReturn.add( Field.newBuilder().setName(name).setGeoPoint(geoPoint).build() );
+
+        Object fieldValue = fieldMapping.getAccessor().get(obj); // gets the value of field from obj
+        Class<?> type = fieldMapping.getType();
+        boolean added = false;
+
+        switch (fieldType) {
+        case TEXT:
+        case HTML:
+        case ATOM:
+            if (fieldValue instanceof Collection) {
+                // a @DocumentField holding a collection of Strings is still written as a multi-valued field
+                for (Object item : (Collection) fieldValue) {
+                    if (!(item instanceof String)) {
+                        throw new IllegalArgumentException(
+                            "getSearchFieldByFieldType(), fieldValue is instanceof List but is not List<String>:"
+                                + fieldValue);
+                    }
+                    addSearchStringField(builder, name, (String) item, fieldType, limits);
                 }
+                added = true;
+            } else if (fieldValue != null && fieldMapping.getConverter() != null) {
+                added = addSearchStringField(builder, name, (String) toSearchValue(fieldMapping, fieldValue),
+                    fieldType, limits);
+            } else if (fieldValue != null || String.class.equals(type) || type.isEnum()) {
+                // a null String or enum is written as "null", a value without converter as its toString
+                added = addSearchStringField(builder, name, String.valueOf(fieldValue), fieldType, limits);
+            }
+            break;
+        default:
+            if (fieldValue != null) {
+                added = addSearchField(builder, name, toSearchValue(fieldMapping, fieldValue), fieldType, limits);
             }
+            break;
         }
-        if (FieldType.NUMBER.equals(fieldType))
-        	fieldsToReturn.add( getSearchNumberField(name, field, fieldValue) );
 
         // Note: When you create a document you must specify all of its
         // attributes using the Document.Builder class method. You cannot add,
@@ -304,96 +474,55 @@ final class DocumentParser {
         // attribute once the document has been created. Date and geopoint
         // fields must be assigned a non-null value. Atom, text, HTML, and
         // number fields can be empty
-        return fieldsToReturn; // return null;
+        return added;
     }
 
     /**
-     * Obtains a list of {@link com.google.appengine.api.search.Field} from {@link FieldType}.
-     * NOTE: James Huang Modified to also check for all {@link DocumentCollections}
+     * Parses a object to an {@link Document}, loading its references in the calling thread.
+     * 
      * @param obj
-     *            the object base
-     * @param classOfObj
-     *            the class of object
-     * @return a list of {@link com.google.appengine.api.search.Field}
-     * @throws IllegalArgumentException
+     *            the object to be parsed
+     * @param documentId
+     *            user defined id of document (e.g. 'Key' of a datastore entity).
+     * @param typeOfObj
+     *            the base class of the given object
+     * @return a {@link Document}
      * @throws IllegalAccessException
+     * @throws IllegalArgumentException
      */
-    List<com.google.appengine.api.search.Field> getAllSearchFieldsByType(String fieldNamePrefix, Object obj,
-        Class<?> classOfObj, FieldType fieldType) throws IllegalArgumentException, IllegalAccessException {
-
-        List<com.google.appengine.api.search.Field> fields = new ArrayList<Field>(0);
-
-        for (java.lang.reflect.Field f : getAllDocumentField(classOfObj)) { //iterate through every @DocumentField
-        	
-            // TODO: validate field (declaration of annotation)
-            DocumentField annotation = ObjectParser.getDocumentFieldAnnotation(f);
-
-            if (annotation.type().equals(fieldType)) { //check if the type is the FieldType we are looking for
-                String name = ObjectParser.getFieldNameValue(f, annotation);
-                String fullName = Strings.isNullOrEmpty(fieldNamePrefix) ? name : fieldNamePrefix + "_" + name;
-                //Gets all the Search Fields from the object field
-                //if the object field is a Collection(i.e. a List) we have to store it as a multi-valued field
-                //TODO: A DocumentCollection is no longer a DocumentField but its own annotation. Maybe check if we can delete some of this code
-                List<com.google.appengine.api.search.Field> searchFields = getSearchFieldByFieldType(fullName, f, obj, fieldType);
-                for( com.google.appengine.api.search.Field field: searchFields){
-                	if (field != null) {
-                        fields.add(field);
-                    }
-                }
-                
-            }
-        }
-        
-        /**
-         * James Huang
-         */
-        for( java.lang.reflect.Field f: getAllDocumentCollection(classOfObj)){ // iterate through every @DocumentCollection
-        	DocumentCollection annotation = ObjectParser.getDocumentCollectionAnnotation(f);
-        	if( annotation.fieldType().equals(fieldType) ) { // check if it is the FieldType we are looking for
-        		String name = ObjectParser.getFieldNameValue(f, annotation);
-        		String fullName = Strings.isNullOrEmpty(fieldNamePrefix) ? name : fieldNamePrefix + "_" + name;
-        		
-        		List<com.google.appengine.api.search.Field> searchFields = getSearchFieldByFieldType(fullName, f, obj, fieldType);
-        		for( com.google.appengine.api.search.Field field: searchFields){
-                	if (field != null) {
-                        fields.add(field);
-                    }
-                }
-        		
-        	}
-        }
-
-        return fields;
+    Document parseDocument(Object obj, String documentId, Class<?> classOfObj) throws IllegalArgumentException,
+        IllegalAccessException, DocumentLimitException {
+        return parseDocument(obj, documentId, classOfObj, new RefPrefetcher(mappingRegistry, fragmentCache,
+            objectifyFactory).prefetch(Collections.singletonList(obj)));
     }
 
     /**
-     * Obtains all fields with Doco annotations.
+     * Parses a object to an {@link Document}, using the given entities for the {@link Ref}s already loaded.
      * 
      * @param obj
-     *            the origin object
-     * @param classOfObj
-     *            the class of obj
-     * @return a list of {@link com.google.appengine.api.search.Field}
-     * @throws IllegalArgumentException
+     *            the object to be parsed
+     * @param documentId
+     *            user defined id of document (e.g. 'Key' of a datastore entity).
+     * @param typeOfObj
+     *            the base class of the given object
+     * @param prefetched
+     *            the entities and cached fields gathered by {@link RefPrefetcher} for the batch of the object, which
+     *            must include all its references
+     * @return a {@link Document}
      * @throws IllegalAccessException
+     * @throws IllegalArgumentException
+     * @throws DocumentLimitException
+     *             if the document is rejected by the {@link LimitPolicy} of this parser
      */
-    List<com.google.appengine.api.search.Field> getAllSearchFields(String fieldNamePrefix, Object obj,
-        Class<?> classOfObj) throws IllegalArgumentException, IllegalAccessException {
-
-        List<com.google.appengine.api.search.Field> fields = new ArrayList<com.google.appengine.api.search.Field>();
-
-        for (FieldType type : FieldType.values()) { // loops through every FieldType (i.e. TEXT, ATOM, HTML, DATE, NUMBER, GEOPOINT )
-            for (com.google.appengine.api.search.Field f : getAllSearchFieldsByType(fieldNamePrefix, obj, classOfObj,
-                type)) {
-                fields.add(f);
-            }
-        }
-
-        return fields;
+    Document parseDocument(Object obj, String documentId, Class<?> classOfObj, PrefetchedRefs prefetched)
+        throws IllegalArgumentException, IllegalAccessException, DocumentLimitException {
+        return parseDocument(obj, documentId, classOfObj, prefetched, new DocumentLimits(limitPolicy));
     }
 
     /**
-     * Parses a object to an {@link Document}.
+     * Parses a object to an {@link Document}, checking each value against the limits of the Search API before it is
+     * added. The fields which violate a limit are truncated or dropped as the {@link DocumentLimits} say, and the
+     * violations are left in it.
      * 
      * @param obj
      *            the object to be parsed
@@ -401,56 +530,83 @@ final class DocumentParser {
      *            user defined id of document (e.g. 'Key' of a datastore entity).
      * @param typeOfObj
      *            the base class of the given object
+     * @param prefetched
+     *            the entities and cached fields gathered by {@link RefPrefetcher} for the batch of the object, which
+     *            must include all its references
+     * @param limits
+     *            the limits of this document
      * @return a {@link Document}
      * @throws IllegalAccessException
      * @throws IllegalArgumentException
+     * @throws DocumentLimitException
+     *             if the document is rejected
      */
-    Document parseDocument(Object obj, String documentId, Class<?> classOfObj) throws IllegalArgumentException,
-        IllegalAccessException {
+    Document parseDocument(Object obj, String documentId, Class<?> classOfObj, PrefetchedRefs prefetched,
+        DocumentLimits limits) throws IllegalArgumentException, IllegalAccessException, DocumentLimitException {
+        return parseDocument(obj, documentId, classOfObj, prefetched, limits, null);
+    }
+
+    /**
+     * Parses a object to an {@link Document} like
+     * {@link #parseDocument(Object, String, Class, PrefetchedRefs, DocumentLimits)}, collecting the keys of the
+     * entities whose fields are part of the document.
+     * 
+     * @param refKeys
+     *            receives the keys of the entities referenced with @DocumentRef, directly or not, or null
+     */
+    Document parseDocument(Object obj, String documentId, Class<?> classOfObj, PrefetchedRefs prefetched,
+        DocumentLimits limits, Set<Key<?>> refKeys) throws IllegalArgumentException, IllegalAccessException,
+        DocumentLimitException {
+        ClassMapping mapping = mappingRegistry.getMapping(classOfObj);
         String id = documentId;
         if (id == null) {
-            java.lang.reflect.Field field = getDocumentIdField(classOfObj);
-            Object gottenId = getId(obj, classOfObj, field.getType());
+            Object gottenId = getId(obj, getDocumentIdField(mapping));
             if( gottenId != null){
             	id = String.valueOf(gottenId);
             } // we want to all the id to be null if it was not specified in the obj so Search API can autoassign the doc_id
             
         }
 
-        Document.Builder builder = Document.newBuilder().setId(id);
+        limits.checkId(id);
+        Document.Builder builder = Document.newBuilder();
+        if (!limits.isRejected()) {
+            builder.setId(id);
+        }
+        if (mapping.getDiscriminator() != null) {
+            addSearchStringField(builder, TYPE_FIELD_NAME, mapping.getDiscriminator(), FieldType.ATOM, limits);
+        }
+
+        addAllFields(builder, DEFAULT_FIELD_NAME_PREFIX, obj, mapping, false, false, prefetched, refKeys,
+            new RefChain(), limits);
 
-        for (com.google.appengine.api.search.Field f : getAllFieldsForDocument(DEFAULT_FIELD_NAME_PREFIX, obj,
-            classOfObj)) {
-            if (f != null) {
-                builder.addField(f);
+        for (PrefixMapping prefixMapping : mapping.getPrefixes()) {
+            for (String term : prefixMapping.getTerms(prefixMapping.getAccessor().get(obj))) {
+                addSearchStringField(builder, prefixMapping.getName(), term, FieldType.ATOM, limits);
             }
         }
 
-        for (Facet facet : getAllFacetsForDocument(obj, classOfObj)) {
-            builder.addFacet(facet);
+        for (FacetMapping facetMapping : mapping.getFacets()) {
+            Facet facet = getFacetValueFromField(facetMapping, obj);
+            if (limits.checkFacet(facet.getName(), facet.getAtom())) {
+                builder.addFacet(facet);
+            }
         }
 
+        limits.finish();
         return builder.build();
     }
 
-    private List<Facet> getAllFacetsForDocument(Object obj, Class<?> classOfObj) throws IllegalArgumentException,
+    private Facet getFacetValueFromField(FacetMapping facetMapping, Object obj) throws IllegalArgumentException,
         IllegalAccessException {
-        List<Facet> facetsInClass = new ArrayList<>();
-        for (java.lang.reflect.Field f : getAllFacetFields(classOfObj)) {
-            Facet facet = getFacetValueFromField(f, obj);
-            facetsInClass.add(facet);
-        }
-        return facetsInClass;
-    }
-
-    private Facet getFacetValueFromField(java.lang.reflect.Field f, Object obj) throws IllegalArgumentException,
-        IllegalAccessException {
-        FacetField annotation = f.getAnnotation(FacetField.class);
-        String facetName = StringUtils.isNotBlank(annotation.name()) ? annotation.name() : f.getName();
-        switch (annotation.type()) {
+        String facetName = facetMapping.getName();
+        FieldAccessor f = facetMapping.getAccessor();
+        switch (facetMapping.getFacetType()) {
         case ATOM:
             return Facet.withAtom(facetName, String.valueOf(f.get(obj)));
         case NUMBER:
+            if (f.getType().isPrimitive()) {
+                return Facet.withNumber(facetName, f.getDouble(obj));
+            }
             return Facet.withNumber(facetName, Double.valueOf(String.valueOf(f.get(obj))));
         default:
             throw new IllegalStateException(String.format("Unknown facet type %s found", facetName));
@@ -458,76 +614,251 @@ final class DocumentParser {
     }
 
     /**
-     * Parses class for presence of @DocumentField, @DocumentRef, etc. annotations and generates {@link Field} from it.
+     * Adds to the document all the fields mapped by the class: first the @DocumentField and @DocumentCollection fields,
+     * then the fields of the @DocumentRef entities and finally the fields of the @DocumentEmbed objects. Each mapped
+     * field is visited exactly once, in the order defined by the {@link ClassMapping}. The fields of a collection of
+     * embedded objects are added once per element, with the {@link ClassMapping} of the element type resolved once.
      * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the fields
      * @param fieldNamePrefix
      *            prefix for field names if any. Normally this should be set to empty string or null. When supplied,
      *            name of field becomes <b>prefix_</b>fieldName
      * @param obj
      *            object which should be used to get value of document fields.
-     * @param classOfObj
-     *            class of 'obj' parameter
-     * @return All possible fields which are to be added to the search document including fields of Ref entity.
+     * @param mapping
+     *            mapping of the class of 'obj' parameter
+     * @param repeated
+     *            true if 'obj' is an element of a collection of embedded objects
+     * @param readBack
+     *            true if 'obj' is an element of a collection of embedded objects read back, whose missing values are
+     *            written as {@link #MISSING_VALUE}
+     * @param prefetched
+     *            the entities and cached fields gathered for the batch
+     * @param refKeys
+     *            receives the keys of the entities referenced, or null
+     * @param chain
+     *            the entities referenced from the document down to 'obj', whose references back are not followed
+     * @param limits
+     *            the limits of the document
      */
-    private List<com.google.appengine.api.search.Field> getAllFieldsForDocument(String fieldNamePrefix, Object obj,
-        Class<?> classOfObj) throws IllegalArgumentException, IllegalAccessException {
-        List<com.google.appengine.api.search.Field> eligibleFields = new ArrayList<>();
-        // get fields annotated with @DocumentField
-        for (com.google.appengine.api.search.Field f : getAllSearchFields(fieldNamePrefix, obj, classOfObj)) {
-            if (f != null) {
-                eligibleFields.add(f);
+    private void addAllFields(Document.Builder builder, String fieldNamePrefix, Object obj, ClassMapping mapping,
+        boolean repeated, boolean readBack, PrefetchedRefs prefetched, Set<Key<?>> refKeys, RefChain chain,
+        DocumentLimits limits) throws IllegalArgumentException, IllegalAccessException {
+        boolean prefixed = !Strings.isNullOrEmpty(fieldNamePrefix);
+
+        for (FieldMapping fieldMapping : mapping.getFields()) {
+            String name = prefixed ? fieldNamePrefix + "_" + fieldMapping.getName() : fieldMapping.getName();
+            if (!addSearchFields(builder, name, fieldMapping, obj, repeated, limits) && readBack) {
+                addSearchStringField(builder, name, MISSING_VALUE, FieldType.ATOM, limits);
             }
         }
-        // get fields annotated with @DocumentRef
-        for (com.google.appengine.api.search.Field f : getAllSearchFieldsFromRefClass(fieldNamePrefix, obj, classOfObj)) {
-            if (f != null) {
-                eligibleFields.add(f);
+
+        // fields of the classes referenced with @DocumentRef
+        for (NestedMapping ref : mapping.getRefs()) {
+            Object fieldValue = ref.getAccessor().get(obj);
+            if (!(fieldValue instanceof Ref<?>)) {
+                throw new IllegalStateException("Incorrect mapping found on field: " + ref.getAccessor().getName());
             }
+            Ref<?> entityRef = (Ref<?>) fieldValue;
+            if (!chain.enter(entityRef.key())) {
+                continue; // a cycle, the fields of the entity are already being added
+            }
+            ClassMapping refMapping = mappingRegistry.getMapping(ref.getTargetClass());
+            if (fragmentCache != null) {
+                addRefFragment(builder, ref.appendTo(fieldNamePrefix), entityRef, refMapping, repeated, prefetched,
+                    refKeys, chain, limits);
+            } else {
+                if (refKeys != null) {
+                    refKeys.add(entityRef.key());
+                }
+                addAllFields(builder, ref.appendTo(fieldNamePrefix), getEntity(entityRef, prefetched), refMapping,
+                    repeated, false, prefetched, refKeys, chain, limits);
+            }
+            chain.leave();
         }
-        // get fields annotated with @DocumentEmbed
-        for (com.google.appengine.api.search.Field f : getAllSearchFieldsInEmbedClass(fieldNamePrefix, obj, classOfObj)) {
-            if (f != null) {
-                eligibleFields.add(f);
+
+        // fields of the objects annotated with @DocumentEmbed
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            Object fieldValue = embed.getAccessor().get(obj);
+            if (fieldValue == null) {
+                continue;
+            }
+            String embedPrefix = embed.appendTo(fieldNamePrefix);
+            ClassMapping embedMapping = mappingRegistry.getMapping(embed.getTargetClass());
+            boolean elementsReadBack = embed.isMultiValued() && embed.isReadBack();
+            for (Object element : embed.getElements(fieldValue)) {
+                if (element != null) {
+                    addAllFields(builder, embedPrefix, element, embedMapping, repeated || embed.isMultiValued(),
+                        elementsReadBack, prefetched, refKeys, chain, limits);
+                }
             }
         }
-        return eligibleFields;
     }
 
-    private List<com.google.appengine.api.search.Field> getAllSearchFieldsInEmbedClass(String fieldNamePrefix,
-        Object obj, Class<?> classOfObj) throws IllegalArgumentException, IllegalAccessException {
-        List<com.google.appengine.api.search.Field> searchFields = new ArrayList<com.google.appengine.api.search.Field>();
-        List<java.lang.reflect.Field> declaredFields = getAllEmbedFields(classOfObj);
-        for (java.lang.reflect.Field declaredField : declaredFields) {
-            Object fieldValue = declaredField.get(obj);
-            if (fieldValue != null) {
-                String newFieldNamePrefix = Strings.isNullOrEmpty(fieldNamePrefix) ? declaredField.getType()
-                    .getSimpleName() : (fieldNamePrefix + "_" + declaredField.getType().getSimpleName());
-                searchFields.addAll(getAllFieldsForDocument(newFieldNamePrefix, fieldValue, declaredField.getType()));
+    /**
+     * Adds the fields of an entity referenced with @DocumentRef from the {@link FragmentCache}, building and caching
+     * them if they are not there. The cached fields are checked again against the limits of each document they are
+     * added to; the fields of an entity which violate the limits by themselves, or which stop at a cycle through the
+     * entities above it, are never cached.
+     * 
+     * @param builder
+     *            the {@link Document.Builder} that receives the fields
+     * @param fieldNamePrefix
+     *            the prefix of the fields of the entity
+     * @param entityRef
+     *            the reference to the entity
+     * @param mapping
+     *            the mapping of the class of the entity
+     * @param repeated
+     *            true if the entity is referenced by an element of a collection of embedded objects
+     * @param prefetched
+     *            the entities and cached fields gathered for the batch
+     * @param refKeys
+     *            receives the keys of the entity and of the entities it references, or null
+     * @param chain
+     *            the entities referenced from the document down to the entity, included
+     * @param limits
+     *            the limits of the document
+     */
+    private void addRefFragment(Document.Builder builder, String fieldNamePrefix, Ref<?> entityRef,
+        ClassMapping mapping, boolean repeated, PrefetchedRefs prefetched, Set<Key<?>> refKeys, RefChain chain,
+        DocumentLimits limits) throws IllegalArgumentException, IllegalAccessException {
+        Key<?> key = entityRef.key();
+        if (refKeys != null) {
+            refKeys.add(key);
+        }
+        // the fragments used by the prefetch are kept for the batch, whatever the cache evicted since
+        FragmentCache.Fragment cached = prefetched.getFragment(key, fieldNamePrefix, repeated, mapping);
+        if (cached == null || !cached.fitsChain(chain.getKeys())) {
+            cached = fragmentCache.get(key, fieldNamePrefix, repeated, mapping);
+        }
+        if (cached != null && !cached.fitsChain(chain.getKeys())) {
+            cached = null;
+        }
+        List<Field> fragment;
+        if (cached != null) {
+            fragment = cached.getFields();
+            if (refKeys != null) {
+                refKeys.addAll(cached.getDependencies());
+            }
+        } else {
+            Object entity = getEntity(entityRef, prefetched);
+            Document.Builder fragmentBuilder = Document.newBuilder();
+            DocumentLimits fragmentLimits = new DocumentLimits(LimitPolicy.REJECT);
+            Set<Key<?>> dependencies = new HashSet<Key<?>>();
+            int outerCut = chain.startFragment();
+            addAllFields(fragmentBuilder, fieldNamePrefix, entity, mapping, repeated, false, prefetched, dependencies,
+                chain, fragmentLimits);
+            boolean cacheable = chain.endFragment(outerCut);
+            if (refKeys != null) {
+                refKeys.addAll(dependencies);
+            }
+            if (!fragmentLimits.getViolations().isEmpty()) {
+                // the violations belong to the document, so its fields are built again against its own limits
+                addAllFields(builder, fieldNamePrefix, entity, mapping, repeated, false, prefetched, null, chain,
+                    limits);
+                return;
+            }
+            fragment = new ArrayList<Field>();
+            for (Field field : fragmentBuilder.build().getFields()) {
+                fragment.add(field);
+            }
+            if (cacheable) {
+                fragmentCache.put(key, fieldNamePrefix, repeated, mapping, fragment, dependencies);
+            }
+        }
+
+        for (Field field : fragment) {
+            String name = field.getName();
+            switch (field.getType()) {
+            case TEXT:
+                addSearchStringField(builder, name, field.getText(), FieldType.TEXT, limits);
+                break;
+            case HTML:
+                addSearchStringField(builder, name, field.getHTML(), FieldType.HTML, limits);
+                break;
+            case ATOM:
+                addSearchStringField(builder, name, field.getAtom(), FieldType.ATOM, limits);
+                break;
+            case NUMBER:
+                addSearchNumberField(builder, name, field.getNumber(), limits);
+                break;
+            case DATE:
+                addSearchField(builder, name, field.getDate(), FieldType.DATE, limits);
+                break;
+            case GEO_POINT:
+                addSearchField(builder, name, field.getGeoPoint(), FieldType.GEO_POINT, limits);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected field in a cached fragment: " + field);
             }
         }
-        return searchFields;
     }
 
     /**
-     * Creates {@link Field} for all annotated fields in the class of field annotated with {@link DocumentRef}
+     * @return the referenced entity, from the entities loaded by the {@link RefPrefetcher}
      */
-    private List<com.google.appengine.api.search.Field> getAllSearchFieldsFromRefClass(String fieldNamePrefix,
-        Object obj, Class<?> classOfObj) throws IllegalArgumentException, IllegalAccessException {
-        List<com.google.appengine.api.search.Field> searchFields = new ArrayList<com.google.appengine.api.search.Field>();
-        List<java.lang.reflect.Field> declaredFields = getAllRefFields(classOfObj);
-        for (java.lang.reflect.Field declaredField : declaredFields) {
-            Object fieldValue = declaredField.get(obj);
-            // get the class from the annotation on this field (guaranteed to be annotated since we specifically asked
-            // for annotated fields only)
-            Class<?> refClass = declaredField.getAnnotation(DocumentRef.class).type();
-            if (!(fieldValue instanceof Ref<?>)) {
-                throw new IllegalStateException("Incorrect mapping found on field: " + declaredField.getName());
+    private static Object getEntity(Ref<?> entityRef, PrefetchedRefs prefetched) {
+        Key<?> key = entityRef.key();
+        if (!prefetched.containsEntity(key)) {
+            // loading it here would need a datastore context, which the threads of a parallel conversion lack
+            throw new IllegalStateException("The entity " + key + " was not loaded by the RefPrefetcher.");
+        }
+        return prefetched.getEntity(key);
+    }
+
+    /**
+     * The keys of the entities referenced from the document down to the fields being added. A reference to an entity
+     * already on the chain is a cycle and is not followed. The chain also tells whether a fragment is complete by
+     * itself: one which stopped at an entity above it depends on where it is added, so it is not cached.
+     */
+    private static final class RefChain {
+
+        private final List<Key<?>> keys = new ArrayList<Key<?>>();
+
+        // the depth of the highest entity whose reference back was not followed, Integer.MAX_VALUE if none
+        private int cut = Integer.MAX_VALUE;
+
+        /**
+         * @return false if the entity is already on the chain, true if it was added at its end
+         */
+        boolean enter(Key<?> key) {
+            int depth = keys.indexOf(key);
+            if (depth >= 0) {
+                cut = Math.min(cut, depth);
+                return false;
             }
-            Ref<?> ref = (Ref<?>) fieldValue;
-            String newFieldNamePrefix = Strings.isNullOrEmpty(fieldNamePrefix) ? refClass.getSimpleName()
-                : fieldNamePrefix + "_" + refClass.getSimpleName();
-            searchFields.addAll(getAllFieldsForDocument(newFieldNamePrefix, ref.get(), refClass));
+            keys.add(key);
+            return true;
+        }
+
+        void leave() {
+            keys.remove(keys.size() - 1);
+        }
+
+        List<Key<?>> getKeys() {
+            return keys;
+        }
+
+        /**
+         * Starts the fragment of the entity at the end of the chain.
+         *
+         * @return the cut before the fragment, to be given to {@link #endFragment(int)}
+         */
+        int startFragment() {
+            int outerCut = cut;
+            cut = Integer.MAX_VALUE;
+            return outerCut;
+        }
+
+        /**
+         * @return true if the fragment only stopped at its own entity or at the entities below it
+         */
+        boolean endFragment(int outerCut) {
+            boolean complete = cut >= keys.size() - 1;
+            cut = Math.min(cut, outerCut);
+            return complete;
         }
-        return searchFields;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package com.vidolima.doco;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.FacetType;
+
+/**
+ * Compiled mapping of a field annotated with {@link FacetField}.
+ */
+final class FacetMapping {
+
+    private final FieldAccessor accessor;
+    private final String name;
+    private final FacetType facetType;
+
+    FacetMapping(FieldAccessor accessor, String name, FacetType facetType) {
+        this.accessor = accessor;
+        this.name = name;
+        this.facetType = facetType;
+    }
+
+    static FacetMapping forFacetField(java.lang.reflect.Field field) {
+        FacetField annotation = field.getAnnotation(FacetField.class);
+        return new FacetMapping(FieldAccessor.create(field),
+            StringUtils.isNotBlank(annotation.name()) ? annotation.name() : field.getName(), annotation.type());
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the name of the {@link com.google.appengine.api.search.Facet}
+     */
+    String getName() {
+        return name;
+    }
+
+    FacetType getFacetType() {
+        return facetType;
+    }
+}
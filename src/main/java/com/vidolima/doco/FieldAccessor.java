@@ -0,0 +1,95 @@
+package com.vidolima.doco;
+
+/**
+ * Reads and writes the value of a mapped field. Accessors are built once per mapped field, so conversions do not go
+ * through {@link java.lang.reflect.Field#get(Object)} and {@link java.lang.reflect.Field#set(Object, Object)}.
+ *
+ * The primitive methods allow NUMBER fields declared as int, long, float or double to be converted without boxing.
+ * Their default implementations go through the boxed {@link #get(Object)} and {@link #set(Object, Object)}.
+ *
+ * This class is public only to be extended by the mappers generated by
+ * {@link com.vidolima.doco.processor.DocoMapperProcessor}, which access the fields with plain Java code.
+ */
+public abstract class FieldAccessor {
+
+    private final String name;
+    private final Class<?> type;
+
+    protected FieldAccessor(String name, Class<?> type) {
+        this.name = name;
+        this.type = type;
+    }
+
+    /**
+     * Creates the fastest available accessor for the given field: one based on {@link java.lang.invoke.MethodHandle}s
+     * when the field can be unreflected, or one based on reflection otherwise.
+     *
+     * @param field
+     *            the field, already made accessible
+     * @return the {@link FieldAccessor}
+     */
+    static FieldAccessor create(java.lang.reflect.Field field) {
+        try {
+            return MethodHandleFieldAccessor.unreflect(field);
+        } catch (IllegalAccessException e) {
+            return new ReflectionFieldAccessor(field);
+        } catch (SecurityException e) {
+            return new ReflectionFieldAccessor(field);
+        }
+    }
+
+    /**
+     * @return the name of the Java field
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the declared type of the Java field
+     */
+    Class<?> getType() {
+        return type;
+    }
+
+    protected abstract Object get(Object obj);
+
+    protected abstract void set(Object obj, Object value);
+
+    protected int getInt(Object obj) {
+        return ((Number) get(obj)).intValue();
+    }
+
+    protected long getLong(Object obj) {
+        return ((Number) get(obj)).longValue();
+    }
+
+    protected float getFloat(Object obj) {
+        return ((Number) get(obj)).floatValue();
+    }
+
+    protected double getDouble(Object obj) {
+        return ((Number) get(obj)).doubleValue();
+    }
+
+    protected void setInt(Object obj, int value) {
+        set(obj, Integer.valueOf(value));
+    }
+
+    protected void setLong(Object obj, long value) {
+        set(obj, Long.valueOf(value));
+    }
+
+    protected void setFloat(Object obj, float value) {
+        set(obj, Float.valueOf(value));
+    }
+
+    protected void setDouble(Object obj, double value) {
+        set(obj, Double.valueOf(value));
+    }
+
+    @Override
+    public String toString() {
+        return type.getName() + " " + name;
+    }
+}
@@ -0,0 +1,239 @@
+package com.vidolima.doco;
+
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Date;
+
+import com.google.appengine.api.search.GeoPoint;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.FieldType;
+
+/**
+ * Compiled mapping of a single {@link DocumentField} or {@link DocumentCollection} annotated field. Instances are
+ * immutable and built once per class by {@link ClassMapping}. The converter is resolved in the default
+ * {@link ConverterRegistry}, or in another one with {@link #withConverters(ConverterRegistry)}.
+ */
+final class FieldMapping {
+
+    private final FieldAccessor accessor;
+    private final String name;
+    private final FieldType fieldType;
+    private final boolean collection;
+    private final DocumentCollectionType collectionType;
+    private final Class<?> elementType;
+    private final boolean primitiveNumber;
+    private final boolean primitiveArray;
+    private final TypeConverter<Object, Object> converter;
+
+    private FieldMapping(FieldAccessor accessor, String name, FieldType fieldType, boolean collection,
+        DocumentCollectionType collectionType, Class<?> elementType, ConverterRegistry converters) {
+        Class<?> type = accessor.getType();
+        this.accessor = accessor;
+        this.name = name;
+        this.fieldType = fieldType;
+        this.collection = collection;
+        this.collectionType = collectionType;
+        this.primitiveNumber = isPrimitiveNumber(type);
+        if (!collection) {
+            this.elementType = null;
+            this.primitiveArray = false;
+        } else if (type.isArray()) {
+            this.elementType = type.getComponentType();
+            this.primitiveArray = isPrimitiveNumber(this.elementType);
+        } else {
+            this.elementType = elementType != null ? elementType : getDefaultElementType(fieldType);
+            this.primitiveArray = false;
+        }
+        this.converter = converters.resolve(collection ? this.elementType : type, fieldType);
+    }
+
+    /**
+     * Creates the mapping of a field annotated with {@link DocumentField}.
+     *
+     * @param field
+     *            the accessible {@link java.lang.reflect.Field}
+     * @return the {@link FieldMapping}
+     */
+    static FieldMapping forDocumentField(java.lang.reflect.Field field) {
+        DocumentField annotation = ObjectParser.getDocumentFieldAnnotation(field);
+        return forField(FieldAccessor.create(field), ObjectParser.getFieldNameValue(field, annotation),
+            ObjectParser.getFieldType(field));
+    }
+
+    /**
+     * Creates the mapping of a single valued field whose name and type are already resolved.
+     *
+     * @param accessor
+     *            the accessor of the field
+     * @param name
+     *            the name of the field in the document
+     * @param fieldType
+     *            the {@link FieldType} of the field
+     * @return the {@link FieldMapping}
+     */
+    static FieldMapping forField(FieldAccessor accessor, String name, FieldType fieldType) {
+        return new FieldMapping(accessor, name, fieldType, false, null, null, ConverterRegistry.getDefault());
+    }
+
+    /**
+     * Creates the mapping of a field annotated with {@link DocumentCollection}.
+     *
+     * @param field
+     *            the accessible {@link java.lang.reflect.Field}
+     * @return the {@link FieldMapping}
+     */
+    static FieldMapping forDocumentCollection(java.lang.reflect.Field field) {
+        DocumentCollection annotation = ObjectParser.getDocumentCollectionAnnotation(field);
+        return forCollection(FieldAccessor.create(field), ObjectParser.getFieldNameValue(field, annotation),
+            annotation.fieldType(), annotation.type(), getElementType(field));
+    }
+
+    /**
+     * Obtains the type of the values of a multi-valued field from its declaration: the component type of an array, or
+     * the type argument of a collection declared with exactly one, e.g. Long for a List&lt;Long&gt;. A
+     * List&lt;Object&gt; has no declared element type.
+     *
+     * @param field
+     *            the {@link java.lang.reflect.Field}
+     * @return the type of the values, or null if it is not declared
+     */
+    static Class<?> getElementType(java.lang.reflect.Field field) {
+        if (field.getType().isArray()) {
+            return field.getType().getComponentType();
+        }
+        Type genericType = field.getGenericType();
+        if (genericType instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+            if (arguments.length == 1 && arguments[0] instanceof Class && !Object.class.equals(arguments[0])) {
+                return (Class<?>) arguments[0];
+            }
+            if (arguments.length == 1 && arguments[0] instanceof ParameterizedType) {
+                return (Class<?>) ((ParameterizedType) arguments[0]).getRawType();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the mapping of a multi-valued field whose name and types are already resolved.
+     *
+     * @param accessor
+     *            the accessor of the field
+     * @param name
+     *            the name of the fields in the document
+     * @param fieldType
+     *            the {@link FieldType} of each value
+     * @param collectionType
+     *            the collection created when the field is read from a document
+     * @param elementType
+     *            the type of the values, or null if it is not declared. The values of an array field have the
+     *            component type of the array, the undeclared ones the search value type of the {@link FieldType}.
+     * @return the {@link FieldMapping}
+     */
+    static FieldMapping forCollection(FieldAccessor accessor, String name, FieldType fieldType,
+        DocumentCollectionType collectionType, Class<?> elementType) {
+        return new FieldMapping(accessor, name, fieldType, true, collectionType, elementType,
+            ConverterRegistry.getDefault());
+    }
+
+    /**
+     * Creates the same mapping with the converter resolved in another registry.
+     *
+     * @param converters
+     *            the {@link ConverterRegistry} of the mapping
+     * @return the {@link FieldMapping}, this one if the registry is the default one
+     */
+    FieldMapping withConverters(ConverterRegistry converters) {
+        if (converters == ConverterRegistry.getDefault()) {
+            return this;
+        }
+        return new FieldMapping(accessor, name, fieldType, collection, collectionType, elementType, converters);
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the declared type of the Java field
+     */
+    Class<?> getType() {
+        return accessor.getType();
+    }
+
+    /**
+     * @return the name of the field in the {@link com.google.appengine.api.search.Document}
+     */
+    String getName() {
+        return name;
+    }
+
+    FieldType getFieldType() {
+        return fieldType;
+    }
+
+    /**
+     * @return true if the field is annotated with {@link DocumentCollection}
+     */
+    boolean isCollection() {
+        return collection;
+    }
+
+    DocumentCollectionType getCollectionType() {
+        return collectionType;
+    }
+
+    /**
+     * @return the type of the values of a multi-valued field, or null for a single valued field
+     */
+    Class<?> getElementType() {
+        return elementType;
+    }
+
+    /**
+     * @return true if the field is an int[], long[], float[] or double[] multi-valued NUMBER field, whose values are
+     *         converted without boxing
+     */
+    boolean isPrimitiveArray() {
+        return primitiveArray;
+    }
+
+    /**
+     * @return the converter of the field, or of each value of a multi-valued field, resolved when the mapping was
+     *         built, or null if there is none
+     */
+    TypeConverter<Object, Object> getConverter() {
+        return converter;
+    }
+
+    /**
+     * @return true if the Java field is an int, long, float or double, which can be read and written through the
+     *         primitive methods of the {@link FieldAccessor}
+     */
+    boolean isPrimitiveNumber() {
+        return primitiveNumber;
+    }
+
+    /**
+     * @return the type of the values of a collection whose element type is not declared
+     */
+    static Class<?> getDefaultElementType(FieldType fieldType) {
+        switch (fieldType) {
+        case NUMBER:
+            return Double.class;
+        case DATE:
+            return Date.class;
+        case GEO_POINT:
+            return GeoPoint.class;
+        default:
+            return String.class;
+        }
+    }
+
+    private static boolean isPrimitiveNumber(Class<?> type) {
+        return Integer.TYPE.equals(type) || Long.TYPE.equals(type) || Float.TYPE.equals(type)
+            || Double.TYPE.equals(type);
+    }
+}
@@ -0,0 +1,68 @@
+package com.vidolima.doco;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The table used to read a {@link com.google.appengine.api.search.Document} in a single walk over its fields: each
+ * {@link FieldMapping} to be filled has a slot, and the name of a search field leads to the slots it fills. Slots are
+ * numbered in the order of the mappings. Instances are immutable and built once per {@link ClassMapping} and
+ * {@link ProjectionMapping}.
+ */
+final class FieldSlots {
+
+    private static final int NO_SLOT = -1;
+
+    private final FieldMapping[] mappings;
+    private final Map<String, Integer> firstSlotByName;
+    // the next slot filled by the same search field, for the rare mappings which share a name
+    private final int[] nextSlot;
+
+    FieldSlots(List<FieldMapping> fields) {
+        this.mappings = fields.toArray(new FieldMapping[fields.size()]);
+        this.firstSlotByName = new HashMap<String, Integer>(mappings.length * 2);
+        this.nextSlot = new int[mappings.length];
+        int[] lastSlot = new int[mappings.length];
+        for (int slot = 0; slot < mappings.length; slot++) {
+            nextSlot[slot] = NO_SLOT;
+            Integer first = firstSlotByName.get(mappings[slot].getName());
+            if (first == null) {
+                firstSlotByName.put(mappings[slot].getName(), slot);
+                lastSlot[slot] = slot;
+            } else {
+                nextSlot[lastSlot[first]] = slot;
+                lastSlot[first] = slot;
+            }
+        }
+    }
+
+    /**
+     * @return the number of slots
+     */
+    int size() {
+        return mappings.length;
+    }
+
+    /**
+     * @return the mapping of a slot
+     */
+    FieldMapping getMapping(int slot) {
+        return mappings[slot];
+    }
+
+    /**
+     * @return the first slot filled by the search field with the given name, or a negative number if there is none
+     */
+    int firstSlot(String name) {
+        Integer slot = firstSlotByName.get(name);
+        return slot == null ? NO_SLOT : slot;
+    }
+
+    /**
+     * @return the next slot filled by the same search field as the given slot, or a negative number if there is none
+     */
+    int nextSlot(int slot) {
+        return nextSlot[slot];
+    }
+}
@@ -0,0 +1,50 @@
+package com.vidolima.doco;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.appengine.api.search.Index;
+
+/**
+ * Stores the {@link DocumentFingerprint} of the last version of each document put in an index, so
+ * {@link Doco#putAll(Iterable, FingerprintStore)} can skip the documents whose content did not change.
+ *
+ * The documents deleted from an index without Doco must have their fingerprints removed, otherwise they would not be
+ * put again while their content stays the same. Implementations must be thread-safe.
+ *
+ * @see LruFingerprintStore
+ * @see ObjectifyFingerprintStore
+ */
+public interface FingerprintStore {
+
+    /**
+     * Obtains the fingerprints of the given documents.
+     *
+     * @param index
+     *            the {@link Index} of the documents
+     * @param documentIds
+     *            the ids of the documents
+     * @return the fingerprints by document id; documents without a fingerprint are absent
+     */
+    Map<String, String> getAll(Index index, Collection<String> documentIds);
+
+    /**
+     * Stores the fingerprints of documents which were put in the index.
+     *
+     * @param index
+     *            the {@link Index} of the documents
+     * @param fingerprints
+     *            the fingerprints by document id
+     */
+    void putAll(Index index, Map<String, String> fingerprints);
+
+    /**
+     * Removes the fingerprints of documents which were deleted from the index.
+     *
+     * @param index
+     *            the {@link Index} of the documents
+     * @param documentIds
+     *            the ids of the documents
+     */
+    void removeAll(Index index, Collection<String> documentIds);
+}
@@ -0,0 +1,242 @@
+package com.vidolima.doco;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.appengine.api.search.Field;
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.annotation.DocumentRef;
+
+/**
+ * Keeps the search fields built from the entities referenced with {@link DocumentRef}, so the documents of the objects
+ * which reference the same entities reuse them instead of loading and converting the entities again. The fields of an
+ * entity are kept by its {@link Key}, by the prefix of their names and by the mapping of its class; they also include
+ * the fields of the entities it references in turn.
+ *
+ * The cached fields are not updated when an entity changes: call {@link #invalidate(Key)} after saving it, or set a
+ * time to live. Instances are thread-safe and can be shared by many {@link Doco}s.
+ */
+public final class FragmentCache {
+
+    private final long ttlNanos;
+    private final Map<Key<?>, Map<String, Fragment>> fragments;
+
+    /**
+     * Creates a cache whose fragments never expire.
+     *
+     * @param maxSize
+     *            the maximum number of entities whose fields are kept, the least recently used ones are evicted
+     */
+    public FragmentCache(int maxSize) {
+        this(maxSize, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxSize
+     *            the maximum number of entities whose fields are kept, the least recently used ones are evicted
+     * @param ttl
+     *            how long the fields of an entity are kept after they are built, or 0 to keep them until evicted
+     * @param unit
+     *            the unit of the time to live
+     */
+    public FragmentCache(final int maxSize, long ttl, TimeUnit unit) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maxSize);
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("The time to live can not be negative: " + ttl);
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.fragments = new LinkedHashMap<Key<?>, Map<String, Fragment>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key<?>, Map<String, Fragment>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Obtains the fields built from an entity.
+     *
+     * @param key
+     *            the key of the entity
+     * @param prefix
+     *            the prefix of the names of the fields
+     * @param repeated
+     *            true if the fields are repeated by the elements of a collection of embedded objects
+     * @param mapping
+     *            the mapping of the class of the entity
+     * @return the fields, or null if they are not cached, expired or were built with another mapping
+     */
+    synchronized Fragment get(Key<?> key, String prefix, boolean repeated, ClassMapping mapping) {
+        Map<String, Fragment> byPrefix = fragments.get(key);
+        if (byPrefix == null) {
+            return null;
+        }
+        String fragmentKey = fragmentKey(prefix, repeated);
+        Fragment fragment = byPrefix.get(fragmentKey);
+        if (fragment == null) {
+            return null;
+        }
+        if (fragment.mapping != mapping || (ttlNanos > 0 && System.nanoTime() - fragment.createdNanos >= ttlNanos)) {
+            byPrefix.remove(fragmentKey);
+            return null;
+        }
+        return fragment;
+    }
+
+    /**
+     * @return true if fields built from the entity are kept, whatever their prefix
+     */
+    synchronized boolean contains(Key<?> key) {
+        return fragments.containsKey(key);
+    }
+
+    /**
+     * Keeps the fields built from an entity.
+     *
+     * @param key
+     *            the key of the entity
+     * @param prefix
+     *            the prefix of the names of the fields
+     * @param repeated
+     *            true if the fields are repeated by the elements of a collection of embedded objects
+     * @param mapping
+     *            the mapping of the class of the entity
+     * @param fields
+     *            the fields
+     * @param dependencies
+     *            the keys of the entities referenced by the entity, directly or not, whose fields are part of the
+     *            given ones
+     */
+    synchronized void put(Key<?> key, String prefix, boolean repeated, ClassMapping mapping, List<Field> fields,
+        Set<Key<?>> dependencies) {
+        Map<String, Fragment> byPrefix = fragments.get(key);
+        if (byPrefix == null) {
+            byPrefix = new HashMap<String, Fragment>(4);
+            fragments.put(key, byPrefix);
+        }
+        byPrefix.put(fragmentKey(prefix, repeated), new Fragment(mapping, Collections.unmodifiableList(fields),
+            dependencies, System.nanoTime()));
+    }
+
+    /**
+     * Removes the fields built from an entity, and the fields of the entities which reference it, directly or not.
+     *
+     * @param key
+     *            the key of the entity which changed
+     */
+    public synchronized void invalidate(Key<?> key) {
+        fragments.remove(key);
+        invalidateDependents();
+    }
+
+    /**
+     * Removes all the fields kept.
+     */
+    public synchronized void invalidateAll() {
+        fragments.clear();
+    }
+
+    /**
+     * @return the number of entities whose fields are kept
+     */
+    public synchronized int size() {
+        return fragments.size();
+    }
+
+    /**
+     * Removes the fields of the entities which reference an entity whose fields are no longer kept, until none is
+     * left, so a change of an entity referenced through others is not hidden by the fields of the ones in between.
+     */
+    private void invalidateDependents() {
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (Iterator<Map<String, Fragment>> i = fragments.values().iterator(); i.hasNext();) {
+                if (dependsOnMissing(i.next())) {
+                    i.remove();
+                    removed = true;
+                }
+            }
+        }
+    }
+
+    private boolean dependsOnMissing(Map<String, Fragment> byPrefix) {
+        for (Fragment fragment : byPrefix.values()) {
+            for (Key<?> dependency : fragment.dependencies) {
+                if (!fragments.containsKey(dependency)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static String fragmentKey(String prefix, boolean repeated) {
+        return repeated ? prefix + "[]" : prefix;
+    }
+
+    /**
+     * The fields built from an entity with one prefix.
+     */
+    static final class Fragment {
+
+        private final ClassMapping mapping;
+        private final List<Field> fields;
+        private final Set<Key<?>> dependencies;
+        private final long createdNanos;
+
+        Fragment(ClassMapping mapping, List<Field> fields, Set<Key<?>> dependencies, long createdNanos) {
+            this.mapping = mapping;
+            this.fields = fields;
+            this.dependencies = dependencies;
+            this.createdNanos = createdNanos;
+        }
+
+        /**
+         * @return the mapping of the class of the entity when the fields were built
+         */
+        ClassMapping getMapping() {
+            return mapping;
+        }
+
+        /**
+         * @return the fields, in the order they were built
+         */
+        List<Field> getFields() {
+            return fields;
+        }
+
+        /**
+         * @return the keys of the entities referenced by the entity, directly or not
+         */
+        Set<Key<?>> getDependencies() {
+            return dependencies;
+        }
+
+        /**
+         * A fragment is built with the references back to its own chain cut; used below one of the entities it
+         * references, it would repeat that entity instead of stopping at it.
+         *
+         * @return true if the fields can be added below the given chain of referenced entities
+         */
+        boolean fitsChain(Collection<Key<?>> chain) {
+            for (Key<?> key : chain) {
+                if (dependencies.contains(key)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.vidolima.doco;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values. The values up to 7 are counted exactly; larger values are counted
+ * in 8 buckets per power of two, so a percentile is at most 12.5% above the recorded value. Recording is a few atomic
+ * increments and never blocks.
+ *
+ * A {@link Snapshot} copies the counts without stopping the recording threads, so it is not an atomic view: values
+ * recorded while it is taken may or may not be part of it.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Records a value. Negative values are recorded as 0.
+     *
+     * @param value
+     *            the value
+     */
+    public void record(long value) {
+        long v = Math.max(value, 0L);
+        counts.incrementAndGet(bucketOf(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+
+        long current = min.get();
+        while (v < current && !min.compareAndSet(current, v)) {
+            current = min.get();
+        }
+        current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return a copy of the current state of the histogram
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.get(), sum.get(), min.get(), max.get());
+    }
+
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the highest value counted by the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of the state of a {@link Histogram}.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the smallest recorded value, or 0 if there is none
+         */
+        public long getMin() {
+            return count == 0 ? 0 : min;
+        }
+
+        /**
+         * @return the largest recorded value, or 0 if there is none
+         */
+        public long getMax() {
+            return count == 0 ? 0 : max;
+        }
+
+        /**
+         * @return the mean of the recorded values, or 0 if there is none
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Obtains a percentile of the recorded values.
+         *
+         * @param percentile
+         *            the percentile, from 0 to 100
+         * @return the highest value of the bucket which contains the percentile, or 0 if there is no value
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("The percentile must be between 0 and 100: " + percentile);
+            }
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBoundOf(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", min=" + getMin() + ", mean=" + getMean() + ", p50=" + getPercentile(50)
+                + ", p99=" + getPercentile(99) + ", max=" + getMax();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.googlecode.objectify.Key;
+
+/**
+ * A {@link DependencyIndex} which keeps the dependencies in memory. It is local to the instance, so it only knows the
+ * documents converted by it; nothing is evicted, the dependencies of a document are kept until it is removed.
+ */
+public final class InMemoryDependencyIndex implements DependencyIndex {
+
+    // the keys referenced by each document, and the documents which reference each key
+    private final Map<Dependent, Set<Key<?>>> keysByDocument = new HashMap<Dependent, Set<Key<?>>>();
+    private final Map<Key<?>, Set<Dependent>> documentsByKey = new HashMap<Key<?>, Set<Dependent>>();
+
+    @Override
+    public synchronized void record(Class<?> type, String documentId, Set<Key<?>> keys) {
+        Dependent dependent = new Dependent(type, documentId);
+        Set<Key<?>> previous = keysByDocument.get(dependent);
+        if (previous != null && previous.equals(keys)) {
+            return;
+        }
+        remove(dependent);
+        if (keys.isEmpty()) {
+            return;
+        }
+        keysByDocument.put(dependent, new LinkedHashSet<Key<?>>(keys));
+        for (Key<?> key : keys) {
+            Set<Dependent> dependents = documentsByKey.get(key);
+            if (dependents == null) {
+                dependents = new LinkedHashSet<Dependent>();
+                documentsByKey.put(key, dependents);
+            }
+            dependents.add(dependent);
+        }
+    }
+
+    @Override
+    public synchronized List<Dependent> getDependents(Key<?> key) {
+        Set<Dependent> dependents = documentsByKey.get(key);
+        if (dependents == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Dependent>(dependents);
+    }
+
+    @Override
+    public synchronized void remove(Class<?> type, String documentId) {
+        remove(new Dependent(type, documentId));
+    }
+
+    /**
+     * @return the number of documents with dependencies
+     */
+    public synchronized int size() {
+        return keysByDocument.size();
+    }
+
+    private void remove(Dependent dependent) {
+        Set<Key<?>> keys = keysByDocument.remove(dependent);
+        if (keys == null) {
+            return;
+        }
+        for (Key<?> key : keys) {
+            Set<Dependent> dependents = documentsByKey.get(key);
+            dependents.remove(dependent);
+            if (dependents.isEmpty()) {
+                documentsByKey.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.vidolima.doco;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+/**
+ * Creates new instances of a mapped class through its no-arg constructor. The constructor is resolved once per class
+ * and invoked through a {@link MethodHandle}; {@link Class#newInstance()} is used when no handle can be created.
+ */
+abstract class Instantiator {
+
+    /**
+     * Creates the instantiator of the given class. It never fails: a class without a usable no-arg constructor gets an
+     * instantiator that fails when invoked, the same way {@link Class#newInstance()} would.
+     *
+     * @param classOfObj
+     *            the class to be instantiated
+     * @return the {@link Instantiator}
+     */
+    static Instantiator create(final Class<?> classOfObj) {
+        if (classOfObj.isInterface() || Modifier.isAbstract(classOfObj.getModifiers())) {
+            return new ReflectionInstantiator(classOfObj);
+        }
+        try {
+            Constructor<?> constructor = classOfObj.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            MethodHandle handle = MethodHandles.lookup().unreflectConstructor(constructor)
+                .asType(MethodType.methodType(Object.class));
+            return new MethodHandleInstantiator(handle);
+        } catch (NoSuchMethodException e) {
+            return new ReflectionInstantiator(classOfObj);
+        } catch (IllegalAccessException e) {
+            return new ReflectionInstantiator(classOfObj);
+        } catch (SecurityException e) {
+            return new ReflectionInstantiator(classOfObj);
+        }
+    }
+
+    /**
+     * Creates an instantiator which delegates to a mapper generated at compile time.
+     *
+     * @param mapper
+     *            the generated {@link DocoMapper}
+     * @return the {@link Instantiator}
+     */
+    static Instantiator create(final DocoMapper<?> mapper) {
+        return new Instantiator() {
+            @Override
+            Object newInstance() throws InstantiationException {
+                return mapper.newInstance();
+            }
+        };
+    }
+
+    abstract Object newInstance() throws InstantiationException, IllegalAccessException;
+
+    private static final class MethodHandleInstantiator extends Instantiator {
+
+        private final MethodHandle constructor;
+
+        MethodHandleInstantiator(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+
+        @Override
+        Object newInstance() throws InstantiationException {
+            try {
+                return (Object) constructor.invokeExact();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable t) {
+                InstantiationException exception = new InstantiationException(t.getMessage());
+                exception.initCause(t);
+                throw exception;
+            }
+        }
+    }
+
+    private static final class ReflectionInstantiator extends Instantiator {
+
+        private final Class<?> classOfObj;
+
+        ReflectionInstantiator(Class<?> classOfObj) {
+            this.classOfObj = classOfObj;
+        }
+
+        @Override
+        Object newInstance() throws InstantiationException, IllegalAccessException {
+            return classOfObj.newInstance();
+        }
+    }
+}
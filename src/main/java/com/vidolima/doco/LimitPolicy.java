@@ -0,0 +1,24 @@
+package com.vidolima.doco;
+
+/**
+ * What {@link Doco} does with a document which violates the limits of the Search API (see {@link LimitViolation}).
+ * A document whose id is too long is always rejected.
+ */
+public enum LimitPolicy {
+
+    /**
+     * The document is not converted: {@link Doco#toDocument(Object)} throws a
+     * {@link com.vidolima.doco.exception.DocumentLimitException} and {@link Doco#putAll(Iterable)} does not put it.
+     */
+    REJECT,
+
+    /**
+     * The TEXT and HTML values are truncated to the limit; the other fields which violate a limit are dropped.
+     */
+    TRUNCATE,
+
+    /**
+     * The fields which violate a limit are dropped.
+     */
+    DROP_FIELD
+}
@@ -0,0 +1,77 @@
+package com.vidolima.doco;
+
+/**
+ * A limit of the Search API violated by a document, found by {@link Doco} while it builds the document, and what was
+ * done about it.
+ */
+public final class LimitViolation {
+
+    /**
+     * The limits checked by Doco.
+     */
+    public enum Kind {
+        /** The id is longer than 500 bytes. */
+        ID_TOO_LONG,
+        /** A TEXT or HTML value is longer than 1MB. */
+        TEXT_TOO_LONG,
+        /** An ATOM value is longer than 500 bytes. */
+        ATOM_TOO_LONG,
+        /** A NUMBER value is out of the range -2147483647 to 2147483647. */
+        NUMBER_OUT_OF_RANGE,
+        /** A DATE value is out of the range supported by the Search API. */
+        DATE_OUT_OF_RANGE,
+        /** The estimated size of the document is over 1MB. */
+        DOCUMENT_TOO_LARGE
+    }
+
+    /**
+     * What was done about a violation.
+     */
+    public enum Action {
+        /** The whole document was rejected. */
+        REJECTED,
+        /** The value was truncated. */
+        TRUNCATED,
+        /** The field (or facet) was not added to the document. */
+        DROPPED
+    }
+
+    private final Kind kind;
+    private final String fieldName;
+    private final Action action;
+    private final String message;
+
+    LimitViolation(Kind kind, String fieldName, Action action, String message) {
+        this.kind = kind;
+        this.fieldName = fieldName;
+        this.action = action;
+        this.message = message;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the name of the field (or facet) in the document, or null if the violation is about the whole document
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return a description of the violation, with the size or value found and the limit
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return kind + (fieldName == null ? "" : "(" + fieldName + ")") + " " + action + ": " + message;
+    }
+}
@@ -0,0 +1,68 @@
+package com.vidolima.doco;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.appengine.api.search.Index;
+
+/**
+ * A {@link FingerprintStore} which keeps the fingerprints of the most recently used documents in memory. It is local
+ * to the instance, so it only avoids the puts repeated by the same instance.
+ */
+public final class LruFingerprintStore implements FingerprintStore {
+
+    private final Map<String, String> fingerprints;
+
+    /**
+     * @param maxSize
+     *            the maximum number of fingerprints kept, the least recently used ones are evicted
+     */
+    public LruFingerprintStore(final int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maxSize);
+        }
+        this.fingerprints = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Map<String, String> getAll(Index index, Collection<String> documentIds) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String documentId : documentIds) {
+            String fingerprint = fingerprints.get(DocumentFingerprint.key(index, documentId));
+            if (fingerprint != null) {
+                result.put(documentId, fingerprint);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void putAll(Index index, Map<String, String> documentFingerprints) {
+        for (Map.Entry<String, String> entry : documentFingerprints.entrySet()) {
+            fingerprints.put(DocumentFingerprint.key(index, entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(Index index, Collection<String> documentIds) {
+        for (String documentId : documentIds) {
+            fingerprints.remove(DocumentFingerprint.key(index, documentId));
+        }
+    }
+
+    /**
+     * @return the number of fingerprints kept
+     */
+    public synchronized int size() {
+        return fingerprints.size();
+    }
+}
@@ -0,0 +1,140 @@
+package com.vidolima.doco;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.exception.IllegalAnnotationDeclarationException;
+
+/**
+ * Thread-safe cache of {@link ClassMapping}s. The mapping of a class is built on first use and then reused by every
+ * {@link DocumentParser} and {@link ObjectParser}.
+ *
+ * The registry also knows the subclasses annotated with {@link DocumentIndexSubClass}, by their discriminator, under
+ * each of their super classes annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass}. The subclasses
+ * compiled with a class are declared by its generated mapper and registered when its mapping is built; the others
+ * are known once their own mappings are built, e.g. by {@link Doco#register}.
+ *
+ * The converters of the fields are resolved in the {@link ConverterRegistry} of the registry: the default one for
+ * the default registry, or the converters given to the {@link Doco.Builder} of a Doco.
+ */
+final class MappingRegistry {
+
+    private static final MappingRegistry DEFAULT = new MappingRegistry();
+
+    private final ConverterRegistry converters;
+
+    // the registry whose subclasses are known by this one as well, null when there is none
+    private final MappingRegistry parent;
+
+    private final ConcurrentMap<Class<?>, ClassMapping> mappings = new ConcurrentHashMap<Class<?>, ClassMapping>();
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, Class<?>>> subclasses =
+        new ConcurrentHashMap<Class<?>, ConcurrentMap<String, Class<?>>>();
+
+    MappingRegistry() {
+        this(ConverterRegistry.getDefault(), null);
+    }
+
+    /**
+     * Creates a registry whose mappings resolve their converters in the given registry.
+     *
+     * @param converters
+     *            the {@link ConverterRegistry} of the mappings
+     * @param parent
+     *            the registry whose subclasses are also known by this one (e.g. the ones registered with
+     *            {@link Doco#register}), or null for none
+     */
+    MappingRegistry(ConverterRegistry converters, MappingRegistry parent) {
+        this.converters = converters;
+        this.parent = parent;
+    }
+
+    /**
+     * @return the registry shared by default by all the parsers
+     */
+    static MappingRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the {@link ConverterRegistry} where the converters of the mappings are resolved
+     */
+    ConverterRegistry getConverters() {
+        return converters;
+    }
+
+    /**
+     * Obtains the mapping of the given class, building it if necessary from its generated {@link DocoMapper} or, when
+     * there is none, from its annotations.
+     *
+     * @param classOfObj
+     *            the mapped class
+     * @return the {@link ClassMapping} of the class
+     */
+    ClassMapping getMapping(Class<?> classOfObj) {
+        ClassMapping mapping = mappings.get(classOfObj);
+        if (mapping == null) {
+            // concurrent builds of the same class are harmless, only the first one is kept
+            DocoMapper<?> mapper = DocoMapper.forClass(classOfObj);
+            ClassMapping created = mapper != null ? ClassMapping.create(mapper, converters)
+                : ClassMapping.create(classOfObj, converters);
+            if (created.getDiscriminator() != null) {
+                registerSubclass(created);
+            }
+            // the mapping of a subclass never needs the one of its super class, so this does not recurse back here
+            for (Class<?> subclass : created.getSubclasses()) {
+                getMapping(subclass);
+            }
+            mapping = mappings.putIfAbsent(classOfObj, created);
+            if (mapping == null) {
+                mapping = created;
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Obtains the subclass identified by a discriminator.
+     *
+     * @param baseClass
+     *            the super class
+     * @param discriminator
+     *            the discriminator stored in a document
+     * @return the subclass of the given class with the discriminator, or null if none is known by this registry or
+     *         its parent
+     */
+    Class<?> getSubclass(Class<?> baseClass, String discriminator) {
+        ConcurrentMap<String, Class<?>> byDiscriminator = subclasses.get(baseClass);
+        Class<?> subclass = byDiscriminator == null ? null : byDiscriminator.get(discriminator);
+        if (subclass == null && parent != null) {
+            subclass = parent.getSubclass(baseClass, discriminator);
+        }
+        return subclass;
+    }
+
+    /**
+     * Makes the subclass known under each of its annotated super classes, before its mapping is cached, so a
+     * discriminator which is not unique fails every time the mapping is built.
+     */
+    private void registerSubclass(ClassMapping mapping) {
+        for (Class<?> superclass = mapping.getType().getSuperclass(); superclass != null;
+            superclass = superclass.getSuperclass()) {
+            if (!superclass.isAnnotationPresent(DocumentIndex.class)
+                && !superclass.isAnnotationPresent(DocumentIndexSubClass.class)) {
+                continue;
+            }
+            ConcurrentMap<String, Class<?>> byDiscriminator = subclasses.get(superclass);
+            if (byDiscriminator == null) {
+                subclasses.putIfAbsent(superclass, new ConcurrentHashMap<String, Class<?>>());
+                byDiscriminator = subclasses.get(superclass);
+            }
+            Class<?> previous = byDiscriminator.putIfAbsent(mapping.getDiscriminator(), mapping.getType());
+            if (previous != null && !previous.equals(mapping.getType())) {
+                throw new IllegalAnnotationDeclarationException("The discriminator '" + mapping.getDiscriminator()
+                    + "' of " + mapping.getType() + " is already used by " + previous + ", a subclass of "
+                    + superclass + ". Declare a unique one with @DocumentIndexSubClass(discriminator = ...).");
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.vidolima.doco;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.googlecode.objectify.Ref;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.FacetType;
+import com.vidolima.doco.annotation.PrefixField;
+import com.vidolima.doco.annotation.FieldType;
+
+/**
+ * Builds the {@link ClassMapping}s of indexed classes and of all the classes they reference or embed, and checks them
+ * for the errors which would otherwise only be found by the first conversion. All the problems are collected instead
+ * of stopping at the first one.
+ */
+final class MappingValidator {
+
+    private static final Map<FieldType, String> SUPPORTED_TYPES = new EnumMap<FieldType, String>(FieldType.class);
+
+    static {
+        SUPPORTED_TYPES.put(FieldType.TEXT, "a String, an enum");
+        SUPPORTED_TYPES.put(FieldType.HTML, "a String, an enum");
+        SUPPORTED_TYPES.put(FieldType.ATOM, "a String, an enum");
+        SUPPORTED_TYPES.put(FieldType.NUMBER, "Long, Integer, Float, Double, BigDecimal");
+        SUPPORTED_TYPES.put(FieldType.DATE, "a Date, a java.time date");
+        SUPPORTED_TYPES.put(FieldType.GEO_POINT, "a GeoPoint, a GeoPt");
+    }
+
+    private final MappingRegistry mappingRegistry;
+    private final List<String> problems = new ArrayList<String>();
+    private final Set<Class<?>> validated = new LinkedHashSet<Class<?>>();
+
+    MappingValidator(MappingRegistry mappingRegistry) {
+        this.mappingRegistry = mappingRegistry;
+    }
+
+    /**
+     * Validates an indexed class, annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass}, and the
+     * classes it references or embeds.
+     *
+     * @param type
+     *            the indexed class
+     */
+    void validateIndexed(Class<?> type) {
+        if (!type.isAnnotationPresent(DocumentIndex.class) && !type.isAnnotationPresent(DocumentIndexSubClass.class)) {
+            problems.add(type.getName() + ": there is no @DocumentIndex or @DocumentIndexSubClass annotation.");
+            return;
+        }
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            problems.add(type.getName() + ": an indexed class can not be abstract.");
+        } else {
+            try {
+                type.getDeclaredConstructor();
+            } catch (NoSuchMethodException e) {
+                problems.add(type.getName() + ": an indexed class must have a no-arg constructor.");
+            }
+        }
+
+        int ids = 0;
+        for (Class<?> c : hierarchy(type)) {
+            for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+                if (field.isAnnotationPresent(DocumentId.class)) {
+                    ids++;
+                    if (field.getType().isPrimitive()) {
+                        problems.add(describe(field) + ": the type of a DocumentId field can not be primitive.");
+                    }
+                }
+            }
+        }
+        if (ids != 1) {
+            problems.add(type.getName() + ": " + (ids == 0 ? "no" : "more than one") + " @DocumentId was found.");
+        }
+
+        ClassMapping mapping = validate(type, new LinkedHashSet<Class<?>>());
+        if (mapping != null) {
+            checkNames(type.getName(), mapping, "", new HashMap<String, String>(), new LinkedHashSet<Class<?>>());
+        }
+    }
+
+    /**
+     * @return the problems found so far
+     */
+    List<String> getProblems() {
+        return problems;
+    }
+
+    /**
+     * Builds and checks the mapping of a class and of the classes it references or embeds.
+     *
+     * @param path
+     *            the classes being validated, to detect cycles of references
+     * @return the mapping, or null if it could not be built
+     */
+    private ClassMapping validate(Class<?> type, Set<Class<?>> path) {
+        if (!path.add(type)) {
+            StringBuilder cycle = new StringBuilder();
+            for (Class<?> c : path) {
+                cycle.append(c.getSimpleName()).append(" -> ");
+            }
+            problems.add(type.getName() + ": cyclic @DocumentRef or @DocumentEmbed " + cycle + type.getSimpleName()
+                + ".");
+            return null;
+        }
+        try {
+            ClassMapping mapping;
+            try {
+                mapping = mappingRegistry.getMapping(type);
+            } catch (RuntimeException e) {
+                problems.add(type.getName() + ": the mapping can not be built: " + e.getMessage());
+                return null;
+            }
+            if (!validated.add(type)) {
+                return mapping;
+            }
+
+            for (Class<?> c : hierarchy(type)) {
+                for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+                    checkField(field);
+                }
+            }
+
+            for (NestedMapping ref : mapping.getRefs()) {
+                validate(ref.getTargetClass(), path);
+            }
+            for (NestedMapping embed : mapping.getEmbeds()) {
+                validate(embed.getTargetClass(), path);
+            }
+            return mapping;
+        } finally {
+            path.remove(type);
+        }
+    }
+
+    /**
+     * Checks that the type of a field is compatible with its annotations.
+     */
+    private void checkField(java.lang.reflect.Field field) {
+        Class<?> type = field.getType();
+
+        DocumentField documentField = field.getAnnotation(DocumentField.class);
+        if (documentField != null) {
+            FieldType fieldType = documentField.type();
+            if (mappingRegistry.getConverters().resolve(type, fieldType) == null) {
+                problems.add(describe(field) + ": a DocumentField typed as " + fieldType + " must be "
+                    + SUPPORTED_TYPES.get(fieldType) + " or a type with a registered TypeConverter.");
+            }
+        }
+
+        DocumentCollection documentCollection = field.getAnnotation(DocumentCollection.class);
+        if (documentCollection != null) {
+            FieldType fieldType = documentCollection.fieldType();
+            Class<?> elementType = FieldMapping.getElementType(field);
+            if (type.isArray()) {
+                if (fieldType != FieldType.NUMBER || !elementType.isPrimitive() || Boolean.TYPE.equals(elementType)
+                    || Character.TYPE.equals(elementType) || Short.TYPE.equals(elementType)
+                    || Byte.TYPE.equals(elementType)) {
+                    problems.add(describe(field) + ": a multi-valued array field must be an int[], long[], float[] "
+                        + "or double[] typed as NUMBER.");
+                }
+            } else if (!Collection.class.isAssignableFrom(type)) {
+                problems.add(describe(field) + ": multi-valued field must be of type Collection.");
+            } else {
+                if (!type.isInstance(ObjectParser.getConcreteCollection(documentCollection.type()))) {
+                    problems.add(describe(field) + ": a " + documentCollection.type() + " can not be assigned to "
+                        + type.getName() + ".");
+                }
+                if (elementType == null) {
+                    elementType = FieldMapping.getDefaultElementType(fieldType);
+                }
+                if (mappingRegistry.getConverters().resolve(elementType, fieldType) == null) {
+                    problems.add(describe(field) + ": a DocumentCollection typed as " + fieldType + " can not hold "
+                        + elementType.getName() + ", the elements must be " + SUPPORTED_TYPES.get(fieldType)
+                        + " or a type with a registered TypeConverter.");
+                }
+            }
+        }
+
+        if (field.isAnnotationPresent(DocumentRef.class) && !Ref.class.isAssignableFrom(type)) {
+            problems.add(describe(field) + ": a DocumentRef field must be of type " + Ref.class.getName() + ".");
+        }
+        if (field.isAnnotationPresent(DocumentEmbed.class)
+            && (type.isPrimitive() || (type.isArray() && type.getComponentType().isPrimitive()))) {
+            problems.add(describe(field) + ": a DocumentEmbed field must be an object with mapped fields, or a "
+                + "collection or an array of them.");
+        }
+
+        FacetField facetField = field.getAnnotation(FacetField.class);
+        if (facetField != null && facetField.type() == FacetType.NUMBER && !isNumber(type)) {
+            problems.add(describe(field) + ": a FacetField typed as NUMBER must be Long, Integer, Float or Double.");
+        }
+        if (field.isAnnotationPresent(PrefixField.class) && !String.class.equals(type)
+            && !(Collection.class.isAssignableFrom(type) && isStringOrUndeclared(FieldMapping.getElementType(field)))) {
+            problems.add(describe(field) + ": a PrefixField must be a String or a Collection of Strings.");
+        }
+    }
+
+    /**
+     * Checks that no two fields of the document have the same name, which the Search API would merge into a single
+     * multi-valued field.
+     *
+     * @param names
+     *            the names found so far, with the field that defines them
+     */
+    private void checkNames(String owner, ClassMapping mapping, String prefix, Map<String, String> names,
+        Set<Class<?>> path) {
+        if (!path.add(mapping.getType())) {
+            return; // already reported as a cycle
+        }
+        boolean prefixed = !prefix.isEmpty();
+        for (FieldMapping field : mapping.getFields()) {
+            String name = prefixed ? prefix + "_" + field.getName() : field.getName();
+            String definedBy = mapping.getType().getName() + "." + field.getAccessor().getName();
+            String previous = names.put(name, definedBy);
+            if (previous != null) {
+                problems.add(owner + ": the document field '" + name + "' is defined by both " + previous + " and "
+                    + definedBy + ".");
+            }
+        }
+        // the prefixes are only added to the documents of the indexed class itself
+        if (!prefixed) {
+            for (PrefixMapping prefixes : mapping.getPrefixes()) {
+                String definedBy = mapping.getType().getName() + "." + prefixes.getAccessor().getName();
+                String previous = names.put(prefixes.getName(), definedBy);
+                if (previous != null) {
+                    problems.add(owner + ": the document field '" + prefixes.getName() + "' is defined by both "
+                        + previous + " and " + definedBy + ".");
+                }
+            }
+        }
+        List<NestedMapping> nested = new ArrayList<NestedMapping>(mapping.getRefs());
+        nested.addAll(mapping.getEmbeds());
+        for (NestedMapping target : nested) {
+            ClassMapping targetMapping;
+            try {
+                targetMapping = mappingRegistry.getMapping(target.getTargetClass());
+            } catch (RuntimeException e) {
+                continue; // already reported
+            }
+            checkNames(owner, targetMapping, target.appendTo(prefix), names, path);
+        }
+        path.remove(mapping.getType());
+    }
+
+    /**
+     * @return the class and its super classes while annotated with {@link DocumentIndexSubClass}, which are the
+     *         classes whose fields are mapped
+     */
+    private static List<Class<?>> hierarchy(Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        Class<?> c = type;
+        hierarchy.add(c);
+        while (c.isAnnotationPresent(DocumentIndexSubClass.class) && c.getSuperclass() != null
+            && !Object.class.equals(c.getSuperclass())) {
+            c = c.getSuperclass();
+            hierarchy.add(c);
+        }
+        return hierarchy;
+    }
+
+    private static boolean isStringOrUndeclared(Class<?> elementType) {
+        return elementType == null || String.class.equals(elementType);
+    }
+
+    private static boolean isNumber(Class<?> type) {
+        return Integer.class.equals(type) || Long.class.equals(type) || Float.class.equals(type)
+            || Double.class.equals(type) || Integer.TYPE.equals(type) || Long.TYPE.equals(type)
+            || Float.TYPE.equals(type) || Double.TYPE.equals(type);
+    }
+
+
+    private static String describe(java.lang.reflect.Field field) {
+        return field.getDeclaringClass().getName() + "." + field.getName();
+    }
+}
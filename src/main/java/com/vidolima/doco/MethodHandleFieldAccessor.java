@@ -0,0 +1,358 @@
+package com.vidolima.doco;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * {@link FieldAccessor}s based on {@link MethodHandle}s unreflected once per field. Fields typed as int, long, float
+ * or double get an accessor whose handles work directly with the primitive type, so reading or writing a NUMBER
+ * field never boxes the value.
+ */
+abstract class MethodHandleFieldAccessor extends FieldAccessor {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    final MethodHandle getter;
+    final MethodHandle setter;
+
+    private MethodHandleFieldAccessor(java.lang.reflect.Field field, Class<?> handleType) throws IllegalAccessException {
+        super(field.getName(), field.getType());
+        this.getter = LOOKUP.unreflectGetter(field).asType(MethodType.methodType(handleType, Object.class));
+        this.setter = LOOKUP.unreflectSetter(field).asType(
+            MethodType.methodType(void.class, Object.class, handleType));
+    }
+
+    /**
+     * Creates the accessor of the given field.
+     *
+     * @param field
+     *            the field, already made accessible
+     * @return the {@link FieldAccessor}
+     * @throws IllegalAccessException
+     *             if the field can not be unreflected (e.g. it is final)
+     */
+    static FieldAccessor unreflect(java.lang.reflect.Field field) throws IllegalAccessException {
+        Class<?> type = field.getType();
+        if (Integer.TYPE.equals(type))
+            return new IntAccessor(field);
+        if (Long.TYPE.equals(type))
+            return new LongAccessor(field);
+        if (Float.TYPE.equals(type))
+            return new FloatAccessor(field);
+        if (Double.TYPE.equals(type))
+            return new DoubleAccessor(field);
+        return new ObjectAccessor(field);
+    }
+
+    RuntimeException propagate(Throwable t) {
+        if (t instanceof ClassCastException) {
+            // same exception as java.lang.reflect.Field.set for a value of the wrong type
+            return new IllegalArgumentException("Can not set " + this + " field: " + t.getMessage(), t);
+        }
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+    static final class ObjectAccessor extends MethodHandleFieldAccessor {
+
+        ObjectAccessor(java.lang.reflect.Field field) throws IllegalAccessException {
+            super(field, Object.class);
+        }
+
+        @Override
+        protected Object get(Object obj) {
+            try {
+                return (Object) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected void set(Object obj, Object value) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+    }
+
+    static final class IntAccessor extends MethodHandleFieldAccessor {
+
+        IntAccessor(java.lang.reflect.Field field) throws IllegalAccessException {
+            super(field, int.class);
+        }
+
+        @Override
+        protected Object get(Object obj) {
+            return Integer.valueOf(getInt(obj));
+        }
+
+        @Override
+        protected void set(Object obj, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Can not set " + this + " field to null value");
+            }
+            setInt(obj, ((Number) value).intValue());
+        }
+
+        @Override
+        protected int getInt(Object obj) {
+            try {
+                return (int) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected long getLong(Object obj) {
+            return getInt(obj);
+        }
+
+        @Override
+        protected float getFloat(Object obj) {
+            return getInt(obj);
+        }
+
+        @Override
+        protected double getDouble(Object obj) {
+            return getInt(obj);
+        }
+
+        @Override
+        protected void setInt(Object obj, int value) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected void setLong(Object obj, long value) {
+            setInt(obj, (int) value);
+        }
+
+        @Override
+        protected void setFloat(Object obj, float value) {
+            setInt(obj, (int) value);
+        }
+
+        @Override
+        protected void setDouble(Object obj, double value) {
+            setInt(obj, (int) value);
+        }
+    }
+
+    static final class LongAccessor extends MethodHandleFieldAccessor {
+
+        LongAccessor(java.lang.reflect.Field field) throws IllegalAccessException {
+            super(field, long.class);
+        }
+
+        @Override
+        protected Object get(Object obj) {
+            return Long.valueOf(getLong(obj));
+        }
+
+        @Override
+        protected void set(Object obj, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Can not set " + this + " field to null value");
+            }
+            setLong(obj, ((Number) value).longValue());
+        }
+
+        @Override
+        protected int getInt(Object obj) {
+            return (int) getLong(obj);
+        }
+
+        @Override
+        protected long getLong(Object obj) {
+            try {
+                return (long) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected float getFloat(Object obj) {
+            return getLong(obj);
+        }
+
+        @Override
+        protected double getDouble(Object obj) {
+            return getLong(obj);
+        }
+
+        @Override
+        protected void setInt(Object obj, int value) {
+            setLong(obj, value);
+        }
+
+        @Override
+        protected void setLong(Object obj, long value) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected void setFloat(Object obj, float value) {
+            setLong(obj, (long) value);
+        }
+
+        @Override
+        protected void setDouble(Object obj, double value) {
+            setLong(obj, (long) value);
+        }
+    }
+
+    static final class FloatAccessor extends MethodHandleFieldAccessor {
+
+        FloatAccessor(java.lang.reflect.Field field) throws IllegalAccessException {
+            super(field, float.class);
+        }
+
+        @Override
+        protected Object get(Object obj) {
+            return Float.valueOf(getFloat(obj));
+        }
+
+        @Override
+        protected void set(Object obj, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Can not set " + this + " field to null value");
+            }
+            setFloat(obj, ((Number) value).floatValue());
+        }
+
+        @Override
+        protected int getInt(Object obj) {
+            return (int) getFloat(obj);
+        }
+
+        @Override
+        protected long getLong(Object obj) {
+            return (long) getFloat(obj);
+        }
+
+        @Override
+        protected float getFloat(Object obj) {
+            try {
+                return (float) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected double getDouble(Object obj) {
+            return getFloat(obj);
+        }
+
+        @Override
+        protected void setInt(Object obj, int value) {
+            setFloat(obj, value);
+        }
+
+        @Override
+        protected void setLong(Object obj, long value) {
+            setFloat(obj, value);
+        }
+
+        @Override
+        protected void setFloat(Object obj, float value) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected void setDouble(Object obj, double value) {
+            setFloat(obj, (float) value);
+        }
+    }
+
+    static final class DoubleAccessor extends MethodHandleFieldAccessor {
+
+        DoubleAccessor(java.lang.reflect.Field field) throws IllegalAccessException {
+            super(field, double.class);
+        }
+
+        @Override
+        protected Object get(Object obj) {
+            return Double.valueOf(getDouble(obj));
+        }
+
+        @Override
+        protected void set(Object obj, Object value) {
+            if (value == null) {
+                throw new IllegalArgumentException("Can not set " + this + " field to null value");
+            }
+            setDouble(obj, ((Number) value).doubleValue());
+        }
+
+        @Override
+        protected int getInt(Object obj) {
+            return (int) getDouble(obj);
+        }
+
+        @Override
+        protected long getLong(Object obj) {
+            return (long) getDouble(obj);
+        }
+
+        @Override
+        protected float getFloat(Object obj) {
+            return (float) getDouble(obj);
+        }
+
+        @Override
+        protected double getDouble(Object obj) {
+            try {
+                return (double) getter.invokeExact(obj);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        @Override
+        protected void setInt(Object obj, int value) {
+            setDouble(obj, value);
+        }
+
+        @Override
+        protected void setLong(Object obj, long value) {
+            setDouble(obj, value);
+        }
+
+        @Override
+        protected void setFloat(Object obj, float value) {
+            setDouble(obj, value);
+        }
+
+        @Override
+        protected void setDouble(Object obj, double value) {
+            try {
+                setter.invokeExact(obj, value);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+    }
+}
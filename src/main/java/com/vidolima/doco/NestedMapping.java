@@ -0,0 +1,127 @@
+package com.vidolima.doco;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.exception.IllegalAnnotationDeclarationException;
+
+/**
+ * Compiled mapping of a field annotated with {@link DocumentEmbed} or {@link DocumentRef}. The fields of the target
+ * class are added to the same document with the simple name of the target class as prefix. The fields of a collection
+ * or array of embedded objects become multi-valued fields, with one value per element.
+ */
+final class NestedMapping {
+
+    private final FieldAccessor accessor;
+    private final Class<?> targetClass;
+    private final String prefix;
+    private final boolean multiValued;
+    private final DocumentCollectionType collectionType;
+    private final boolean readBack;
+
+    NestedMapping(FieldAccessor accessor, Class<?> targetClass) {
+        this(accessor, targetClass, false, null, false);
+    }
+
+    NestedMapping(FieldAccessor accessor, Class<?> targetClass, boolean multiValued,
+        DocumentCollectionType collectionType, boolean readBack) {
+        this.accessor = accessor;
+        this.targetClass = targetClass;
+        this.prefix = targetClass.getSimpleName();
+        this.multiValued = multiValued;
+        this.collectionType = collectionType;
+        this.readBack = readBack;
+    }
+
+    static NestedMapping forEmbed(java.lang.reflect.Field field) {
+        Class<?> type = field.getType();
+        if (!type.isArray() && !Collection.class.isAssignableFrom(type)) {
+            return new NestedMapping(FieldAccessor.create(field), type);
+        }
+        Class<?> elementType = FieldMapping.getElementType(field);
+        if (elementType == null) {
+            throw new IllegalAnnotationDeclarationException("The element type of the @DocumentEmbed collection "
+                + field.getName() + " must be declared, e.g. List<Address>.");
+        }
+        DocumentEmbed annotation = field.getAnnotation(DocumentEmbed.class);
+        return new NestedMapping(FieldAccessor.create(field), elementType, true, annotation.type(),
+            annotation.readBack());
+    }
+
+    static NestedMapping forRef(java.lang.reflect.Field field) {
+        return new NestedMapping(FieldAccessor.create(field), field.getAnnotation(DocumentRef.class).type());
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the class whose fields are added to the document: the declared type for an embedded field, or the type
+     *         specified in {@link DocumentRef} for a reference
+     */
+    Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    /**
+     * @return true if the field is a collection or an array of embedded objects
+     */
+    boolean isMultiValued() {
+        return multiValued;
+    }
+
+    /**
+     * @return the collection created when a collection of embedded objects is read back
+     */
+    DocumentCollectionType getCollectionType() {
+        return collectionType;
+    }
+
+    /**
+     * @return true if the collection or array of embedded objects is rebuilt when a document is read
+     */
+    boolean isReadBack() {
+        return readBack;
+    }
+
+    /**
+     * Obtains the embedded objects held by the value of the field: the value itself, or the elements of a collection
+     * or an array, which may be null.
+     *
+     * @param fieldValue
+     *            the value of the field, not null
+     * @return the embedded objects
+     */
+    Iterable<?> getElements(Object fieldValue) {
+        if (!multiValued) {
+            return Collections.singletonList(fieldValue);
+        }
+        if (fieldValue instanceof Object[]) {
+            return Arrays.asList((Object[]) fieldValue);
+        }
+        return (Collection<?>) fieldValue;
+    }
+
+    /**
+     * @return the prefix segment used for the fields of the target class
+     */
+    String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Appends the prefix of this mapping to the given prefix.
+     *
+     * @param fieldNamePrefix
+     *            the current prefix, may be empty
+     * @return the prefix to be used for the fields of the target class
+     */
+    String appendTo(String fieldNamePrefix) {
+        return (fieldNamePrefix == null || fieldNamePrefix.isEmpty()) ? prefix : fieldNamePrefix + "_" + prefix;
+    }
+}
@@ -0,0 +1,51 @@
+package com.vidolima.doco;
+
+import java.util.Iterator;
+
+import com.google.appengine.api.search.Document;
+
+/**
+ * Converts the {@link Document}s of an iterator into objects as they are consumed, so only the current object is
+ * created at a time.
+ *
+ * @param <T>
+ *            the class of the objects
+ */
+final class ObjectIterator<T> implements Iterator<T> {
+
+    private final Iterator<? extends Document> documents;
+    private final ParallelConverter.Conversion<Document, T> conversion;
+
+    ObjectIterator(Iterator<? extends Document> documents, ParallelConverter.Conversion<Document, T> conversion) {
+        this.documents = documents;
+        this.conversion = conversion;
+    }
+
+    /**
+     * Wraps the given documents in an {@link Iterable} which converts them on each iteration.
+     */
+    static <T> Iterable<T> lazy(final Iterable<? extends Document> documents,
+        final ParallelConverter.Conversion<Document, T> conversion) {
+        return new Iterable<T>() {
+            @Override
+            public Iterator<T> iterator() {
+                return new ObjectIterator<T>(documents.iterator(), conversion);
+            }
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        return documents.hasNext();
+    }
+
+    @Override
+    public T next() {
+        return conversion.convert(documents.next());
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("The documents can not be removed through Doco.");
+    }
+}
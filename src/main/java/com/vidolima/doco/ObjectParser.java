@@ -1,5 +1,6 @@
 package com.vidolima.doco;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
@@ -28,6 +29,16 @@ import com.vidolima.doco.exception.ObjectParseException;
  */
 final class ObjectParser {
 
+    private final MappingRegistry mappingRegistry;
+
+    ObjectParser() {
+        this(MappingRegistry.getDefault());
+    }
+
+    ObjectParser(MappingRegistry mappingRegistry) {
+        this.mappingRegistry = mappingRegistry;
+    }
+
     /**
      * Obtaions the name of the Index.
      * 
@@ -134,128 +145,153 @@ final class ObjectParser {
     }
 
     /**
-     * Obtains the number value of a DocumentField typed as NUMBER.
+     * Converts the value of a search field to the value of a single valued Java field, or of a value of a
+     * multi-valued one, with the {@link TypeConverter} resolved by its mapping.
      * 
-     * @param document
-     *            the {@link Document} that contains the field
-     * @param field
-     *            the field to get the value
-     * @param fieldName
-     *            the name of the field in Document
-     * @return the Object number value
+     * @param fieldMapping
+     *            the mapping of the field
+     * @param searchValue
+     *            the value of the search field
+     * @return the value of the Java field
      */
-    private Object getDocumentFieldNumberValue(Document document, java.lang.reflect.Field field, String fieldName) {
-
-        Class<?> fieldType = field.getType();
-
-        if (Integer.TYPE.equals(fieldType) || Integer.class.equals(field.getType()))
-            return Integer.valueOf(document.getOnlyField(fieldName).getNumber().intValue());
-        if (Long.TYPE.equals(fieldType) || Long.class.equals(field.getType()))
-            return Long.valueOf(document.getOnlyField(fieldName).getNumber().longValue());
-        if (Float.TYPE.equals(fieldType) || Float.class.equals(field.getType()))
-            return Float.valueOf(document.getOnlyField(fieldName).getNumber().floatValue());
-        if (Double.TYPE.equals(fieldType) || Double.class.equals(field.getType()))
-            return document.getOnlyField(fieldName).getNumber();
+    private Object fromSearchValue(FieldMapping fieldMapping, Object searchValue) {
+        TypeConverter<Object, Object> converter = fieldMapping.getConverter();
+        if (converter == null) {
+            if (FieldType.NUMBER.equals(fieldMapping.getFieldType()))
+                throw new ObjectParseException(
+                    "A DocumentField typed as NUMBER must be Long, Integer, Float or Double.");
+            return searchValue; // set as read, e.g. the String of a TEXT field typed as Object
+        }
+        return searchValue == null ? null : converter.fromSearchValue(searchValue);
+    }
 
-        throw new ObjectParseException("A DocumentField typed as NUMBER must be Long, Integer, Float or Double.");
+    /**
+     * Obtains the value of a search field as it is stored in the document.
+     * 
+     * @param f
+     *            the search field
+     * @return the String, Double, Date or GeoPoint value
+     */
+    private Object getSearchValue(com.google.appengine.api.search.Field f) {
+        switch (f.getType()) {
+        case TEXT:
+            return f.getText();
+        case ATOM:
+            return f.getAtom();
+        case HTML:
+            return f.getHTML();
+        case DATE:
+            return f.getDate();
+        case NUMBER:
+            return f.getNumber();
+        case GEO_POINT:
+            return f.getGeoPoint();
+        default:
+            return null;
+        }
     }
 
     /**
-     * Obtains the value of the document field given a {@link Document} and a field name.
+     * Creates the collection of a multi-valued field, sized for the values it will receive.
      * 
-     * @param document
-     *            the {@link Document} that contains the field
-     * @param field
-     *            the field to get the value
-     * @return the value of the field
-     * @throws IllegalAccessException 
-     * @throws InstantiationException 
+     * @param fieldMapping
+     *            the mapping of the @DocumentCollection field
+     * @param size
+     *            the number of values of the field in the document
+     * @return the empty collection
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" })
-	private Object getDocumentFieldValue(Document document, java.lang.reflect.Field field) throws InstantiationException, IllegalAccessException {
-    	
-    	//the annotation must be a DocumentField or a DocumentCollection
-        DocumentField annotation = getDocumentFieldAnnotation(field); 
-        DocumentCollection collectionAnnotation = getDocumentCollectionAnnotation( field );
-        
-        if(annotation == null && collectionAnnotation == null ){
-            throw new IllegalAnnotationDeclarationException("Invalid com.google.appengine.api.search.Field.FieldType: ");
+    @SuppressWarnings("rawtypes")
+    private Collection newCollection(FieldMapping fieldMapping, int size) {
+        if (!Collection.class.isAssignableFrom(fieldMapping.getType())) {
+            throw new IllegalArgumentException("multi-valued field must be of type Collection");
         }
-        	
-        String fieldName = null;
-        if( annotation != null){
-        	fieldName = getFieldNameValue(field, annotation);  // gets the fieldName from the annotation incase the Search.Field fieldName is not the default java.lang.reflec.Field name
+        return getConcreteCollection(fieldMapping.getCollectionType(), size);
+    }
+
+    /**
+     * Obtains the number of a search field for a primitive array, stored as an ATOM (see {@link RepeatedValues}).
+     * 
+     * @param fieldMapping
+     *            the mapping of the array field
+     * @param f
+     *            the search field
+     * @return the number
+     */
+    private double getNumberValue(FieldMapping fieldMapping, com.google.appengine.api.search.Field f) {
+        if (f.getType() == com.google.appengine.api.search.Field.FieldType.ATOM) {
+            return RepeatedValues.parseNumber(f.getAtom());
         }
-        else{
-        	fieldName = getFieldNameValue(field, collectionAnnotation);
+        if (f.getType() != com.google.appengine.api.search.Field.FieldType.NUMBER) {
+            throw new IllegalArgumentException("The multi-valued field '" + fieldMapping.getAccessor().getName()
+                + "' is an array of numbers, actual type of search field f:" + f.getType());
         }
-        
+        return f.getNumber();
+    }
 
+    /**
+     * Obtains the value of a search field of a multi-valued field, parsing the ATOM values of the NUMBER and DATE
+     * fields (see {@link RepeatedValues}).
+     * 
+     * @param fieldMapping
+     *            the mapping of the @DocumentCollection field
+     * @param f
+     *            the search field
+     * @return the String, Double, Date or GeoPoint value
+     */
+    private Object getRepeatedSearchValue(FieldMapping fieldMapping, com.google.appengine.api.search.Field f) {
+        if (f.getType() == com.google.appengine.api.search.Field.FieldType.ATOM) {
+            if (FieldType.NUMBER.equals(fieldMapping.getFieldType())) {
+                return RepeatedValues.parseNumber(f.getAtom());
+            }
+            if (FieldType.DATE.equals(fieldMapping.getFieldType())) {
+                return RepeatedValues.parseDate(f.getAtom());
+            }
+        }
+        return getSearchValue(f);
+    }
 
-        if (document.getFieldCount(fieldName) == 0)
-            return null;
-        else if( document.getFieldCount(fieldName) == 1 && annotation !=null && collectionAnnotation == null){ //only 1 field and uses @DocumentField and doesn't use @DocumentCollection
-	        com.google.appengine.api.search.Field f = document.getOnlyField(fieldName); // if we want to support multi-valued field 
-	
-	        switch (f.getType()) {
-	        case TEXT:
-	            return f.getText();
-	        case ATOM:
-	            return f.getAtom();
-	        case HTML:
-	            return f.getHTML();
-	        case DATE:
-	            return f.getDate();
-	        case NUMBER:
-	            return getDocumentFieldNumberValue(document, field, fieldName);
-	        case GEO_POINT:
-	            return f.getGeoPoint();
-	        }
+    /**
+     * Copies the numbers read for a primitive array to an array of the type of the field, without boxing them.
+     * 
+     * @param numbers
+     *            the numbers read
+     * @param componentType
+     *            int, long, float or double
+     * @return the array
+     */
+    private static Object toPrimitiveArray(double[] numbers, Class<?> componentType) {
+        if (Double.TYPE.equals(componentType)) {
+            return numbers;
         }
-        else if( document.getFieldCount(fieldName) >= 1 && annotation == null && collectionAnnotation != null){ //if it is a multi-valued field and uses @DocumentCollection and not @DocumentField
-        	Object collection = null;
-        	
-        	if( Collection.class.isAssignableFrom( field.getType() ) ){ //Check if java.lang.reflect.field is a Set or of List
-        		collection = getConcreteCollection( collectionAnnotation.type() );
-    		}
-        	else{
-        		throw new IllegalArgumentException("multi-valued field must be of type Collection" ); 
-        	}
-        	
-        	//for every com.google.appengine.api.search.Field
-        	for( com.google.appengine.api.search.Field f: document.getFields(fieldName) ){
-        		
-        		switch (f.getType()) {
-    	        case TEXT:
-    	            ( (Collection) collection).add( f.getText());
-    	            break;
-    	        case ATOM:
-    	        	( (Collection) collection).add( f.getAtom());
-    	            break;
-    	        case HTML:
-    	        	( (Collection) collection).add( f.getHTML());
-    	            break;
-    	        default:
-    	        	throw new IllegalArgumentException("multi-valued field can only be TEXT, ATOM, or HTML, actual type of search field f:" + f.getType() );
-    	        }
-        		
-        	}
-        	
-        	return collection;
+        if (Integer.TYPE.equals(componentType)) {
+            int[] array = new int[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                array[i] = (int) numbers[i];
+            }
+            return array;
         }
-        //else return null
-		return null;
-
+        if (Long.TYPE.equals(componentType)) {
+            long[] array = new long[numbers.length];
+            for (int i = 0; i < numbers.length; i++) {
+                array[i] = (long) numbers[i];
+            }
+            return array;
+        }
+        float[] array = new float[numbers.length];
+        for (int i = 0; i < numbers.length; i++) {
+            array[i] = (float) numbers[i];
+        }
+        return array;
     }
 
     /**
      * Obtain the class type of the field annotated with {@link DocumentId}.
      * 
      * @param fieldId
-     *            the {@link Field} annotated with {@link DocumentId}.
+     *            the accessor of the field annotated with {@link DocumentId}.
      * @return the field class type
      */
-    private Class<?> getFieldIdClassType(java.lang.reflect.Field fieldId) {
+    private Class<?> getFieldIdClassType(FieldAccessor fieldId) {
         Class<?> fieldType = fieldId.getType();
 
         if (fieldType.isPrimitive())
@@ -273,7 +309,7 @@ final class ObjectParser {
      *            the Document
      * @return value of the field id
      */
-    private Object getFieldIdValue(java.lang.reflect.Field fieldId, Document document) {
+    private Object getFieldIdValue(FieldAccessor fieldId, Document document) {
 
         Class<?> fieldType = getFieldIdClassType(fieldId);
 
@@ -288,7 +324,8 @@ final class ObjectParser {
     }
 
     /**
-     * Parses a {@link Document} to an {@link Object}.
+     * Parses a {@link Document} to an {@link Object}. If the document holds the discriminator of a subclass of the
+     * given class, the object is an instance of that subclass.
      * 
      * @param document
      *            the {@link Document} to be parsed
@@ -298,57 +335,220 @@ final class ObjectParser {
      * @throws InstantiationException
      * @throws IllegalAccessException
      */
-    @SuppressWarnings("unchecked")
 	<T> T parseObject(Document document, Class<T> classOfObj) throws InstantiationException, IllegalAccessException {
+        ClassMapping mapping = getDocumentMapping(document, classOfObj);
+        return parseObject(document, mapping, mapping.getSlots());
+    }
 
-        T instanceOfT = classOfObj.newInstance();
+    /**
+     * Obtains the mapping of the class a document was created from: the given class, or the subclass identified by
+     * the discriminator the document holds when it is read as one of its indexed super classes.
+     * 
+     * @throws ObjectParseException
+     *             if the discriminator is not the one of a known subclass of the given class, so the fields of the
+     *             subclass are not silently lost
+     */
+    private ClassMapping getDocumentMapping(Document document, Class<?> classOfObj) {
+        ClassMapping mapping = mappingRegistry.getMapping(classOfObj);
+        if (mapping.getIndexName() == null || document.getFieldCount(DocumentParser.TYPE_FIELD_NAME) != 1) {
+            return mapping;
+        }
+        String discriminator = document.getOnlyField(DocumentParser.TYPE_FIELD_NAME).getAtom();
+        if (discriminator == null || discriminator.equals(mapping.getDiscriminator())) {
+            return mapping;
+        }
+        Class<?> subclass = mappingRegistry.getSubclass(classOfObj, discriminator);
+        if (subclass == null) {
+            throw new ObjectParseException("The document " + document.getId() + " was created from the class with "
+                + "the discriminator '" + discriminator + "', which is not a known subclass of " + classOfObj
+                + ". Compile the subclass with the class, or register it with Doco.register at startup.");
+        }
+        return mappingRegistry.getMapping(subclass);
+    }
+
+    /**
+     * Parses a {@link Document} to an {@link Object}, filling only the fields of the given projection.
+     * 
+     * @param document
+     *            the {@link Document} to be parsed
+     * @param classOfObj
+     *            the base class of the object
+     * @param projection
+     *            the projection of the class, resolved with {@link Projection#resolve}
+     * @return an object with the given type
+     * @throws InstantiationException
+     * @throws IllegalAccessException
+     */
+    <T> T parseObject(Document document, Class<T> classOfObj, ProjectionMapping projection)
+        throws InstantiationException, IllegalAccessException {
+        if (!classOfObj.equals(projection.getType())) {
+            throw new IllegalArgumentException("The projection of " + projection.getType()
+                + " can not be used for " + classOfObj);
+        }
+        return parseObject(document, mappingRegistry.getMapping(classOfObj), projection.getSlots());
+    }
+
+    /**
+     * Parses a {@link Document} to an {@link Object} in a single walk over the fields of the document, each of them
+     * routed to the slots of its name. A single valued field is filled only if the document has exactly one field of
+     * its name; the collections and arrays are sized from the number of fields of their name.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+	private <T> T parseObject(Document document, ClassMapping mapping, FieldSlots slots)
+        throws InstantiationException, IllegalAccessException {
+
+        T instanceOfT = (T) mapping.newInstance();
 
         // the ID value
-        java.lang.reflect.Field fieldId = ReflectionUtils.getAnnotatedField(classOfObj, DocumentId.class);
+        FieldAccessor fieldId = getDocumentIdField(mapping);
         fieldId.set(instanceOfT, getFieldIdValue(fieldId, document));
 
-        // others values
-        List<java.lang.reflect.Field> fields = ReflectionUtils.getAnnotatedFields(classOfObj, DocumentField.class);
-        
-        /**
-         *  James Huang Add any collection annotations
-         */
-        fields.addAll( ReflectionUtils.getAnnotatedFields(classOfObj, DocumentCollection.class));
-
-        for (java.lang.reflect.Field f : fields) {
-            Object value = getDocumentFieldValue(document, f);
-            //Check that if Field f is an enum to use the enum.valueof Method
-            System.out.println("value:[" + value + "]");
-            System.out.println("f.getType():[" + f.getType() + "]");
-            System.out.println("f.getType().isEnum():[" + f.getType().isEnum() + "]" );
-   
-            				
-            if( value != null && f.getType().isEnum()  ){ // if value == null there is no need to convert the value to an enum
-            	
-            	if( value instanceof String){ 
-                    System.out.println("(String) value:[" + (String) value + "]");
-            		if( value.equals("null")){ // "null" edge case
-            			f.set(instanceOfT, null); // set the field to null
-            		}
-            		else{
-            			System.out.println("Enum.valueOf( (Class<Enum>) f.getType() , (String) value)[" + Enum.valueOf( (Class<Enum>) f.getType() , (String) value));
-            			f.set(instanceOfT, Enum.valueOf( (Class<Enum>) f.getType() , (String) value) );
-            		}
-            		
-            	}
-            	else{
-            		throw new IllegalArgumentException("Doco parseObject() ERROR field f is enum but value is not string, f.getType().isEnum()[" + f.getType().isEnum() +  "]" + ", value.getClass()[" + value.getClass() + "]");
-            	}
-            	
+        // others values, including the @DocumentCollection ones
+        int size = slots.size();
+        com.google.appengine.api.search.Field[] onlyFields = new com.google.appengine.api.search.Field[size];
+        int[] counts = new int[size];
+        Collection[] collections = new Collection[size];
+        double[][] numbers = new double[size][];
+        for (com.google.appengine.api.search.Field field : document.getFields()) {
+            for (int slot = slots.firstSlot(field.getName()); slot >= 0; slot = slots.nextSlot(slot)) {
+                FieldMapping fieldMapping = slots.getMapping(slot);
+                if (fieldMapping.isPrimitiveArray()) {
+                    if (numbers[slot] == null) {
+                        numbers[slot] = new double[document.getFieldCount(field.getName())];
+                    }
+                    numbers[slot][counts[slot]++] = getNumberValue(fieldMapping, field);
+                } else if (fieldMapping.isCollection()) {
+                    if (collections[slot] == null) {
+                        collections[slot] = newCollection(fieldMapping, document.getFieldCount(field.getName()));
+                    }
+                    collections[slot].add(fromSearchValue(fieldMapping, getRepeatedSearchValue(fieldMapping, field)));
+                } else {
+                    onlyFields[slot] = field;
+                    counts[slot]++;
+                }
             }
-            else{
-            	f.set(instanceOfT, value);
+        }
+
+        for (int slot = 0; slot < size; slot++) {
+            FieldMapping fieldMapping = slots.getMapping(slot);
+            FieldAccessor f = fieldMapping.getAccessor();
+            if (fieldMapping.isPrimitiveArray()) {
+                f.set(instanceOfT, numbers[slot] == null ? null
+                    : toPrimitiveArray(numbers[slot], fieldMapping.getElementType()));
+            } else if (fieldMapping.isCollection()) {
+                f.set(instanceOfT, collections[slot]);
+            } else if (fieldMapping.isPrimitiveNumber()) {
+                // the primitive accessor avoids boxing the number again, a missing field keeps the default value
+                if (counts[slot] == 1) {
+                    f.setDouble(instanceOfT, onlyFields[slot].getNumber());
+                }
+            } else {
+                f.set(instanceOfT, counts[slot] == 1 ? fromSearchValue(fieldMapping, getSearchValue(onlyFields[slot]))
+                    : null);
+            }
+        }
+
+        // collections of embedded objects are only rebuilt on request, and never for a projection
+        if (slots == mapping.getSlots()) {
+            for (NestedMapping embed : mapping.getEmbeds()) {
+                if (embed.isMultiValued() && embed.isReadBack()) {
+                    embed.getAccessor().set(instanceOfT, parseEmbeddedElements(document, embed));
+                }
             }
-            
         }
 
         return instanceOfT;
     }
+
+    /**
+     * Rebuilds a collection or an array of embedded objects from the multi-valued fields of its elements: the i-th
+     * element receives the i-th value of each single valued field of the element type. The missing values were written
+     * as {@link DocumentParser#MISSING_VALUE}, so the values keep their position. The fields of the elements which are
+     * collections, embedded objects or references are not read.
+     * 
+     * @param document
+     *            the {@link Document} to be parsed
+     * @param embed
+     *            the mapping of the collection or array of embedded objects
+     * @return the collection or array, or null if the document has no field of the elements
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object parseEmbeddedElements(Document document, NestedMapping embed) throws InstantiationException,
+        IllegalAccessException {
+        String prefix = embed.appendTo(null) + "_";
+        ClassMapping elementMapping = mappingRegistry.getMapping(embed.getTargetClass());
+
+        int size = 0;
+        for (FieldMapping fieldMapping : elementMapping.getFields()) {
+            if (!fieldMapping.isCollection()) {
+                size = Math.max(size, document.getFieldCount(prefix + fieldMapping.getName()));
+            }
+        }
+        if (size == 0) {
+            return null;
+        }
+
+        Object[] elements = new Object[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = elementMapping.newInstance();
+        }
+        for (FieldMapping fieldMapping : elementMapping.getFields()) {
+            if (fieldMapping.isCollection() || document.getFieldCount(prefix + fieldMapping.getName()) == 0) {
+                continue;
+            }
+            FieldAccessor f = fieldMapping.getAccessor();
+            int i = 0;
+            for (com.google.appengine.api.search.Field field : document.getFields(prefix + fieldMapping.getName())) {
+                if (isMissingValue(fieldMapping, field)) {
+                    i++; // the element has no value, it keeps the default one
+                } else if (fieldMapping.isPrimitiveNumber()) {
+                    f.setDouble(elements[i++], getNumberValue(fieldMapping, field));
+                } else {
+                    f.set(elements[i++], fromSearchValue(fieldMapping, getRepeatedSearchValue(fieldMapping, field)));
+                }
+            }
+        }
+
+        if (embed.getAccessor().getType().isArray()) {
+            Object array = Array.newInstance(embed.getTargetClass(), size);
+            System.arraycopy(elements, 0, array, 0, size);
+            return array;
+        }
+        Collection collection = getConcreteCollection(embed.getCollectionType(), size);
+        for (Object element : elements) {
+            collection.add(element);
+        }
+        return collection;
+    }
+
+    /**
+     * @return true if the field holds the {@link DocumentParser#MISSING_VALUE} of an element, which is a real value
+     *         for the Strings
+     */
+    private static boolean isMissingValue(FieldMapping fieldMapping, com.google.appengine.api.search.Field field) {
+        return field.getType() == com.google.appengine.api.search.Field.FieldType.ATOM
+            && DocumentParser.MISSING_VALUE.equals(field.getAtom()) && !String.class.equals(fieldMapping.getType());
+    }
+
+    /**
+     * Obtains the accessor of the field annotated with {@link DocumentId} annotation.
+     * 
+     * @param mapping
+     *            the mapping of the class that contains the field
+     * @return the {@link FieldAccessor} of the field that contains the {@link DocumentId} annotation
+     */
+    private FieldAccessor getDocumentIdField(ClassMapping mapping) {
+        List<FieldAccessor> result = mapping.getIdFields();
+
+        if (result.isEmpty())
+            throw new IllegalAnnotationDeclarationException("No " + DocumentId.class.getName()
+                + " annotation was found.");
+        if (result.size() > 1)
+            throw new IllegalAnnotationDeclarationException("More than one " + DocumentId.class.getName()
+                + " annotation was found.");
+
+        return result.get(0);
+    }
     
     /**
      * initializes the concrete collection specified by the DocumentCollectionType Enum
@@ -357,33 +557,47 @@ final class ObjectParser {
      */
     @SuppressWarnings("rawtypes")
 	public static Collection getConcreteCollection( DocumentCollectionType type){
+    	return getConcreteCollection(type, 0);
+    }
+
+    /**
+     * initializes the concrete collection specified by the DocumentCollectionType Enum, sized for the given number of
+     * elements when the collection can be sized
+     * @param type is the DocumentCollectionType
+     * @param expectedSize the number of elements to be added
+     * @return
+     */
+    @SuppressWarnings("rawtypes")
+	static Collection getConcreteCollection( DocumentCollectionType type, int expectedSize){
+    	int capacity = Math.max(expectedSize, 1);
+    	int hashCapacity = (int) (capacity / 0.75f) + 1; // no rehash before expectedSize elements
 //    	ARRAYLIST, LINKEDLIST, VECTOR, STACK, ARRAY_DEQUE, HASHSET, LINKED_HASHSET, TREESET, PRIORITY_QUEUE
     	if( type == DocumentCollectionType.ARRAYLIST){
-    		return new ArrayList();
+    		return new ArrayList(capacity);
     	}
     	else if( type == DocumentCollectionType.LINKEDLIST ){
     		return new LinkedList();
     	}
     	else if( type == DocumentCollectionType.VECTOR ){
-    		return new Vector();
+    		return new Vector(capacity);
     	}
     	else if( type == DocumentCollectionType.STACK ){
     		return new Stack();
     	}
     	else if( type == DocumentCollectionType.ARRAY_DEQUE ){
-    		return new ArrayDeque();
+    		return new ArrayDeque(capacity);
     	}
 		else if( type == DocumentCollectionType.HASHSET ){
-			return new HashSet();
+			return new HashSet(hashCapacity);
 		}
 		else if( type == DocumentCollectionType.LINKED_HASHSET ){
-			return new LinkedHashSet();
+			return new LinkedHashSet(hashCapacity);
 		}
 		else if( type == DocumentCollectionType.TREESET ){
 			return new TreeSet();
 		}
 		else if( type == DocumentCollectionType.PRIORITY_QUEUE ){
-			return new PriorityQueue();
+			return new PriorityQueue(capacity);
 		}
     	else{
     		throw new IllegalArgumentException(" INVALID DocumentCollectionType: " + type);
@@ -391,4 +605,4 @@ final class ObjectParser {
     	
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.appengine.api.search.Index;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Unindex;
+
+/**
+ * A {@link FingerprintStore} which keeps the fingerprints in the datastore through Objectify, as entities of the kind
+ * {@value #KIND}, so they are shared by all the instances of the application. Each operation is a single batch
+ * datastore call.
+ */
+public final class ObjectifyFingerprintStore implements FingerprintStore {
+
+    /**
+     * The kind of the datastore entities.
+     */
+    public static final String KIND = "DocoFingerprint";
+
+    static {
+        ObjectifyService.register(Fingerprint.class);
+    }
+
+    @Override
+    public Map<String, String> getAll(Index index, Collection<String> documentIds) {
+        Map<String, String> documentIdsByKey = new LinkedHashMap<String, String>();
+        for (String documentId : documentIds) {
+            documentIdsByKey.put(DocumentFingerprint.key(index, documentId), documentId);
+        }
+
+        Map<String, Fingerprint> entities = ObjectifyService.ofy().load().type(Fingerprint.class)
+            .ids(documentIdsByKey.keySet());
+
+        Map<String, String> result = new HashMap<String, String>();
+        for (Map.Entry<String, Fingerprint> entry : entities.entrySet()) {
+            result.put(documentIdsByKey.get(entry.getKey()), entry.getValue().fingerprint);
+        }
+        return result;
+    }
+
+    @Override
+    public void putAll(Index index, Map<String, String> fingerprints) {
+        List<Fingerprint> entities = new ArrayList<Fingerprint>(fingerprints.size());
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            entities.add(new Fingerprint(DocumentFingerprint.key(index, entry.getKey()), entry.getValue()));
+        }
+        ObjectifyService.ofy().save().entities(entities).now();
+    }
+
+    @Override
+    public void removeAll(Index index, Collection<String> documentIds) {
+        List<String> keys = new ArrayList<String>(documentIds.size());
+        for (String documentId : documentIds) {
+            keys.add(DocumentFingerprint.key(index, documentId));
+        }
+        ObjectifyService.ofy().delete().type(Fingerprint.class).ids(keys).now();
+    }
+
+    /**
+     * The fingerprint of a document, identified by its index namespace, index name and id.
+     */
+    @Entity(name = KIND)
+    static final class Fingerprint {
+        @Id
+        String key;
+        @Unindex
+        String fingerprint;
+
+        Fingerprint() {
+        }
+
+        Fingerprint(String key, String fingerprint) {
+            this.key = key;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.vidolima.doco;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.appengine.api.search.Document;
+
+/**
+ * Iterates over the {@link Document}s of an index one page at a time. A page is requested only when the previous one
+ * was consumed, so only the current page is held in memory.
+ *
+ * @param <D>
+ *            the class of the documents
+ */
+abstract class PagedDocumentIterator<D extends Document> implements Iterator<D> {
+
+    private Iterator<D> page = Collections.<D> emptyList().iterator();
+    private boolean lastPage;
+
+    /**
+     * Requests the next page.
+     *
+     * @return the documents of the page, or null if there are no more pages
+     */
+    protected abstract Collection<D> nextPage();
+
+    /**
+     * Called before each document is returned, so subclasses can request the following pages without blocking while
+     * the current one is consumed. Does nothing by default.
+     */
+    protected void prefetch() {
+    }
+
+    /**
+     * Marks the page being requested as the last one, so no other page is requested after it.
+     */
+    protected final void setLastPage() {
+        this.lastPage = true;
+    }
+
+    @Override
+    public final boolean hasNext() {
+        while (!page.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+            Collection<D> documents = nextPage();
+            if (documents == null || documents.isEmpty()) {
+                lastPage = true;
+                return false;
+            }
+            page = documents.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public final D next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        prefetch();
+        return page.next();
+    }
+
+    @Override
+    public final void remove() {
+        throw new UnsupportedOperationException("The documents can not be removed through Doco.");
+    }
+}
@@ -0,0 +1,137 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Converts the elements of a list in parallel, keeping the order of the results. On a {@link ForkJoinPool} the list is
+ * split recursively; on any other {@link ExecutorService} it is split in chunks of {@link #THRESHOLD} elements.
+ *
+ * The conversion only shares the immutable {@link ClassMapping}s, so the same {@link Conversion} can run on many
+ * threads at once.
+ */
+final class ParallelConverter {
+
+    /**
+     * Lists up to this size are converted by a single task.
+     */
+    static final int THRESHOLD = 256;
+
+    /**
+     * The conversion of a single element.
+     */
+    interface Conversion<S, R> {
+        R convert(S source);
+    }
+
+    private ParallelConverter() {
+    }
+
+    /**
+     * Converts all the elements of the list.
+     *
+     * @param sources
+     *            the elements to be converted
+     * @param conversion
+     *            the conversion of each element
+     * @param executor
+     *            the executor running the conversion, or null to convert in the calling thread
+     * @return the converted elements, in the same order of the sources
+     */
+    @SuppressWarnings("unchecked")
+    static <S, R> List<R> convert(final List<S> sources, final Conversion<S, R> conversion,
+        ExecutorService executor) {
+        final Object[] results = new Object[sources.size()];
+
+        if (executor == null || sources.size() <= THRESHOLD) {
+            convertRange(sources, conversion, results, 0, sources.size());
+        } else if (executor instanceof ForkJoinPool) {
+            ((ForkJoinPool) executor).invoke(new ConversionAction<S, R>(sources, conversion, results, 0,
+                sources.size()));
+        } else {
+            List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+            for (int from = 0; from < sources.size(); from += THRESHOLD) {
+                final int start = from;
+                final int end = Math.min(from + THRESHOLD, sources.size());
+                chunks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        convertRange(sources, conversion, results, start, end);
+                        return null;
+                    }
+                });
+            }
+            awaitAll(executor, chunks);
+        }
+
+        return (List<R>) Arrays.asList(results);
+    }
+
+    private static <S, R> void convertRange(List<S> sources, Conversion<S, R> conversion, Object[] results,
+        int from, int to) {
+        for (int i = from; i < to; i++) {
+            results[i] = conversion.convert(sources.get(i));
+        }
+    }
+
+    private static void awaitAll(ExecutorService executor, List<Callable<Void>> chunks) {
+        try {
+            for (Future<Void> future : executor.invokeAll(chunks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting in parallel.", e);
+        } catch (ExecutionException e) {
+            // the conversion failures are RuntimeExceptions, rethrow them as they would be in the calling thread
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Splits the range in halves until it is small enough to be converted by a single task.
+     */
+    private static final class ConversionAction<S, R> extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<S> sources;
+        private final Conversion<S, R> conversion;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        ConversionAction(List<S> sources, Conversion<S, R> conversion, Object[] results, int from, int to) {
+            this.sources = sources;
+            this.conversion = conversion;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                convertRange(sources, conversion, results, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ConversionAction<S, R>(sources, conversion, results, from, middle),
+                new ConversionAction<S, R>(sources, conversion, results, middle, to));
+        }
+    }
+}
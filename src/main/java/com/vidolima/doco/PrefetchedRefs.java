@@ -0,0 +1,80 @@
+package com.vidolima.doco;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.annotation.DocumentRef;
+
+/**
+ * What {@link RefPrefetcher} gathered for a batch of objects before their documents are built: the entities
+ * referenced with {@link DocumentRef}, and the {@link FragmentCache} fragments used instead of loading them. The
+ * fragments are kept for the whole batch, so an eviction from the cache during the conversion never makes the parser
+ * load an entity. Instances are filled by a single thread and then only read, so they can be shared by the threads
+ * converting the batch.
+ */
+final class PrefetchedRefs {
+
+    /**
+     * Nothing prefetched, for objects without references.
+     */
+    static final PrefetchedRefs NONE = new PrefetchedRefs(Collections.<Key<?>, Object> emptyMap(),
+        Collections.<Key<?>, Map<String, FragmentCache.Fragment>> emptyMap());
+
+    private final Map<Key<?>, Object> entities;
+    private final Map<Key<?>, Map<String, FragmentCache.Fragment>> fragments;
+
+    PrefetchedRefs() {
+        this(new HashMap<Key<?>, Object>(), new HashMap<Key<?>, Map<String, FragmentCache.Fragment>>());
+    }
+
+    private PrefetchedRefs(Map<Key<?>, Object> entities, Map<Key<?>, Map<String, FragmentCache.Fragment>> fragments) {
+        this.entities = entities;
+        this.fragments = fragments;
+    }
+
+    /**
+     * @return true if the entity was loaded, even if it does not exist
+     */
+    boolean containsEntity(Key<?> key) {
+        return entities.containsKey(key);
+    }
+
+    /**
+     * @return the loaded entity, or null if it does not exist or was not loaded
+     */
+    Object getEntity(Key<?> key) {
+        return entities.get(key);
+    }
+
+    /**
+     * @return the number of entities loaded
+     */
+    int getEntityCount() {
+        return entities.size();
+    }
+
+    void putEntity(Key<?> key, Object entity) {
+        entities.put(key, entity);
+    }
+
+    /**
+     * @return the fragment kept for the entity with the given prefix and mapping, or null if there is none
+     */
+    FragmentCache.Fragment getFragment(Key<?> key, String prefix, boolean repeated, ClassMapping mapping) {
+        Map<String, FragmentCache.Fragment> byPrefix = fragments.get(key);
+        FragmentCache.Fragment fragment = byPrefix == null ? null : byPrefix.get(FragmentCache.fragmentKey(prefix,
+            repeated));
+        return fragment != null && fragment.getMapping() == mapping ? fragment : null;
+    }
+
+    void putFragment(Key<?> key, String prefix, boolean repeated, FragmentCache.Fragment fragment) {
+        Map<String, FragmentCache.Fragment> byPrefix = fragments.get(key);
+        if (byPrefix == null) {
+            byPrefix = new HashMap<String, FragmentCache.Fragment>(4);
+            fragments.put(key, byPrefix);
+        }
+        byPrefix.put(FragmentCache.fragmentKey(prefix, repeated), fragment);
+    }
+}
@@ -0,0 +1,153 @@
+package com.vidolima.doco;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.google.appengine.api.search.checkers.SearchApiLimits;
+import com.vidolima.doco.annotation.PrefixField;
+import com.vidolima.doco.exception.IllegalAnnotationDeclarationException;
+
+/**
+ * Compiled mapping of a field annotated with {@link PrefixField}, which also builds its prefixes: the value is
+ * normalized (lower cased, without accents), split into words and each word gives its prefixes from
+ * {@link #getMinLength()} to {@link #getMaxLength()} characters. Instances are immutable.
+ */
+final class PrefixMapping {
+
+    /**
+     * The suffix appended to the name of the field to obtain the default name of its prefixes.
+     */
+    static final String SUFFIX = "_prefix";
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final FieldAccessor accessor;
+    private final String name;
+    private final int minLength;
+    private final int maxLength;
+    private final int maxTerms;
+
+    PrefixMapping(FieldAccessor accessor, String name, int minLength, int maxLength, int maxTerms) {
+        if (minLength < 1 || maxLength < minLength || maxLength > SearchApiLimits.MAXIMUM_ATOM_LENGTH) {
+            throw new IllegalAnnotationDeclarationException("The prefixes of '" + accessor.getName()
+                + "' must be between 1 and " + SearchApiLimits.MAXIMUM_ATOM_LENGTH + " characters long, with the "
+                + "minimum length not greater than the maximum: " + minLength + " to " + maxLength + ".");
+        }
+        if (maxTerms < 1) {
+            throw new IllegalAnnotationDeclarationException("The maximum number of prefixes of '"
+                + accessor.getName() + "' must be positive: " + maxTerms + ".");
+        }
+        this.accessor = accessor;
+        this.name = name;
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.maxTerms = maxTerms;
+    }
+
+    static PrefixMapping forPrefixField(java.lang.reflect.Field field) {
+        PrefixField annotation = field.getAnnotation(PrefixField.class);
+        return new PrefixMapping(FieldAccessor.create(field),
+            StringUtils.isNotBlank(annotation.name()) ? annotation.name() : field.getName() + SUFFIX,
+            annotation.minLength(), annotation.maxLength(), annotation.maxTerms());
+    }
+
+    FieldAccessor getAccessor() {
+        return accessor;
+    }
+
+    /**
+     * @return the name of the ATOM fields holding the prefixes
+     */
+    String getName() {
+        return name;
+    }
+
+    int getMinLength() {
+        return minLength;
+    }
+
+    int getMaxLength() {
+        return maxLength;
+    }
+
+    int getMaxTerms() {
+        return maxTerms;
+    }
+
+    /**
+     * Builds the prefixes of the value of the field: a String or a collection of them, whose null elements are
+     * skipped.
+     *
+     * @return the distinct prefixes, at most {@link #getMaxTerms()}, in the order of the words
+     */
+    Set<String> getTerms(Object value) {
+        Set<String> terms = new LinkedHashSet<String>();
+        if (value instanceof Collection) {
+            for (Object element : (Collection<?>) value) {
+                if (element != null) {
+                    addTerms(terms, String.valueOf(element));
+                }
+            }
+        } else if (value != null) {
+            addTerms(terms, String.valueOf(value));
+        }
+        return terms;
+    }
+
+    private void addTerms(Set<String> terms, String value) {
+        for (String word : getWords(value)) {
+            int length = word.codePointCount(0, word.length());
+            for (int i = minLength; i <= Math.min(length, maxLength); i++) {
+                if (terms.size() == maxTerms) {
+                    return;
+                }
+                terms.add(word.substring(0, word.offsetByCodePoints(0, i)));
+            }
+        }
+    }
+
+    /**
+     * Turns the text typed by a user into the prefixes to be matched, normalized as the values of the field. The words
+     * longer than {@link #getMaxLength()} are cut, as their stored prefixes are.
+     *
+     * @return the prefixes, without the words shorter than {@link #getMinLength()}, which have none stored
+     */
+    List<String> getQueryTerms(String input) {
+        List<String> terms = new ArrayList<String>();
+        for (String word : getWords(input)) {
+            int length = word.codePointCount(0, word.length());
+            if (length >= minLength) {
+                terms.add(length > maxLength ? word.substring(0, word.offsetByCodePoints(0, maxLength)) : word);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return the words of a text, lower cased and without accents
+     */
+    static List<String> getWords(String text) {
+        if (text == null) {
+            return Collections.emptyList();
+        }
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+            .toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<String>();
+        for (String word : SEPARATORS.split(normalized)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+}
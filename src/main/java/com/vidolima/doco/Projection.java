@@ -0,0 +1,183 @@
+package com.vidolima.doco;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.google.appengine.api.search.QueryOptions;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentRef;
+
+/**
+ * The subset of the mapped fields of a class which is returned by a search and filled in the objects. The fields are
+ * named by their Java field names; the fields of a {@link DocumentEmbed} object or of a {@link DocumentRef} entity are
+ * named by a path such as {@code "address.city"}, and naming the embedded or referenced field itself selects all its
+ * fields.
+ *
+ * A projection is turned into the {@link QueryOptions#getFieldsToReturn() fields to return} of a search with the
+ * names of the fields in the documents (see {@link Doco#project(com.google.appengine.api.search.Query, Class,
+ * Projection)}). Only the {@link DocumentField} and {@link DocumentCollection} fields of the projection are filled;
+ * the other fields keep the values assigned by the constructor.
+ */
+public final class Projection {
+
+    private final Set<String> paths;
+
+    private Projection(Set<String> paths) {
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("A projection must have at least one field.");
+        }
+        this.paths = Collections.unmodifiableSet(paths);
+    }
+
+    /**
+     * Creates a projection of the given fields.
+     *
+     * @param fieldNames
+     *            the Java names of the fields, or paths through embedded and referenced fields
+     * @return the {@link Projection}
+     */
+    public static Projection of(String... fieldNames) {
+        return new Projection(new LinkedHashSet<String>(Arrays.asList(fieldNames)));
+    }
+
+    /**
+     * Creates a projection of the fields mapped by the given class, which declares a subset of the fields of the
+     * projected class with the same Java names.
+     *
+     * @param subsetClass
+     *            the class whose {@link DocumentField}, {@link DocumentCollection}, {@link DocumentEmbed} and
+     *            {@link DocumentRef} fields are projected
+     * @return the {@link Projection}
+     */
+    public static Projection of(Class<?> subsetClass) {
+        ClassMapping mapping = MappingRegistry.getDefault().getMapping(subsetClass);
+        Set<String> paths = new LinkedHashSet<String>();
+        for (FieldMapping field : mapping.getFields()) {
+            paths.add(field.getAccessor().getName());
+        }
+        for (NestedMapping ref : mapping.getRefs()) {
+            paths.add(ref.getAccessor().getName());
+        }
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            paths.add(embed.getAccessor().getName());
+        }
+        return new Projection(paths);
+    }
+
+    /**
+     * @return the projected field paths
+     */
+    public Set<String> getFieldNames() {
+        return paths;
+    }
+
+    /**
+     * Resolves the paths of this projection against the mapping of the projected class.
+     *
+     * @throws IllegalArgumentException
+     *             if a path does not name a mapped field
+     */
+    ProjectionMapping resolve(ClassMapping mapping, MappingRegistry mappingRegistry) {
+        Set<FieldMapping> filled = new LinkedHashSet<FieldMapping>();
+        Set<String> fieldsToReturn = new LinkedHashSet<String>();
+        for (String path : paths) {
+            resolvePath(path, path, mapping, "", mappingRegistry, filled, fieldsToReturn);
+        }
+        return new ProjectionMapping(mapping, filled, fieldsToReturn);
+    }
+
+    /**
+     * Resolves a path relative to the given mapping. Only the fields of the projected class itself are filled.
+     */
+    private static void resolvePath(String fullPath, String path, ClassMapping mapping, String prefix,
+        MappingRegistry mappingRegistry, Set<FieldMapping> filled, Set<String> fieldsToReturn) {
+        int dot = path.indexOf('.');
+        String name = dot < 0 ? path : path.substring(0, dot);
+
+        if (dot < 0) {
+            for (FieldMapping field : mapping.getFields()) {
+                if (field.getAccessor().getName().equals(name)) {
+                    fieldsToReturn.add(prefixed(prefix, field.getName()));
+                    if (prefix.isEmpty()) {
+                        filled.add(field);
+                    }
+                    return;
+                }
+            }
+            for (FieldAccessor id : mapping.getIdFields()) {
+                if (id.getName().equals(name)) {
+                    // the document id is always returned
+                    return;
+                }
+            }
+        }
+
+        NestedMapping nested = findNested(mapping, name);
+        if (nested == null) {
+            throw new IllegalArgumentException("The projected field '" + fullPath + "' is not mapped by "
+                + mapping.getType());
+        }
+        ClassMapping targetMapping = mappingRegistry.getMapping(nested.getTargetClass());
+        if (dot < 0) {
+            addAllFields(targetMapping, nested.appendTo(prefix), mappingRegistry, fieldsToReturn);
+        } else {
+            resolvePath(fullPath, path.substring(dot + 1), targetMapping, nested.appendTo(prefix), mappingRegistry,
+                filled, fieldsToReturn);
+        }
+    }
+
+    private static NestedMapping findNested(ClassMapping mapping, String name) {
+        for (NestedMapping ref : mapping.getRefs()) {
+            if (ref.getAccessor().getName().equals(name)) {
+                return ref;
+            }
+        }
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            if (embed.getAccessor().getName().equals(name)) {
+                return embed;
+            }
+        }
+        return null;
+    }
+
+    private static void addAllFields(ClassMapping mapping, String prefix, MappingRegistry mappingRegistry,
+        Set<String> fieldsToReturn) {
+        for (FieldMapping field : mapping.getFields()) {
+            fieldsToReturn.add(prefixed(prefix, field.getName()));
+        }
+        for (NestedMapping ref : mapping.getRefs()) {
+            addAllFields(mappingRegistry.getMapping(ref.getTargetClass()), ref.appendTo(prefix), mappingRegistry,
+                fieldsToReturn);
+        }
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            addAllFields(mappingRegistry.getMapping(embed.getTargetClass()), embed.appendTo(prefix),
+                mappingRegistry, fieldsToReturn);
+        }
+    }
+
+    /**
+     * @return the name of the field in the document, as built by {@link DocumentParser}
+     */
+    private static String prefixed(String prefix, String name) {
+        return prefix.isEmpty() ? name : prefix + "_" + name;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof Projection && paths.equals(((Projection) obj).paths);
+    }
+
+    @Override
+    public int hashCode() {
+        return paths.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Projection" + paths;
+    }
+}
@@ -0,0 +1,57 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link Projection} resolved against the {@link ClassMapping} of the projected class: the names of the fields to
+ * be returned by a search, and the field mappings to be filled, in the order of the class mapping. Instances are
+ * immutable.
+ */
+final class ProjectionMapping {
+
+    private final Class<?> type;
+    private final List<FieldMapping> fields;
+    private final FieldSlots slots;
+    private final String[] fieldsToReturn;
+
+    ProjectionMapping(ClassMapping mapping, Set<FieldMapping> filled, Set<String> fieldsToReturn) {
+        List<FieldMapping> fields = new ArrayList<FieldMapping>(filled.size());
+        for (FieldMapping field : mapping.getFields()) {
+            if (filled.contains(field)) {
+                fields.add(field);
+            }
+        }
+        this.type = mapping.getType();
+        this.fields = Collections.unmodifiableList(fields);
+        this.slots = new FieldSlots(fields);
+        this.fieldsToReturn = fieldsToReturn.toArray(new String[fieldsToReturn.size()]);
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return the mappings of the fields to be filled
+     */
+    List<FieldMapping> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return the slots of the fields to be filled
+     */
+    FieldSlots getSlots() {
+        return slots;
+    }
+
+    /**
+     * @return the names of the fields in the documents
+     */
+    String[] getFieldsToReturn() {
+        return fieldsToReturn.clone();
+    }
+}
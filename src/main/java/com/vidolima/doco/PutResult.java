@@ -0,0 +1,96 @@
+package com.vidolima.doco;
+
+import java.util.List;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.OperationResult;
+import com.google.appengine.api.search.StatusCode;
+
+/**
+ * The result of putting one object with {@link Doco#putAll(Iterable, FingerprintStore)}: the
+ * {@link OperationResult} of the put, the {@link DocumentFingerprint} of the document, whether the put was skipped
+ * because the document did not change and the limits of the Search API violated by the document.
+ */
+public final class PutResult {
+
+    private static final OperationResult UNCHANGED = new OperationResult(StatusCode.OK, "Unchanged document.");
+
+    private final String documentId;
+    private final String fingerprint;
+    private final OperationResult operationResult;
+    private final boolean skipped;
+    private final boolean documentRejected;
+    private final List<LimitViolation> limitViolations;
+
+    private PutResult(String documentId, String fingerprint, OperationResult operationResult, boolean skipped,
+        boolean documentRejected, List<LimitViolation> limitViolations) {
+        this.documentId = documentId;
+        this.fingerprint = fingerprint;
+        this.operationResult = operationResult;
+        this.skipped = skipped;
+        this.documentRejected = documentRejected;
+        this.limitViolations = limitViolations;
+    }
+
+    static PutResult put(Document document, String fingerprint, OperationResult operationResult,
+        List<LimitViolation> limitViolations) {
+        return new PutResult(document.getId(), fingerprint, operationResult, false, false, limitViolations);
+    }
+
+    static PutResult skipped(Document document, String fingerprint, List<LimitViolation> limitViolations) {
+        return new PutResult(document.getId(), fingerprint, UNCHANGED, true, false, limitViolations);
+    }
+
+    static PutResult rejected(String documentId, List<LimitViolation> limitViolations) {
+        OperationResult rejected = new OperationResult(StatusCode.INVALID_REQUEST,
+            "The document violates the limits of the Search API: " + limitViolations);
+        return new PutResult(documentId, null, rejected, false, true, limitViolations);
+    }
+
+    /**
+     * @return the id of the document, or null if it was assigned by the Search API
+     */
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    /**
+     * @return the fingerprint of the document, or null if the put did not use a {@link FingerprintStore}
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return the result of the put, with the code {@link StatusCode#OK} if it was skipped
+     */
+    public OperationResult getOperationResult() {
+        return operationResult;
+    }
+
+    /**
+     * @return true if the document was not put because its fingerprint did not change
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return true if the document was not put because it violates the limits of the Search API
+     */
+    public boolean isRejected() {
+        return documentRejected;
+    }
+
+    /**
+     * @return the limits violated by the document, with what was done about each one; empty if there is none
+     */
+    public List<LimitViolation> getLimitViolations() {
+        return limitViolations;
+    }
+
+    @Override
+    public String toString() {
+        return "PutResult(" + documentId + ", " + (skipped ? "skipped" : operationResult) + ", " + fingerprint + ")";
+    }
+}
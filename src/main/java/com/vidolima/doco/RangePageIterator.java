@@ -0,0 +1,35 @@
+package com.vidolima.doco;
+
+import java.util.Collection;
+import java.util.List;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.GetRequest;
+import com.google.appengine.api.search.Index;
+
+/**
+ * Iterates over the {@link Document}s of an index in id order, starting each page of
+ * {@link Index#getRange(GetRequest)} after the id of the last document of the previous page.
+ */
+final class RangePageIterator extends PagedDocumentIterator<Document> {
+
+    private final Index index;
+    private GetRequest request;
+
+    RangePageIterator(Index index, GetRequest request) {
+        this.index = index;
+        this.request = request;
+    }
+
+    @Override
+    protected Collection<Document> nextPage() {
+        List<Document> documents = index.getRange(request).getResults();
+        if (documents.size() < request.getLimit()) {
+            setLastPage();
+        } else {
+            String lastId = documents.get(documents.size() - 1).getId();
+            request = GetRequest.newBuilder(request).setStartId(lastId).setIncludeStart(false).build();
+        }
+        return documents;
+    }
+}
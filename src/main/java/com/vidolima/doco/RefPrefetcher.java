@@ -0,0 +1,192 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
+import com.googlecode.objectify.ObjectifyService;
+import com.googlecode.objectify.Ref;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentRef;
+
+/**
+ * Loads the entities referenced with {@link DocumentRef} by a batch of objects before their documents are built.
+ *
+ * The references are resolved level by level: all the {@link Ref}s of the objects (and of their {@link DocumentEmbed}
+ * objects) are loaded with a single Objectify batch load, then the references of the loaded entities, and so on. Each
+ * key is loaded only once, even when it is referenced by many objects. A reference to an entity already on its own
+ * chain of references is a cycle and is not followed, as the parser does not follow it either. The entities whose
+ * fields are in the {@link FragmentCache}, if any, are not loaded at all: their fields are kept for the batch instead.
+ * The parser never loads an entity itself, so the documents can be built by threads without a datastore context.
+ */
+final class RefPrefetcher {
+
+    private final MappingRegistry mappingRegistry;
+
+    // the fields already built from referenced entities, null when there is no cache
+    private final FragmentCache fragmentCache;
+
+    // the factory of the Objectify which loads the entities, null for the one of ObjectifyService
+    private final ObjectifyFactory objectifyFactory;
+
+    RefPrefetcher(MappingRegistry mappingRegistry) {
+        this(mappingRegistry, null, null);
+    }
+
+    RefPrefetcher(MappingRegistry mappingRegistry, FragmentCache fragmentCache, ObjectifyFactory objectifyFactory) {
+        this.mappingRegistry = mappingRegistry;
+        this.fragmentCache = fragmentCache;
+        this.objectifyFactory = objectifyFactory;
+    }
+
+    /**
+     * Loads all the entities referenced, directly or not, by the given objects, except the ones whose fields are in
+     * the {@link FragmentCache}: those fields are kept with the loaded entities instead, so the conversion of the batch
+     * uses them even if the cache evicts them meanwhile.
+     *
+     * @param objs
+     *            the objects to be converted, null elements are ignored
+     * @return the loaded entities by key, the keys of entities which do not exist are mapped to null, and the cached
+     *         fields used instead of loading entities
+     */
+    PrefetchedRefs prefetch(Iterable<?> objs) {
+        PrefetchedRefs prefetched = new PrefetchedRefs();
+        // the prefixes and chains each entity was visited with, which decide the references the parser follows
+        Set<List<Object>> visited = new HashSet<List<Object>>();
+
+        List<Visit> level = new ArrayList<Visit>();
+        for (Object obj : objs) {
+            if (obj != null) {
+                level.add(new Visit(obj, mappingRegistry.getMapping(obj.getClass()), "", false,
+                    Collections.<Key<?>> emptySet()));
+            }
+        }
+
+        while (!level.isEmpty()) {
+            // the entities referenced by this level which were not loaded yet, with the visits of each of them
+            Map<Key<?>, List<Visit>> pending = new LinkedHashMap<Key<?>, List<Visit>>();
+            List<Visit> next = new ArrayList<Visit>();
+            for (Visit visit : level) {
+                collectRefs(visit.obj, visit.mapping, visit.prefix, visit.repeated, visit.chain, prefetched, visited,
+                    pending, next);
+            }
+
+            if (!pending.isEmpty()) {
+                Map<Key<Object>, Object> entities = load(pending.keySet());
+                for (Map.Entry<Key<?>, List<Visit>> entry : pending.entrySet()) {
+                    Object entity = entities.get(entry.getKey());
+                    prefetched.putEntity(entry.getKey(), entity);
+                    if (entity != null) {
+                        for (Visit visit : entry.getValue()) {
+                            next.add(new Visit(entity, visit.mapping, visit.prefix, visit.repeated, visit.chain));
+                        }
+                    }
+                }
+            }
+            level = next;
+        }
+
+        return prefetched;
+    }
+
+    /**
+     * Collects the references of an object with the prefix, repetition and chain of references the parser gives to its
+     * fields: the cycles are skipped, the ones whose fields are cached are kept, the entities already loaded are
+     * visited in the next level and the others are left pending.
+     *
+     * @param chain
+     *            the keys of the entities referenced from the document down to the object
+     */
+    private void collectRefs(Object obj, ClassMapping mapping, String prefix, boolean repeated, Set<Key<?>> chain,
+        PrefetchedRefs prefetched, Set<List<Object>> visited, Map<Key<?>, List<Visit>> pending, List<Visit> next) {
+        for (NestedMapping ref : mapping.getRefs()) {
+            Object fieldValue = ref.getAccessor().get(obj);
+            if (!(fieldValue instanceof Ref<?>)) {
+                continue;
+            }
+            Key<?> key = ((Ref<?>) fieldValue).key();
+            if (chain.contains(key)) {
+                continue;
+            }
+            String refPrefix = ref.appendTo(prefix);
+            ClassMapping refMapping = mappingRegistry.getMapping(ref.getTargetClass());
+            if (fragmentCache != null) {
+                FragmentCache.Fragment fragment = fragmentCache.get(key, refPrefix, repeated, refMapping);
+                if (fragment != null && fragment.fitsChain(chain)) {
+                    // the fragment includes the fields of the entities it references, they are not needed either
+                    prefetched.putFragment(key, refPrefix, repeated, fragment);
+                    continue;
+                }
+            }
+
+            Set<Key<?>> refChain = new HashSet<Key<?>>(chain);
+            refChain.add(key);
+            if (!visited.add(Arrays.<Object> asList(key, FragmentCache.fragmentKey(refPrefix, repeated), refChain))) {
+                continue;
+            }
+            if (prefetched.containsEntity(key)) {
+                Object entity = prefetched.getEntity(key);
+                if (entity != null) {
+                    next.add(new Visit(entity, refMapping, refPrefix, repeated, refChain));
+                }
+            } else {
+                List<Visit> visits = pending.get(key);
+                if (visits == null) {
+                    visits = new ArrayList<Visit>(1);
+                    pending.put(key, visits);
+                }
+                visits.add(new Visit(null, refMapping, refPrefix, repeated, refChain));
+            }
+        }
+
+        // embedded objects are already in memory, their references belong to the same level
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            Object fieldValue = embed.getAccessor().get(obj);
+            if (fieldValue == null) {
+                continue;
+            }
+            ClassMapping embedMapping = mappingRegistry.getMapping(embed.getTargetClass());
+            for (Object element : embed.getElements(fieldValue)) {
+                if (element != null) {
+                    collectRefs(element, embedMapping, embed.appendTo(prefix), repeated || embed.isMultiValued(),
+                        chain, prefetched, visited, pending, next);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Map<Key<Object>, Object> load(Set<Key<?>> keys) {
+        Objectify ofy = objectifyFactory != null ? objectifyFactory.begin() : ObjectifyService.ofy();
+        return ofy.load().keys((Iterable) keys);
+    }
+
+    /**
+     * An object whose references are collected, with the prefix and repetition of its fields in the document and the
+     * keys of the entities referenced from the document down to it.
+     */
+    private static final class Visit {
+
+        private final Object obj;
+        private final ClassMapping mapping;
+        private final String prefix;
+        private final boolean repeated;
+        private final Set<Key<?>> chain;
+
+        Visit(Object obj, ClassMapping mapping, String prefix, boolean repeated, Set<Key<?>> chain) {
+            this.obj = obj;
+            this.mapping = mapping;
+            this.prefix = prefix;
+            this.repeated = repeated;
+            this.chain = chain;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.vidolima.doco;
+
+/**
+ * {@link FieldAccessor} based on {@link java.lang.reflect.Field}. Used when a {@link java.lang.invoke.MethodHandle}
+ * can not be created for the field (e.g. final fields or a restrictive security manager).
+ */
+final class ReflectionFieldAccessor extends FieldAccessor {
+
+    private final java.lang.reflect.Field field;
+
+    ReflectionFieldAccessor(java.lang.reflect.Field field) {
+        super(field.getName(), field.getType());
+        field.setAccessible(true);
+        this.field = field;
+    }
+
+    @Override
+    protected Object get(Object obj) {
+        try {
+            return field.get(obj);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Field " + field + " is not accessible.", e);
+        }
+    }
+
+    @Override
+    protected void set(Object obj, Object value) {
+        try {
+            field.set(obj, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Field " + field + " is not accessible.", e);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.vidolima.doco;
+
+import java.util.List;
+
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.DependencyIndex.Dependent;
+
+/**
+ * The result of one call of {@link Doco#reindexDependents(Key, Dependent, int)}: the {@link PutResult}s of the
+ * documents put, and the cursor from which the next call continues.
+ */
+public final class ReindexPage {
+
+    private final List<PutResult> results;
+    private final int processedCount;
+    private final Dependent cursor;
+    private final boolean more;
+
+    ReindexPage(List<PutResult> results, int processedCount, Dependent cursor, boolean more) {
+        this.results = results;
+        this.processedCount = processedCount;
+        this.cursor = cursor;
+        this.more = more;
+    }
+
+    /**
+     * @return the result of each document put; the dependents whose objects no longer exist have none
+     */
+    public List<PutResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return the number of dependents processed by the call, including the ones whose objects no longer exist
+     */
+    public int getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * @return the last dependent processed, to be given to the next call, or the given cursor if none was processed
+     */
+    public Dependent getCursor() {
+        return cursor;
+    }
+
+    /**
+     * @return true if there are dependents after the {@link #getCursor() cursor}
+     */
+    public boolean hasMore() {
+        return more;
+    }
+}
@@ -0,0 +1,55 @@
+package com.vidolima.doco;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+import com.vidolima.doco.exception.ObjectParseException;
+
+/**
+ * The Search API does not allow NUMBER and DATE fields to be repeated in a document, so the values of multi-valued
+ * NUMBER and DATE fields are stored as repeated ATOM fields holding their canonical string: the plain integer or the
+ * {@link Double#toString(double)} of a number, and the ISO-8601 instant of a date. They can be matched by equality
+ * (e.g. {@code weights:"1.5"}) but not by range.
+ */
+final class RepeatedValues {
+
+    // beyond 2^53 not every long is a double, so the integral form is only used within it
+    private static final double MAX_EXACT_INTEGER = 9007199254740992d;
+
+    private RepeatedValues() {
+    }
+
+    /**
+     * @return the canonical string of a number: "3" for 3.0, "0.5" for 0.5
+     */
+    static String formatNumber(double value) {
+        if (value == Math.rint(value) && Math.abs(value) <= MAX_EXACT_INTEGER) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new ObjectParseException("'" + value + "' is not the value of a multi-valued NUMBER field.", e);
+        }
+    }
+
+    /**
+     * @return the ISO-8601 instant of a date, e.g. "2014-01-28T10:15:30.123Z"
+     */
+    static String formatDate(Date value) {
+        return value.toInstant().toString();
+    }
+
+    static Date parseDate(String value) {
+        try {
+            return Date.from(Instant.parse(value));
+        } catch (DateTimeParseException e) {
+            throw new ObjectParseException("'" + value + "' is not the value of a multi-valued DATE field.", e);
+        }
+    }
+}
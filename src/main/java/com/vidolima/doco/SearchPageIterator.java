@@ -0,0 +1,175 @@
+package com.vidolima.doco;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import com.google.appengine.api.search.Cursor;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.Query;
+import com.google.appengine.api.search.QueryOptions;
+import com.google.appengine.api.search.Results;
+import com.google.appengine.api.search.ScoredDocument;
+
+/**
+ * Iterates over all the {@link ScoredDocument}s matching a {@link Query}, following the {@link Cursor} of each page.
+ * A query without a cursor is started with a new page cursor; a query with a per result cursor continues from the
+ * cursor of the last document of each page.
+ *
+ * With a prefetch depth greater than zero the pages are requested with {@link Index#searchAsync(Query)}: as soon as a
+ * page arrives the following one is requested, so the search runs while the current page is converted. Since each
+ * request needs the cursor of the previous page only one request is in flight at a time; the depth bounds the number
+ * of pages received ahead of the one being consumed.
+ */
+final class SearchPageIterator extends PagedDocumentIterator<ScoredDocument> {
+
+    /**
+     * The maximum number of pages held ahead of the one being consumed.
+     */
+    static final int MAX_PREFETCH_DEPTH = 10;
+
+    private final Index index;
+    private final int prefetchDepth;
+    private final Deque<Results<ScoredDocument>> prefetched = new ArrayDeque<Results<ScoredDocument>>();
+    private Future<Results<ScoredDocument>> pending;
+    private Query query;
+
+    SearchPageIterator(Index index, Query query) {
+        this(index, query, 0);
+    }
+
+    SearchPageIterator(Index index, Query query, int prefetchDepth) {
+        checkPrefetchDepth(prefetchDepth);
+        this.index = index;
+        this.query = startCursor(query);
+        this.prefetchDepth = prefetchDepth;
+    }
+
+    static void checkPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0 || prefetchDepth > MAX_PREFETCH_DEPTH) {
+            throw new IllegalArgumentException("The prefetch depth must be between 0 and " + MAX_PREFETCH_DEPTH
+                + ": " + prefetchDepth);
+        }
+    }
+
+    /**
+     * @return the query with a new page cursor if it has no cursor
+     */
+    static Query startCursor(Query query) {
+        QueryOptions options = query.getOptions();
+        if (options != null && options.getCursor() != null) {
+            return query;
+        }
+        return withCursor(query, Cursor.newBuilder().build());
+    }
+
+    /**
+     * @return the query continuing from the given cursor
+     */
+    static Query withCursor(Query query, Cursor cursor) {
+        QueryOptions options = query.getOptions();
+        QueryOptions.Builder optionsBuilder = options == null ? QueryOptions.newBuilder() : QueryOptions
+            .newBuilder(options);
+        return Query.newBuilder(query).setOptions(optionsBuilder.setCursor(cursor)).build();
+    }
+
+    /**
+     * @return the cursor of the page following the given results, or null if they are the last page
+     */
+    static Cursor getNextCursor(Results<ScoredDocument> results) {
+        if (results.getCursor() != null) {
+            return results.getCursor();
+        }
+        ScoredDocument last = null;
+        for (ScoredDocument document : results) {
+            last = document;
+        }
+        return last == null ? null : last.getCursor();
+    }
+
+    @Override
+    protected Collection<ScoredDocument> nextPage() {
+        if (prefetchDepth == 0) {
+            Results<ScoredDocument> results = index.search(query);
+            advance(results);
+            return results.getResults();
+        }
+
+        if (prefetched.isEmpty()) {
+            if (pending == null && query != null) {
+                pending = index.searchAsync(query);
+            }
+            if (pending == null) {
+                return null;
+            }
+            receive();
+        }
+        Results<ScoredDocument> results = prefetched.poll();
+        requestNext();
+        return results.getResults();
+    }
+
+    @Override
+    protected void prefetch() {
+        if (pending != null && pending.isDone() && prefetched.size() < prefetchDepth) {
+            receive();
+        }
+    }
+
+    /**
+     * Moves the query to the page following the given results, or marks them as the last page.
+     */
+    private void advance(Results<ScoredDocument> results) {
+        Cursor cursor = getNextCursor(results);
+        if (cursor == null) {
+            query = null;
+            setLastPage();
+        } else {
+            query = withCursor(query, cursor);
+        }
+    }
+
+    /**
+     * Waits for the pending page, holds it and requests the following one if there is room for it.
+     */
+    private void receive() {
+        Results<ScoredDocument> results;
+        try {
+            results = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the search results.", e);
+        } catch (ExecutionException e) {
+            // the search failures are RuntimeExceptions, rethrow them as they would be by Index.search
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        pending = null;
+
+        prefetched.add(results);
+        Cursor cursor = getNextCursor(results);
+        query = cursor == null ? null : withCursor(query, cursor);
+        requestNext();
+    }
+
+    private void requestNext() {
+        if (pending == null && query != null && prefetched.size() < prefetchDepth) {
+            pending = index.searchAsync(query);
+        }
+    }
+
+    /**
+     * @return the number of pages received ahead of the one being consumed
+     */
+    int getPrefetchedPages() {
+        return prefetched.size();
+    }
+}
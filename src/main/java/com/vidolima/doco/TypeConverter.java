@@ -0,0 +1,35 @@
+package com.vidolima.doco;
+
+import com.vidolima.doco.annotation.FieldType;
+
+/**
+ * Converts the values of a Java type to the values of a {@link com.google.appengine.api.search.Field} of a
+ * {@link FieldType} and back. The search value type S depends on the {@link FieldType}: {@link String} for TEXT, HTML
+ * and ATOM, {@link Double} for NUMBER, {@link java.util.Date} for DATE and
+ * {@link com.google.appengine.api.search.GeoPoint} for GEO_POINT.
+ *
+ * Converters are resolved once per mapped field, when the mapping of its class is built, so they must be registered
+ * with {@link Doco#registerConverter(Class, FieldType, TypeConverter)} before the first conversion of the classes
+ * which use them. They are shared between threads and must be thread-safe. Null values are never passed to them.
+ *
+ * @param <T>
+ *            the Java type
+ * @param <S>
+ *            the type of the search value
+ */
+public interface TypeConverter<T, S> {
+
+    /**
+     * @param value
+     *            the value of the Java field, never null
+     * @return the value of the search field
+     */
+    S toSearchValue(T value);
+
+    /**
+     * @param searchValue
+     *            the value of the search field, never null
+     * @return the value of the Java field
+     */
+    T fromSearchValue(S searchValue);
+}
@@ -7,12 +7,26 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
- * Use this annotation on embedded fields.
+ * Use this annotation on embedded fields. The field can also be a collection or an array of embedded objects, whose
+ * fields become multi-valued fields with one value per element.
  */
 @Documented
 @Target(ElementType.FIELD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface DocumentEmbed {
     String name() default "";
+
+    /**
+     * The collection created when a collection of embedded objects is read back.
+     */
+    DocumentCollectionType type() default DocumentCollectionType.ARRAYLIST;
+
+    /**
+     * Whether a collection or an array of embedded objects is rebuilt from its multi-valued fields when a document is
+     * read. The i-th element receives the i-th value of each field; a null or dropped value is written as an empty
+     * ATOM, so the values of the following elements keep their position. Null elements are skipped. Only the
+     * DocumentField fields of the elements are read.
+     */
+    boolean readBack() default false;
 }
 //Testing Push
\ No newline at end of file
@@ -8,6 +8,9 @@ import java.lang.annotation.Target;
 
 /**
  * This annotation is applied to the entity class. Specifies that other annotations can also be found in super class.
+ * 
+ * The documents of a subclass hold its {@link #discriminator()}, so a document read as one of its annotated super
+ * classes is converted to the subclass it was created from.
  */
 @Documented
 @Target(ElementType.TYPE)
@@ -19,4 +22,12 @@ public @interface DocumentIndexSubClass {
      * @return name.
      */
     String name() default "";
+
+    /**
+     * Specifies the value stored in the documents of the class to identify it among the other subclasses of its super
+     * classes. It must be unique among them.
+     * 
+     * @return the discriminator, the simple name of the class by default.
+     */
+    String discriminator() default "";
 }
\ No newline at end of file
@@ -0,0 +1,48 @@
+package com.vidolima.doco.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Place this annotation on String fields (or collections of Strings) of an entity POJO which should be searched by
+ * prefix, e.g. for autocomplete. The value is lower cased, its accents are removed and it is split into words; the
+ * prefixes of each word (its edge n-grams) are added to the document as repeated ATOM fields, so a prefix is found by
+ * an exact atom match instead of a TEXT query. It can be used together with {@link DocumentField}.
+ */
+@Documented
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PrefixField {
+
+    /**
+     * Specifies the name of the ATOM fields holding the prefixes.
+     *
+     * @return name, the name of the field followed by "_prefix" by default.
+     */
+    String name() default "";
+
+    /**
+     * Specifies the length of the shortest prefix, in characters.
+     *
+     * @return minimum length.
+     */
+    int minLength() default 1;
+
+    /**
+     * Specifies the length of the longest prefix, in characters. Longer words are matched by their first characters.
+     *
+     * @return maximum length.
+     */
+    int maxLength() default 10;
+
+    /**
+     * Specifies the maximum number of prefixes added to a document for the field, to bound its size. The prefixes of
+     * the last words are dropped.
+     *
+     * @return maximum number of prefixes.
+     */
+    int maxTerms() default 100;
+}
@@ -0,0 +1,36 @@
+package com.vidolima.doco.exception;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.vidolima.doco.LimitViolation;
+
+/**
+ * This exception is raised if a document is rejected because it violates the limits of the Search API.
+ */
+public final class DocumentLimitException extends RuntimeException {
+
+	private static final long serialVersionUID = 2318034946615377245L;
+
+	private final List<LimitViolation> violations;
+
+	/**
+	 * Creates exception with the specified message and violations.
+	 * 
+	 * @param message
+	 *            error message describing what happened.
+	 * @param violations
+	 *            the limits violated by the document.
+	 */
+	public DocumentLimitException(final String message, final List<LimitViolation> violations) {
+		super(message + " " + violations);
+		this.violations = Collections.unmodifiableList(violations);
+	}
+
+	/**
+	 * @return the limits violated by the document
+	 */
+	public List<LimitViolation> getViolations() {
+		return violations;
+	}
+}
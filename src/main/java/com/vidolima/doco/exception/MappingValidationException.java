@@ -0,0 +1,43 @@
+package com.vidolima.doco.exception;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This exception is raised if the mappings of the classes registered in Doco have errors. It reports all the problems
+ * found, one per line of the message.
+ */
+public final class MappingValidationException extends RuntimeException {
+
+	private static final long serialVersionUID = -2617443270159820452L;
+
+	private final List<String> problems;
+
+	/**
+	 * Creates exception with the specified problems.
+	 * 
+	 * @param problems
+	 *            the problems found in the mappings.
+	 */
+	public MappingValidationException(final List<String> problems) {
+		super(format(problems));
+		this.problems = Collections.unmodifiableList(new ArrayList<String>(problems));
+	}
+
+	private static String format(List<String> problems) {
+		StringBuilder message = new StringBuilder();
+		message.append(problems.size()).append(" mapping problem(s) found:");
+		for (String problem : problems) {
+			message.append("\n  ").append(problem);
+		}
+		return message.toString();
+	}
+
+	/**
+	 * @return the problems found, one per invalid field or class
+	 */
+	public List<String> getProblems() {
+		return problems;
+	}
+}
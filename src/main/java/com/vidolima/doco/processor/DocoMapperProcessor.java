@@ -0,0 +1,693 @@
+package com.vidolima.doco.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic.Kind;
+
+import com.vidolima.doco.DocoMapper;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FacetField;
+import com.vidolima.doco.annotation.PrefixField;
+import com.vidolima.doco.annotation.FieldType;
+
+/**
+ * Annotation processor that generates a {@link DocoMapper} for every class annotated with {@link DocumentIndex} or
+ * {@link DocumentIndexSubClass}, and for every class declaring fields annotated with Doco annotations. The generated
+ * mapper accesses the fields through plain Java code (the field itself when accessible, its getter and setter
+ * otherwise), so no reflection is used to map the class at runtime.
+ *
+ * Mapping errors, such as more than one {@link DocumentId} or a NUMBER field declared on a non numeric type, are
+ * reported as compilation errors. Classes which can not be mapped by plain Java code (e.g. private fields without
+ * getter and setter) are reported with a note and keep being mapped through reflection.
+ *
+ * The processor is registered in META-INF/services, so it runs whenever Doco is in the compile classpath.
+ */
+public class DocoMapperProcessor extends AbstractProcessor {
+
+    private static final String FIELD_TYPE = FieldType.class.getCanonicalName();
+    private static final String FIELD_ACCESSOR = "com.vidolima.doco.FieldAccessor";
+    private static final String INDENT = "    ";
+    // the default suffix of PrefixField names, see PrefixMapping
+    private static final String PREFIX_SUFFIX = "_prefix";
+
+    private final Set<String> processed = new HashSet<String>();
+    // the subclasses annotated with DocumentIndexSubClass found so far, by the names of their annotated super classes
+    private final Map<String, Set<TypeElement>> subclasses = new HashMap<String, Set<TypeElement>>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> types = new LinkedHashSet<String>();
+        for (Class<?> annotation : Arrays.asList(DocumentIndex.class, DocumentIndexSubClass.class, DocumentId.class,
+            DocumentField.class, DocumentCollection.class, FacetField.class, PrefixField.class, DocumentEmbed.class,
+            DocumentRef.class)) {
+            types.add(annotation.getCanonicalName());
+        }
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> classes = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() == ElementKind.CLASS) {
+                    classes.add((TypeElement) element);
+                } else if (element.getKind() == ElementKind.FIELD
+                    && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                    classes.add((TypeElement) element.getEnclosingElement());
+                }
+            }
+        }
+
+        // the subclasses are collected first, so the mappers of their super classes declare them
+        for (TypeElement type : classes) {
+            if (type.getAnnotation(DocumentIndexSubClass.class) != null) {
+                addSubclass(type);
+            }
+        }
+        for (TypeElement type : classes) {
+            if (processed.add(type.getQualifiedName().toString())) {
+                processClass(type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records a subclass under each of its super classes annotated with {@link DocumentIndex} or
+     * {@link DocumentIndexSubClass}.
+     */
+    private void addSubclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        while (superclass.getKind() == TypeKind.DECLARED) {
+            TypeElement element = (TypeElement) ((DeclaredType) superclass).asElement();
+            if (element.getAnnotation(DocumentIndex.class) != null
+                || element.getAnnotation(DocumentIndexSubClass.class) != null) {
+                String name = element.getQualifiedName().toString();
+                Set<TypeElement> known = subclasses.get(name);
+                if (known == null) {
+                    known = new LinkedHashSet<TypeElement>();
+                    subclasses.put(name, known);
+                }
+                known.add(type);
+            }
+            superclass = element.getSuperclass();
+        }
+    }
+
+    private void processClass(TypeElement type) {
+        boolean valid = validateFields(type);
+
+        List<VariableElement> fields = getMappedFields(type);
+        List<VariableElement> idFields = getAnnotatedFields(fields, DocumentId.class);
+        if (idFields.size() > 1) {
+            error(type, "More than one occurrence of @DocumentId found in " + type.getQualifiedName());
+            valid = false;
+        }
+        if (!valid) {
+            return;
+        }
+
+        String reason = getUnmappableReason(type, fields);
+        if (reason != null) {
+            processingEnv.getMessager().printMessage(Kind.NOTE,
+                "No mapper generated for " + type.getQualifiedName() + ", it will be mapped through reflection: "
+                    + reason, type);
+            return;
+        }
+
+        try {
+            writeMapper(type, fields);
+        } catch (IOException e) {
+            error(type, "Could not write the mapper of " + type.getQualifiedName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the fields declared by the class. Inherited fields are checked with the class which declares them.
+     *
+     * @return true if no error was found
+     */
+    private boolean validateFields(TypeElement type) {
+        boolean valid = true;
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            TypeMirror fieldType = field.asType();
+
+            if (field.getAnnotation(DocumentId.class) != null && fieldType.getKind().isPrimitive()) {
+                error(field, "The type of a DocumentId field can not be primitive. Change the type of the field: "
+                    + field.getSimpleName());
+                valid = false;
+            }
+
+            DocumentField documentField = field.getAnnotation(DocumentField.class);
+            if (documentField != null && documentField.type() == FieldType.NUMBER && !isNumber(fieldType)) {
+                error(field, "A DocumentField typed as NUMBER must be Long, Integer, Float, Double, BigDecimal or a "
+                    + "type with a TypeConverter. Field '" + field.getSimpleName() + "' is incompatible.");
+                valid = false;
+            }
+
+            DocumentCollection documentCollection = field.getAnnotation(DocumentCollection.class);
+            if (documentCollection != null) {
+                if (fieldType.getKind() == TypeKind.ARRAY) {
+                    TypeKind componentKind = ((ArrayType) fieldType).getComponentType().getKind();
+                    if (documentCollection.fieldType() != FieldType.NUMBER || (componentKind != TypeKind.INT
+                        && componentKind != TypeKind.LONG && componentKind != TypeKind.FLOAT
+                        && componentKind != TypeKind.DOUBLE)) {
+                        error(field, "a multi-valued array field must be an int[], long[], float[] or double[] typed "
+                            + "as NUMBER: " + field.getSimpleName());
+                        valid = false;
+                    }
+                } else if (!isSubtype(fieldType, "java.util.Collection")) {
+                    error(field, "multi-valued field must be of type Collection: " + field.getSimpleName());
+                    valid = false;
+                }
+            }
+
+            if (field.getAnnotation(DocumentEmbed.class) != null && isMultiValuedEmbed(fieldType)
+                && getEmbeddedElementType(fieldType) == null) {
+                error(field, "The element type of the @DocumentEmbed collection " + field.getSimpleName()
+                    + " must be declared, e.g. List<Address>.");
+                valid = false;
+            }
+
+            if (field.getAnnotation(DocumentRef.class) != null
+                && !isSubtype(fieldType, "com.googlecode.objectify.Ref")) {
+                error(field, "A DocumentRef field must be of type com.googlecode.objectify.Ref: "
+                    + field.getSimpleName());
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Obtains the fields of the class, and of its super classes while annotated with {@link DocumentIndexSubClass}, in
+     * the same order the reflection based mapping finds them.
+     */
+    private List<VariableElement> getMappedFields(TypeElement type) {
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        TypeElement current = type;
+        while (current != null) {
+            fields.addAll(ElementFilter.fieldsIn(current.getEnclosedElements()));
+            if (current.getAnnotation(DocumentIndexSubClass.class) == null
+                || current.getSuperclass().getKind() != TypeKind.DECLARED) {
+                break;
+            }
+            current = (TypeElement) ((DeclaredType) current.getSuperclass()).asElement();
+        }
+        return fields;
+    }
+
+    private static List<VariableElement> getAnnotatedFields(List<VariableElement> fields,
+        Class<? extends java.lang.annotation.Annotation> annotation) {
+        List<VariableElement> result = new ArrayList<VariableElement>();
+        for (VariableElement field : fields) {
+            if (field.getAnnotation(annotation) != null) {
+                result.add(field);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isMapped(VariableElement field) {
+        return field.getAnnotation(DocumentId.class) != null || field.getAnnotation(DocumentField.class) != null
+            || field.getAnnotation(DocumentCollection.class) != null || field.getAnnotation(FacetField.class) != null
+            || field.getAnnotation(PrefixField.class) != null || field.getAnnotation(DocumentRef.class) != null
+            || field.getAnnotation(DocumentEmbed.class) != null;
+    }
+
+    /**
+     * @return why the class can not be mapped by plain Java code, or null if it can
+     */
+    private String getUnmappableReason(TypeElement type, List<VariableElement> fields) {
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            return "local and anonymous classes are not supported";
+        }
+        String packageName = getPackageName(type);
+        if (!isAccessible(type, packageName)) {
+            return "the class is not accessible from its package";
+        }
+        for (VariableElement field : fields) {
+            if (!isMapped(field)) {
+                continue;
+            }
+            if (!isAccessible(field.asType(), packageName)) {
+                return "the type of the field " + field.getSimpleName() + " is not accessible";
+            }
+            if (getReadExpression(type, field) == null || getWriteStatement(type, field, "value") == null) {
+                return "the field " + field.getSimpleName() + " is not accessible and has no getter and setter";
+            }
+            DocumentRef documentRef = field.getAnnotation(DocumentRef.class);
+            if (documentRef != null && !isAccessible(getRefType(documentRef), packageName)) {
+                return "the type referenced by the field " + field.getSimpleName() + " is not accessible";
+            }
+            TypeMirror elementType = getElementType(field.asType());
+            if (field.getAnnotation(DocumentCollection.class) != null && elementType != null
+                && !isAccessible(elementType, packageName)) {
+                return "the element type of the field " + field.getSimpleName() + " is not accessible";
+            }
+            if (field.getAnnotation(DocumentEmbed.class) != null && isMultiValuedEmbed(field.asType())
+                && !isAccessible(getEmbeddedElementType(field.asType()), packageName)) {
+                return "the element type of the field " + field.getSimpleName() + " is not accessible";
+            }
+        }
+        return null;
+    }
+
+    private void writeMapper(TypeElement type, List<VariableElement> fields) throws IOException {
+        String packageName = getPackageName(type);
+        String simpleName = getMapperSimpleName(type);
+        String className = type.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(getClass().getName()).append(". Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n");
+        }
+        source.append("\n@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+        source.append("public final class ").append(simpleName).append(" extends ")
+            .append(DocoMapper.class.getName()).append("<").append(className).append("> {\n\n");
+        source.append(INDENT).append("public ").append(simpleName).append("() {\n");
+        source.append(INDENT).append(INDENT).append("super(").append(className).append(".class);\n");
+        String indexName = getIndexName(type);
+        if (indexName != null) {
+            source.append(INDENT).append(INDENT).append("indexName(").append(literal(indexName)).append(");\n");
+        }
+        String discriminator = getDiscriminator(type);
+        if (discriminator != null) {
+            source.append(INDENT).append(INDENT).append("discriminator(").append(literal(discriminator))
+                .append(");\n");
+        }
+        Set<TypeElement> known = subclasses.get(type.getQualifiedName().toString());
+        if (known != null) {
+            for (TypeElement subclass : known) {
+                // the inaccessible ones are only known once their mappings are built
+                if (isAccessible(subclass, packageName)) {
+                    source.append(INDENT).append(INDENT).append("subclass(")
+                        .append(getClassLiteral(subclass.asType())).append(");\n");
+                }
+            }
+        }
+
+        for (VariableElement field : getAnnotatedFields(fields, DocumentId.class)) {
+            appendDeclaration(source, "id(", type, field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, DocumentField.class)) {
+            DocumentField annotation = field.getAnnotation(DocumentField.class);
+            appendDeclaration(source, "field(" + literal(getName(field, annotation.name())) + ", " + FIELD_TYPE + "."
+                + annotation.type() + ", ", type, field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, DocumentCollection.class)) {
+            DocumentCollection annotation = field.getAnnotation(DocumentCollection.class);
+            TypeMirror elementType = getElementType(field.asType());
+            appendDeclaration(source, "collection(" + literal(getName(field, annotation.name())) + ", " + FIELD_TYPE
+                + "." + annotation.fieldType() + ", " + annotation.type().getDeclaringClass().getCanonicalName() + "."
+                + annotation.type() + ", " + (elementType == null ? "" : getClassLiteral(elementType) + ", "), type,
+                field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, FacetField.class)) {
+            FacetField annotation = field.getAnnotation(FacetField.class);
+            appendDeclaration(source, "facet(" + literal(getName(field, annotation.name())) + ", "
+                + annotation.type().getDeclaringClass().getCanonicalName() + "." + annotation.type() + ", ", type,
+                field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, PrefixField.class)) {
+            PrefixField annotation = field.getAnnotation(PrefixField.class);
+            String name = annotation.name().trim().length() == 0 ? field.getSimpleName() + PREFIX_SUFFIX
+                : annotation.name();
+            appendDeclaration(source, "prefix(" + literal(name) + ", " + annotation.minLength() + ", "
+                + annotation.maxLength() + ", " + annotation.maxTerms() + ", ", type, field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, DocumentRef.class)) {
+            appendDeclaration(source, "ref(" + getClassLiteral(getRefType(field.getAnnotation(DocumentRef.class)))
+                + ", ", type, field);
+        }
+        for (VariableElement field : getAnnotatedFields(fields, DocumentEmbed.class)) {
+            if (isMultiValuedEmbed(field.asType())) {
+                DocumentEmbed annotation = field.getAnnotation(DocumentEmbed.class);
+                appendDeclaration(source, "embed(" + getClassLiteral(getEmbeddedElementType(field.asType())) + ", "
+                    + annotation.type().getDeclaringClass().getCanonicalName() + "." + annotation.type() + ", "
+                    + annotation.readBack() + ", ", type, field);
+            } else {
+                appendDeclaration(source, "embed(", type, field);
+            }
+        }
+        source.append(INDENT).append("}\n");
+
+        if (canInstantiate(type)) {
+            source.append("\n").append(INDENT).append("@Override\n");
+            source.append(INDENT).append("public ").append(className).append(" newInstance() {\n");
+            source.append(INDENT).append(INDENT).append("return new ").append(className).append("();\n");
+            source.append(INDENT).append("}\n");
+        }
+        source.append("}\n");
+
+        String mapperName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        Writer writer = processingEnv.getFiler().createSourceFile(mapperName, type).openWriter();
+        try {
+            writer.write(source.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Appends the call that declares a mapped field, with an anonymous {@code FieldAccessor} as last argument.
+     */
+    private void appendDeclaration(StringBuilder source, String call, TypeElement type, VariableElement field) {
+        String indent = INDENT + INDENT;
+        String memberIndent = indent + INDENT;
+        String bodyIndent = memberIndent + INDENT;
+        TypeMirror fieldType = field.asType();
+
+        source.append(indent).append(call).append("new ").append(FIELD_ACCESSOR).append("(")
+            .append(literal(field.getSimpleName().toString())).append(", ").append(getClassLiteral(fieldType))
+            .append(") {\n");
+
+        source.append(memberIndent).append("@Override\n");
+        source.append(memberIndent).append("protected Object get(Object obj) {\n");
+        source.append(bodyIndent).append("return ").append(getReadExpression(type, field)).append(";\n");
+        source.append(memberIndent).append("}\n\n");
+
+        source.append(memberIndent).append("@Override\n");
+        source.append(memberIndent).append("protected void set(Object obj, Object value) {\n");
+        source.append(bodyIndent).append(getWriteStatement(type, field, getUnboxExpression(fieldType, "value")))
+            .append("\n");
+        source.append(memberIndent).append("}\n");
+
+        // int, long, float and double NUMBER fields are read and written without boxing
+        TypeKind kind = fieldType.getKind();
+        if (kind == TypeKind.INT || kind == TypeKind.LONG || kind == TypeKind.FLOAT || kind == TypeKind.DOUBLE) {
+            source.append("\n").append(memberIndent).append("@Override\n");
+            source.append(memberIndent).append("protected double getDouble(Object obj) {\n");
+            source.append(bodyIndent).append("return ").append(getReadExpression(type, field)).append(";\n");
+            source.append(memberIndent).append("}\n\n");
+
+            source.append(memberIndent).append("@Override\n");
+            source.append(memberIndent).append("protected void setDouble(Object obj, double value) {\n");
+            String value = kind == TypeKind.DOUBLE ? "value" : "(" + fieldType + ") value";
+            source.append(bodyIndent).append(getWriteStatement(type, field, value)).append("\n");
+            source.append(memberIndent).append("}\n");
+        }
+
+        source.append(indent).append("});\n");
+    }
+
+    /**
+     * @return the expression reading the field of 'obj', or null if the field can not be read
+     */
+    private String getReadExpression(TypeElement type, VariableElement field) {
+        String target = "((" + type.getQualifiedName() + ") obj)";
+        String packageName = getPackageName(type);
+        if (isAccessible(field, packageName)) {
+            return target + "." + field.getSimpleName();
+        }
+        ExecutableElement getter = findGetter(type, field);
+        return getter != null ? target + "." + getter.getSimpleName() + "()" : null;
+    }
+
+    /**
+     * @return the statement writing the given value to the field of 'obj', or null if the field can not be written
+     */
+    private String getWriteStatement(TypeElement type, VariableElement field, String value) {
+        String target = "((" + type.getQualifiedName() + ") obj)";
+        String packageName = getPackageName(type);
+        if (isAccessible(field, packageName) && !field.getModifiers().contains(Modifier.FINAL)) {
+            return target + "." + field.getSimpleName() + " = " + value + ";";
+        }
+        ExecutableElement setter = findSetter(type, field);
+        return setter != null ? target + "." + setter.getSimpleName() + "(" + value + ");" : null;
+    }
+
+    private String getUnboxExpression(TypeMirror fieldType, String value) {
+        switch (fieldType.getKind()) {
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+        case SHORT:
+        case BYTE:
+            // same conversion as the method handle based accessors
+            return "((java.lang.Number) " + value + ")." + fieldType + "Value()";
+        case BOOLEAN:
+            return "(java.lang.Boolean) " + value;
+        case CHAR:
+            return "(java.lang.Character) " + value;
+        default:
+            return "(" + processingEnv.getTypeUtils().erasure(fieldType) + ") " + value;
+        }
+    }
+
+    private ExecutableElement findGetter(TypeElement type, VariableElement field) {
+        String property = capitalize(field.getSimpleName().toString());
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            String name = method.getSimpleName().toString();
+            if ((name.equals("get" + property) || name.equals("is" + property)) && method.getParameters().isEmpty()
+                && isSameErasure(method.getReturnType(), field.asType())
+                && isAccessible(method, getPackageName(type))) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private ExecutableElement findSetter(TypeElement type, VariableElement field) {
+        String property = capitalize(field.getSimpleName().toString());
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getSimpleName().toString().equals("set" + property) && method.getParameters().size() == 1
+                && isSameErasure(method.getParameters().get(0).asType(), field.asType())
+                && isAccessible(method, getPackageName(type))) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private boolean canInstantiate(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)
+            || (type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC))) {
+            return false;
+        }
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty() && isAccessible(constructor, getPackageName(type))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isAccessible(Element element, String packageName) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)) {
+            return false;
+        }
+        if (!modifiers.contains(Modifier.PUBLIC) && !getPackageName(element).equals(packageName)) {
+            return false;
+        }
+        Element enclosing = element.getEnclosingElement();
+        return enclosing.getKind() == ElementKind.PACKAGE || isAccessible(enclosing, packageName);
+    }
+
+    private boolean isAccessible(TypeMirror type, String packageName) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return isAccessible(((ArrayType) type).getComponentType(), packageName);
+        }
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        if (erasure.getKind() == TypeKind.DECLARED) {
+            return isAccessible(((DeclaredType) erasure).asElement(), packageName);
+        }
+        return true;
+    }
+
+    private boolean isNumber(TypeMirror type) {
+        switch (type.getKind()) {
+        case INT:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            return true;
+        case DECLARED:
+            String name = ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+            if (name.equals("java.lang.Integer") || name.equals("java.lang.Long") || name.equals("java.lang.Float")
+                || name.equals("java.lang.Double") || name.equals("java.math.BigDecimal")) {
+                return true;
+            }
+            if (name.startsWith("java.lang.")) {
+                return false;
+            }
+            if (name.startsWith("java.util.") || name.startsWith("java.time.")) {
+                // dates, collections and the like are never numbers, but the atomic numbers can have a TypeConverter
+                return isSubtype(type, "java.lang.Number");
+            }
+            // a type whose TypeConverter can only be found at runtime
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Obtains the element type of a collection declared with exactly one type argument other than Object, as found by
+     * {@code FieldMapping.getElementType} through reflection.
+     *
+     * @return the type argument, or null if there is none
+     */
+    private TypeMirror getElementType(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) arguments.get(0)).asElement();
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : arguments.get(0);
+    }
+
+    /**
+     * @return true if the type of a @DocumentEmbed field is a collection or an array of embedded objects
+     */
+    private boolean isMultiValuedEmbed(TypeMirror type) {
+        return type.getKind() == TypeKind.ARRAY || isSubtype(type, "java.util.Collection");
+    }
+
+    /**
+     * Obtains the type of the elements of a collection or an array of embedded objects.
+     *
+     * @return the component type or the type argument, or null if it is not a declared type
+     */
+    private TypeMirror getEmbeddedElementType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            TypeMirror componentType = ((ArrayType) type).getComponentType();
+            return componentType.getKind() == TypeKind.DECLARED ? componentType : null;
+        }
+        return getElementType(type);
+    }
+
+    private boolean isSubtype(TypeMirror type, String className) {
+        TypeElement element = processingEnv.getElementUtils().getTypeElement(className);
+        if (element == null) {
+            // the class is not in the classpath, so the field can not be of that type either
+            return false;
+        }
+        return processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(type),
+            processingEnv.getTypeUtils().erasure(element.asType()));
+    }
+
+    private boolean isSameErasure(TypeMirror a, TypeMirror b) {
+        return processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(a),
+            processingEnv.getTypeUtils().erasure(b));
+    }
+
+    private static TypeMirror getRefType(DocumentRef annotation) {
+        try {
+            annotation.type();
+        } catch (MirroredTypeException e) {
+            return e.getTypeMirror();
+        }
+        throw new IllegalStateException("The type of @DocumentRef is only available as a TypeMirror.");
+    }
+
+    private String getClassLiteral(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type) + ".class";
+    }
+
+    private String getPackageName(Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+    }
+
+    /**
+     * @return the simple name of the mapper, e.g. Outer_Inner_DocoMapper for the class Outer.Inner
+     */
+    private static String getMapperSimpleName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind() != ElementKind.PACKAGE) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append(DocoMapper.SUFFIX).toString();
+    }
+
+    /**
+     * @return the name of the index, resolved the same way as the reflection based mapping, or null if the class is not
+     *         annotated with {@link DocumentIndex} or {@link DocumentIndexSubClass}
+     */
+    private static String getIndexName(TypeElement type) {
+        DocumentIndex documentIndex = type.getAnnotation(DocumentIndex.class);
+        String name;
+        if (documentIndex != null) {
+            name = documentIndex.name();
+        } else if (type.getAnnotation(DocumentIndexSubClass.class) != null) {
+            name = type.getAnnotation(DocumentIndexSubClass.class).name();
+        } else {
+            return null;
+        }
+        return (name != null && name.length() > 0) ? name : type.getSimpleName().toString();
+    }
+
+    /**
+     * @return the discriminator, resolved the same way as the reflection based mapping, or null if the class is not
+     *         annotated with {@link DocumentIndexSubClass}
+     */
+    private static String getDiscriminator(TypeElement type) {
+        DocumentIndexSubClass annotation = type.getAnnotation(DocumentIndexSubClass.class);
+        if (annotation == null) {
+            return null;
+        }
+        String discriminator = annotation.discriminator();
+        return discriminator.length() > 0 ? discriminator : type.getSimpleName().toString();
+    }
+
+    private static String getName(VariableElement field, String name) {
+        return (name == null || name.trim().length() == 0) ? field.getSimpleName().toString() : name;
+    }
+
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,121 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.vidolima.doco.ConversionEvent.Direction;
+import com.vidolima.doco.annotation.FieldType;
+
+public class ConversionMetricsTest {
+
+    @Test
+    public void testHistogramPercentiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(1000, snapshot.getMax());
+        Assert.assertEquals(500.5, snapshot.getMean(), 0.001);
+        assertWithinBucket(500, snapshot.getPercentile(50));
+        assertWithinBucket(990, snapshot.getPercentile(99));
+        Assert.assertEquals(1000, snapshot.getPercentile(100));
+
+        for (long value : Arrays.asList(0L, 7L, 8L, 1023L, 1024L, Long.MAX_VALUE)) {
+            int bucket = Histogram.bucketOf(value);
+            Assert.assertTrue(Histogram.upperBoundOf(bucket) >= value);
+            Assert.assertTrue(bucket == 0 || Histogram.upperBoundOf(bucket - 1) < value);
+        }
+    }
+
+    @Test
+    public void testHistogramIsThreadSafe() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        Assert.assertEquals(40000, histogram.snapshot().getCount());
+        Assert.assertEquals(9999, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void testConversionsAreReported() {
+        ConversionMetrics metrics = new ConversionMetrics();
+        Doco doco = Doco.newBuilder().conversionListener(metrics).build();
+
+        Foo foo = new Foo();
+        foo.setCode(1);
+        foo.setTextFieldTest("some text");
+        Document document = doco.toDocument(foo);
+        doco.fromDocument(document, Foo.class);
+
+        List<Object> foos = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            foos.add(foo);
+        }
+        doco.fromDocuments(doco.toDocuments(foos), Foo.class);
+
+        ConversionMetrics.Stats toDocument = metrics.getStats(Foo.class, Direction.TO_DOCUMENT);
+        Assert.assertEquals(4, toDocument.getDurationNanos().snapshot().getCount());
+        Assert.assertTrue(toDocument.getEstimatedBytes().snapshot().getMin() >= "justText".length() + 9);
+        Assert.assertEquals(countFields(document), toDocument.getFieldCount().snapshot().getMax());
+        Assert.assertEquals(4, metrics.getStats(Foo.class, Direction.FROM_DOCUMENT).getDurationNanos().snapshot()
+            .getCount());
+
+        new Doco().toDocument(foo);
+        Assert.assertEquals(4, toDocument.getDurationNanos().snapshot().getCount());
+        Assert.assertEquals(0, metrics.getStats(Bar.class, Direction.TO_DOCUMENT).getFieldCount().snapshot()
+            .getCount());
+    }
+
+    @Test
+    public void testEventSizeIsEstimatedInUtf8AsTheLimits() {
+        String text = "\u00e3\u00e7\u00e3o \u4e2d\u6587 \ud83d\ude00";
+        Document document = Document.newBuilder().setId("id")
+            .addField(com.google.appengine.api.search.Field.newBuilder().setName("text").setText(text))
+            .addField(com.google.appengine.api.search.Field.newBuilder().setName("number").setNumber(1)).build();
+
+        ConversionEvent event = new ConversionEvent(Foo.class, Direction.TO_DOCUMENT, 0, document);
+
+        DocumentLimits limits = new DocumentLimits(LimitPolicy.REJECT);
+        limits.checkId("id");
+        limits.checkString("text", text, FieldType.TEXT);
+        limits.checkNumber("number", 1);
+        Assert.assertEquals(limits.getEstimatedBytes(), event.getEstimatedBytes());
+        Assert.assertTrue(event.getEstimatedBytes() > text.length() * 2);
+    }
+
+    private static int countFields(Document document) {
+        int count = 0;
+        for (com.google.appengine.api.search.Field field : document.getFields()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        Assert.assertTrue(actual + " is not close to " + expected, actual >= expected && actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,214 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.Index;
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.ConversionEvent.Direction;
+import com.vidolima.doco.utils.AppEngineTestUtils;
+
+/**
+ * Uses a single {@link Doco} from many threads at once, as a shared context of an application does.
+ */
+public class DocoConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 500;
+
+    private AppEngineTestUtils testUtils = new AppEngineTestUtils();
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        testUtils.setUp();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+        testUtils.tearDown();
+    }
+
+    private static Foo newFoo(int code) {
+        Foo foo = code % 3 == 0 ? new Bar() : new Foo();
+        foo.setCode(code);
+        foo.setTextFieldTest("text " + code);
+        foo.setAtomFieldTest("atom" + code);
+        foo.setNumberFieldTest(code * 0.5d);
+        foo.setDateFieldTest(new Date(code * 1000L));
+        foo.addToArrayListTest("item" + code);
+        return foo;
+    }
+
+    private static String describe(Document document) {
+        return document.getId() + " " + document.getFields() + " " + document.getFacets();
+    }
+
+    /**
+     * Runs the task in all the threads, started together, and returns their results.
+     */
+    private <T> List<T> runConcurrently(final Callable<T> task) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    start.await();
+                    return task.call();
+                }
+            }));
+        }
+        start.countDown();
+
+        List<T> results = new ArrayList<T>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    @Test
+    public void testSharedDocoConvertsConcurrently() throws Exception {
+        final List<Foo> foos = new ArrayList<Foo>();
+        final List<String> expected = new ArrayList<String>();
+        Doco sequential = new Doco();
+        for (int i = 0; i < ITERATIONS; i++) {
+            foos.add(newFoo(i));
+            expected.add(describe(sequential.toDocument(foos.get(i))));
+        }
+
+        ConversionMetrics metrics = new ConversionMetrics();
+        final Doco doco = Doco.newBuilder().conversionListener(metrics).limitPolicy(LimitPolicy.TRUNCATE).build();
+
+        List<Integer> mismatches = runConcurrently(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int mismatches = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    Foo foo = foos.get(i);
+                    Document document = doco.toDocument(foo);
+                    Foo read = doco.fromDocument(document, foo.getClass());
+                    if (!expected.get(i).equals(describe(document))
+                        || !foo.getTextFieldTest().equals(read.getTextFieldTest())
+                        || !foo.getNumberFieldTest().equals(read.getNumberFieldTest())) {
+                        mismatches++;
+                    }
+                }
+                return mismatches;
+            }
+        });
+
+        Assert.assertEquals(Collections.nCopies(THREADS, 0), mismatches);
+        long conversions = metrics.getStats(Foo.class, Direction.TO_DOCUMENT).getDurationNanos().snapshot().getCount()
+            + metrics.getStats(Bar.class, Direction.TO_DOCUMENT).getDurationNanos().snapshot().getCount();
+        Assert.assertEquals(THREADS * ITERATIONS, conversions);
+    }
+
+    @Test
+    public void testSharedDocoConvertsBatchesConcurrently() throws Exception {
+        final List<Object> foos = new ArrayList<Object>();
+        for (int i = 0; i < ITERATIONS; i++) {
+            foos.add(newFoo(i));
+        }
+        final Doco doco = new Doco();
+        final List<Document> expected = doco.toDocuments(foos);
+
+        List<Boolean> matches = runConcurrently(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                List<Document> documents = doco.toDocuments(foos);
+                List<Foo> read = doco.fromDocuments(documents, Foo.class);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    if (!describe(expected.get(i)).equals(describe(documents.get(i)))
+                        || read.get(i).getCode().intValue() != i) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+
+        Assert.assertEquals(Collections.nCopies(THREADS, true), matches);
+    }
+
+    @Test
+    public void testIndexHandlesAreCreatedOnce() throws Exception {
+        final Doco doco = new Doco();
+
+        List<Index> indexes = runConcurrently(new Callable<Index>() {
+            @Override
+            public Index call() {
+                Index index = null;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    index = doco.getIndex(Foo.class);
+                }
+                return index;
+            }
+        });
+
+        for (Index index : indexes) {
+            Assert.assertSame(indexes.get(0), index);
+        }
+    }
+
+    @Test
+    public void testSharedFragmentCacheStaysBounded() throws Exception {
+        final FragmentCache cache = new FragmentCache(50);
+        final ClassMapping mapping = MappingRegistry.getDefault().getMapping(DocumentRefTest.C.class);
+        final List<Field> fields = Collections.singletonList(Field.newBuilder().setName("C_cId").setText("c")
+            .build());
+        final Set<Key<?>> none = Collections.emptySet();
+        // keys need the API environment, which only the test thread has
+        final List<Key<DocumentRefTest.C>> keys = new ArrayList<Key<DocumentRefTest.C>>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(Key.create(DocumentRefTest.C.class, "c" + i));
+        }
+
+        List<Integer> hits = runConcurrently(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int hits = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    // each key is used for a few iterations in a row, so it is still cached when used again
+                    Key<DocumentRefTest.C> key = keys.get((i / 10) % keys.size());
+                    FragmentCache.Fragment fragment = cache.get(key, "C", false, mapping);
+                    if (fragment != null) {
+                        Assert.assertEquals(fields, fragment.getFields());
+                        hits++;
+                    } else {
+                        cache.put(key, "C", false, mapping, fields, none);
+                    }
+                    if (i % 97 == 0) {
+                        cache.invalidate(key);
+                    }
+                }
+                return hits;
+            }
+        });
+
+        Assert.assertTrue(cache.size() <= 50);
+        int total = 0;
+        for (int threadHits : hits) {
+            total += threadHits;
+        }
+        Assert.assertTrue(total > 0);
+    }
+}
@@ -0,0 +1,158 @@
+package com.vidolima.doco;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaCompiler.CompilationTask;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vidolima.doco.processor.DocoMapperProcessor;
+
+public class DocoMapperProcessorTest {
+
+    @Test
+    public void testGeneratedMapperIsFound() {
+        Assert.assertEquals("com.vidolima.doco.Foo_DocoMapper", DocoMapper.getMapperName(Foo.class));
+        Assert.assertEquals("com.vidolima.doco.FacetTest_Foo_DocoMapper",
+            DocoMapper.getMapperName(FacetTest.Foo.class));
+
+        DocoMapper<?> mapper = DocoMapper.forClass(Foo.class);
+        Assert.assertNotNull(mapper);
+        Assert.assertEquals(Foo.class, mapper.getType());
+        Assert.assertNull(DocoMapper.forClass(String.class));
+    }
+
+    @Test
+    public void testGeneratedMappingMatchesReflection() {
+        for (Class<?> classOfObj : Arrays.<Class<?>> asList(Foo.class, Bar.class, FacetTest.Foo.class,
+            MultiValuedFieldTest.Measured.class, DocumentEmbedTest.Order.class, PrefixFieldTest.City.class)) {
+            ClassMapping reflected = ClassMapping.create(classOfObj);
+            ClassMapping generated = ClassMapping.create(DocoMapper.forClass(classOfObj));
+
+            Assert.assertEquals(describe(reflected), describe(generated));
+        }
+    }
+
+    @Test
+    public void testDuplicateDocumentIdFailsCompilation() throws Exception {
+        List<String> errors = compile("Duplicated", "@DocumentIndex public class Duplicated {"
+            + " @DocumentId String id; @DocumentId String otherId; }");
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0).contains("More than one occurrence of @DocumentId"));
+    }
+
+    @Test
+    public void testNumberOnNonNumericFieldFailsCompilation() throws Exception {
+        List<String> errors = compile("NotNumber", "@DocumentIndex public class NotNumber {"
+            + " @DocumentId String id; @DocumentField(type = FieldType.NUMBER) String total; }");
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0).contains("'total'"));
+    }
+
+    @Test
+    public void testNumberOnDateFieldFailsCompilation() throws Exception {
+        List<String> errors = compile("DateNumber", "@DocumentIndex public class DateNumber {"
+            + " @DocumentId String id; @DocumentField(type = FieldType.NUMBER) java.util.Date created;"
+            + " @DocumentField(type = FieldType.NUMBER) java.util.List<String> codes;"
+            + " @DocumentField(type = FieldType.NUMBER) java.math.BigDecimal total; }");
+
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.get(0).contains("'created'"));
+        Assert.assertTrue(errors.get(1).contains("'codes'"));
+    }
+
+    @Test
+    public void testArrayOfNonNumbersFailsCompilation() throws Exception {
+        List<String> errors = compile("TextArray", "@DocumentIndex public class TextArray {"
+            + " @DocumentId String id; @DocumentCollection(fieldType = FieldType.TEXT) int[] values; }");
+
+        Assert.assertEquals(1, errors.size());
+        Assert.assertTrue(errors.get(0).contains("values"));
+    }
+
+    @Test
+    public void testValidClassCompiles() throws Exception {
+        Assert.assertTrue(compile("Valid", "@DocumentIndex public class Valid {"
+            + " @DocumentId String id; @DocumentField(type = FieldType.NUMBER) int total;"
+            + " @DocumentField private String name; }").isEmpty());
+    }
+
+    private static List<String> describe(ClassMapping mapping) {
+        List<String> description = new ArrayList<String>();
+        description.add("index " + mapping.getIndexName());
+        description.add("discriminator " + mapping.getDiscriminator());
+        for (FieldAccessor id : mapping.getIdFields()) {
+            description.add("id " + id);
+        }
+        for (FieldMapping field : mapping.getFields()) {
+            description.add(field.getName() + " " + field.getFieldType() + " " + field.getCollectionType() + " "
+                + field.getElementType() + " " + field.getAccessor());
+        }
+        for (FacetMapping facet : mapping.getFacets()) {
+            description.add("facet " + facet.getName() + " " + facet.getFacetType() + " " + facet.getAccessor());
+        }
+        for (PrefixMapping prefix : mapping.getPrefixes()) {
+            description.add("prefix " + prefix.getName() + " " + prefix.getMinLength() + " " + prefix.getMaxLength()
+                + " " + prefix.getMaxTerms() + " " + prefix.getAccessor());
+        }
+        for (NestedMapping ref : mapping.getRefs()) {
+            description.add("ref " + ref.getTargetClass() + " " + ref.getAccessor());
+        }
+        for (NestedMapping embed : mapping.getEmbeds()) {
+            description.add("embed " + embed.getTargetClass() + " " + embed.isMultiValued() + " "
+                + embed.getCollectionType() + " " + embed.isReadBack() + " " + embed.getAccessor());
+        }
+        return description;
+    }
+
+    /**
+     * Compiles a class of the package 'test' with the processor.
+     *
+     * @return the compilation errors
+     */
+    private static List<String> compile(String className, String body) throws IOException, URISyntaxException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final String source = "package test; import com.vidolima.doco.annotation.*; " + body;
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/" + className + ".java"),
+            JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+
+        File output = Files.createTempDirectory("doco").toFile();
+        String classpath = new File(DocoMapper.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+            .getPath();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        CompilationTask task = compiler.getTask(null, null, diagnostics,
+            Arrays.asList("-classpath", classpath, "-d", output.getPath(), "-s", output.getPath()), null,
+            Arrays.asList(file));
+        task.setProcessors(Arrays.asList(new DocoMapperProcessor()));
+        task.call();
+
+        List<String> errors = new ArrayList<String>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors;
+    }
+}
@@ -1,6 +1,14 @@
 package com.vidolima.doco;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -9,9 +17,19 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import com.google.appengine.api.NamespaceManager;
 import com.google.appengine.api.search.Document;
 import com.google.appengine.api.search.Field;
 import com.google.appengine.api.search.GeoPoint;
+import com.google.appengine.api.search.GetRequest;
+import com.google.appengine.api.search.GetResponse;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.OperationResult;
+import com.google.appengine.api.search.Query;
+import com.google.appengine.api.search.QueryOptions;
+import com.google.appengine.api.search.SearchServiceConfig;
+import com.google.appengine.api.search.SearchServiceFactory;
+import com.google.appengine.api.search.StatusCode;
 import com.googlecode.objectify.ObjectifyService;
 
 import com.vidolima.doco.utils.AppEngineTestUtils;
@@ -106,6 +124,32 @@ public class DocoTest {
             f.getTextFieldWithoutTypeAndName());
     }
 
+    @Test
+    public void testFieldOrderIsDeterministic() {
+        Foo t = new Foo();
+        t.setCode(1);
+        t.setAtomFieldTest("atom");
+        t.setNumberFieldTest(10d);
+        t.setTextFieldTest("text");
+        t.addToArrayListTest("item1");
+        t.addToArrayListTest("item2");
+
+        Doco doco = new Doco();
+        List<String> first = new ArrayList<String>();
+        for (Field f : doco.toDocument(t).getFields()) {
+            first.add(f.getName());
+        }
+        List<String> second = new ArrayList<String>();
+        for (Field f : doco.toDocument(t).getFields()) {
+            second.add(f.getName());
+        }
+
+        Assert.assertEquals(first, second);
+        // fields are grouped by FieldType, ATOM fields first
+        Assert.assertEquals("atomFieldTest", first.get(0));
+        Assert.assertEquals(2, Collections.frequency(first, Foo.ARRAY_LIST_TEST));
+    }
+
     /**
      * Tests whether subclass can be converted to a document successfully or not.
      * 
@@ -126,6 +170,29 @@ public class DocoTest {
         Assert.assertEquals(bar.getCode(), retrievedBar.getCode());
         Assert.assertEquals(bar.getSubClassNumberField(), retrievedBar.getSubClassNumberField());
     }
+
+    /**
+     * Tests whether documents of a base class and of its subclass are read back as instances of their own classes.
+     */
+    @Test
+    public void testBaseClassReadsSubclassDocuments() {
+        Foo foo = new Foo();
+        foo.setCode(1);
+        Bar bar = new Bar();
+        bar.setCode(2);
+        bar.setSubClassNumberField(50L);
+
+        Doco doco = new Doco();
+        List<Document> documents = doco.toDocuments(Arrays.asList(foo, bar));
+        Assert.assertEquals(0, documents.get(0).getFieldCount("doco_type"));
+        Assert.assertEquals("Bar", documents.get(1).getOnlyField("doco_type").getAtom());
+
+        List<Foo> read = doco.fromDocuments(documents, Foo.class);
+        Assert.assertEquals(Foo.class, read.get(0).getClass());
+        Assert.assertEquals(Bar.class, read.get(1).getClass());
+        Assert.assertEquals(50L, ((Bar) read.get(1)).getSubClassNumberField());
+        Assert.assertEquals(Bar.class, doco.fromDocument(documents.get(1), Foo.class).getClass());
+    }
     
     /**
      * James Huang Test if the  DocumentCollection works when converting a document back into a java object which uses the DocumentCollection Annotation
@@ -207,5 +274,162 @@ public class DocoTest {
     	
     }
 
-    
-}
\ No newline at end of file
+    @Test
+    public void testToDocuments() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < 3; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            objs.add(foo);
+        }
+        objs.add(null);
+
+        List<Document> documents = new Doco().toDocuments(objs);
+        Assert.assertEquals(4, documents.size());
+        Assert.assertEquals("2", documents.get(2).getId());
+        Assert.assertNull(documents.get(3));
+    }
+
+    @Test
+    public void testPutAllInBatchesPerIndex() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < 450; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            objs.add(foo);
+            if (i % 100 == 0) {
+                Bar bar = new Bar();
+                bar.setCode(i);
+                objs.add(bar);
+            }
+        }
+
+        Doco doco = new Doco();
+        List<OperationResult> results = doco.putAll(objs);
+
+        Assert.assertEquals(objs.size(), results.size());
+        for (OperationResult result : results) {
+            Assert.assertEquals(StatusCode.OK, result.getCode());
+        }
+        GetRequest all = GetRequest.newBuilder().setLimit(1000).build();
+        Assert.assertEquals(450, doco.getIndex(Foo.class).getRange(all).getResults().size());
+        Assert.assertEquals(5, doco.getIndex(Bar.class).getRange(all).getResults().size());
+    }
+
+    @Test
+    public void testIndexIsCachedPerNamespace() {
+        Doco doco = new Doco();
+        Index index = doco.getIndex(Foo.class);
+        Assert.assertSame(index, doco.getIndex(Foo.class));
+        Assert.assertEquals("Foo", index.getName());
+
+        NamespaceManager.set("other");
+        try {
+            Index otherIndex = doco.getIndex(Foo.class);
+            Assert.assertNotSame(index, otherIndex);
+            Assert.assertEquals("other", otherIndex.getNamespace());
+            Assert.assertSame(otherIndex, doco.getIndex(Foo.class));
+        } finally {
+            NamespaceManager.set(null);
+        }
+        Assert.assertSame(index, doco.getIndex(Foo.class));
+    }
+
+    @Test
+    public void testIndexFromInjectedSearchService() {
+        SearchServiceConfig config = SearchServiceConfig.newBuilder().setNamespace("injected").setDeadline(5.0)
+            .build();
+        Doco doco = new Doco(SearchServiceFactory.getSearchService(config));
+
+        Index index = doco.getIndex(Foo.class);
+        Assert.assertEquals("injected", index.getNamespace());
+        Assert.assertSame(index, doco.getIndex(Foo.class));
+    }
+
+    @Test
+    public void testStreamFollowsPages() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < 250; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            objs.add(foo);
+        }
+        Doco doco = new Doco();
+        doco.putAll(objs);
+
+        Set<Integer> codes = new HashSet<Integer>();
+        for (Foo foo : doco.stream(GetRequest.newBuilder().setLimit(100).build(), Foo.class)) {
+            Assert.assertTrue(codes.add(foo.getCode()));
+        }
+        Assert.assertEquals(250, codes.size());
+
+        codes.clear();
+        Query query = Query.newBuilder().setOptions(QueryOptions.newBuilder().setLimit(100)).build("");
+        for (Foo foo : doco.stream(query, Foo.class)) {
+            Assert.assertTrue(codes.add(foo.getCode()));
+        }
+        Assert.assertEquals(250, codes.size());
+
+        GetResponse<Document> page = doco.getIndex(Foo.class).getRange(GetRequest.newBuilder().setLimit(10));
+        Iterator<Foo> lazy = doco.stream(page, Foo.class).iterator();
+        Assert.assertEquals(page.getResults().get(0).getId(), String.valueOf(lazy.next().getCode()));
+    }
+
+    @Test
+    public void testAsStreamFollowsPages() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < 250; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            objs.add(foo);
+        }
+        Doco doco = new Doco();
+        doco.putAll(objs);
+
+        Set<Integer> codes = new HashSet<Integer>();
+        for (Foo foo : doco.asStream(GetRequest.newBuilder().setLimit(100).build(), Foo.class).collect(
+            Collectors.<Foo> toList())) {
+            Assert.assertTrue(codes.add(foo.getCode()));
+        }
+        Assert.assertEquals(250, codes.size());
+
+        Query query = Query.newBuilder().setOptions(QueryOptions.newBuilder().setLimit(100)).build("");
+        Assert.assertEquals(250, doco.asStream(query, Foo.class, 1).count());
+        Assert.assertEquals(5, doco.asStream(query, Foo.class).limit(5).count());
+    }
+
+    @Test
+    public void testStreamPrefetchesPages() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < 250; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            objs.add(foo);
+        }
+        Doco doco = new Doco();
+        doco.putAll(objs);
+
+        Query query = Query.newBuilder().setOptions(QueryOptions.newBuilder().setLimit(20)).build("");
+        Set<Integer> codes = new HashSet<Integer>();
+        for (Foo foo : doco.stream(query, Foo.class, 2)) {
+            Assert.assertTrue(codes.add(foo.getCode()));
+        }
+        Assert.assertEquals(250, codes.size());
+
+        SearchPageIterator pages = new SearchPageIterator(doco.getIndex(Foo.class), query, 2);
+        int count = 0;
+        while (pages.hasNext()) {
+            pages.next();
+            count++;
+            Assert.assertTrue(pages.getPrefetchedPages() <= 2);
+        }
+        Assert.assertEquals(250, count);
+
+        try {
+            doco.stream(query, Foo.class, SearchPageIterator.MAX_PREFETCH_DEPTH + 1);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
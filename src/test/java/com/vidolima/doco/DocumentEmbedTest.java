@@ -1,16 +1,26 @@
 package com.vidolima.doco;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
 
 import org.junit.Test;
 
 import com.google.appengine.api.datastore.GeoPt;
 import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
+import com.vidolima.doco.annotation.DocumentCollectionType;
 import com.vidolima.doco.annotation.DocumentEmbed;
 import com.vidolima.doco.annotation.DocumentField;
 import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
 import com.vidolima.doco.annotation.FieldType;
 
 public class DocumentEmbedTest {
@@ -36,6 +46,107 @@ public class DocumentEmbedTest {
         assertEquals(cId, document.getOnlyField("B_C_cId").getText());
     }
 
+    @Test
+    public void testEmbeddedCollectionIsFlattened() {
+        Order order = newOrder();
+        order.lines.add(1, null);
+
+        Document document = new Doco().toDocument(order);
+        assertEquals(2, document.getFieldCount("Line_sku"));
+        assertEquals(2, document.getFieldCount("Line_quantity"));
+        List<String> quantities = new ArrayList<String>();
+        for (Field field : document.getFields("Line_quantity")) {
+            assertEquals(Field.FieldType.ATOM, field.getType());
+            quantities.add(field.getAtom());
+        }
+        assertEquals(Arrays.asList("3", "1"), quantities);
+        assertEquals("1970-01-01T00:00:01Z", document.getFields("Line_shipped").iterator().next().getAtom());
+        assertEquals(2, document.getFieldCount("Tag_label"));
+    }
+
+    @Test
+    public void testEmbeddedCollectionIsReadBack() {
+        Order order = newOrder();
+
+        Doco doco = new Doco();
+        Order read = doco.fromDocument(doco.toDocument(order), Order.class);
+        assertEquals(LinkedList.class, read.lines.getClass());
+        assertEquals(2, read.lines.size());
+        assertEquals("sku-1", read.lines.get(0).sku);
+        assertEquals(3, read.lines.get(0).quantity);
+        assertEquals(new Date(1000L), read.lines.get(0).shipped);
+        assertEquals("sku-2", read.lines.get(1).sku);
+        assertEquals(1, read.lines.get(1).quantity);
+        assertEquals(new Date(2000L), read.lines.get(1).shipped);
+        assertNull(read.tags);
+    }
+
+    @Test
+    public void testMissingValuesKeepTheElementsAligned() {
+        Order order = new Order();
+        order.id = "2";
+        order.lines = new ArrayList<Line>(Arrays.asList(new Line("a", 1, null), new Line("b", 2, new Date(2000L))));
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(order);
+        assertEquals(2, document.getFieldCount("Line_shipped"));
+
+        Order read = doco.fromDocument(document, Order.class);
+        assertEquals(2, read.lines.size());
+        assertEquals("a", read.lines.get(0).sku);
+        assertEquals(1, read.lines.get(0).quantity);
+        assertNull(read.lines.get(0).shipped);
+        assertEquals("b", read.lines.get(1).sku);
+        assertEquals(2, read.lines.get(1).quantity);
+        assertEquals(new Date(2000L), read.lines.get(1).shipped);
+    }
+
+    private static Order newOrder() {
+        Order order = new Order();
+        order.id = "1";
+        order.lines = new ArrayList<Line>(Arrays.asList(new Line("sku-1", 3, new Date(1000L)), new Line("sku-2", 1,
+            new Date(2000L))));
+        order.tags = new Tag[] { new Tag("gift"), new Tag("express") };
+        return order;
+    }
+
+    @DocumentIndex
+    static class Order {
+        @DocumentId
+        String id;
+        @DocumentEmbed(type = DocumentCollectionType.LINKEDLIST, readBack = true)
+        List<Line> lines;
+        @DocumentEmbed
+        Tag[] tags;
+    }
+
+    static class Line {
+        @DocumentField(type = FieldType.ATOM)
+        String sku;
+        @DocumentField(type = FieldType.NUMBER)
+        int quantity;
+        @DocumentField(type = FieldType.DATE)
+        Date shipped;
+
+        Line() {
+        }
+
+        Line(String sku, int quantity, Date shipped) {
+            this.sku = sku;
+            this.quantity = quantity;
+            this.shipped = shipped;
+        }
+    }
+
+    static class Tag {
+        @DocumentField
+        String label;
+
+        Tag(String label) {
+            this.label = label;
+        }
+    }
+
     static class A {
         public A(String text, long number, B bRef) {
             this.text = text;
@@ -0,0 +1,133 @@
+package com.vidolima.doco;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.GetRequest;
+import com.google.appengine.api.search.StatusCode;
+import com.google.appengine.api.search.checkers.SearchApiLimits;
+import com.google.common.base.Strings;
+import com.googlecode.objectify.Key;
+import com.vidolima.doco.LimitViolation.Action;
+import com.vidolima.doco.LimitViolation.Kind;
+import com.vidolima.doco.exception.DocumentLimitException;
+import com.vidolima.doco.utils.AppEngineTestUtils;
+
+public class DocumentLimitsTest {
+
+    private AppEngineTestUtils testUtils = new AppEngineTestUtils();
+
+    @Before
+    public void setupTests() {
+        testUtils.setUp();
+    }
+
+    @After
+    public void teardownTests() {
+        testUtils.tearDown();
+    }
+
+    @Test
+    public void testInvalidDocumentIsRejected() {
+        Foo foo = newFoo(1);
+        foo.setAtomFieldTest(Strings.repeat("a", SearchApiLimits.MAXIMUM_ATOM_LENGTH + 1));
+        foo.setNumberFieldTest(3e9);
+
+        try {
+            new Doco().toDocument(foo);
+            Assert.fail("The document should have been rejected.");
+        } catch (DocumentLimitException e) {
+            List<LimitViolation> violations = e.getViolations();
+            Assert.assertEquals(2, violations.size());
+            Assert.assertEquals(Kind.ATOM_TOO_LONG, violations.get(0).getKind());
+            Assert.assertEquals("atomFieldTest", violations.get(0).getFieldName());
+            Assert.assertEquals(Kind.NUMBER_OUT_OF_RANGE, violations.get(1).getKind());
+            Assert.assertEquals(Action.REJECTED, violations.get(1).getAction());
+        }
+    }
+
+    @Test
+    public void testFieldsAreTruncatedOrDropped() {
+        Foo foo = newFoo(1);
+        foo.setTextFieldTest(Strings.repeat("t", SearchApiLimits.MAXIMUM_TEXT_LENGTH + 10));
+        foo.setAtomFieldTest(Strings.repeat("a", SearchApiLimits.MAXIMUM_ATOM_LENGTH + 1));
+        Document truncated = Doco.newBuilder().limitPolicy(LimitPolicy.TRUNCATE).build().toDocument(foo);
+        String text = truncated.getOnlyField("justText").getText();
+        Assert.assertTrue(text.length() > 0);
+        Assert.assertTrue(text.length() < SearchApiLimits.MAXIMUM_TEXT_LENGTH);
+        Assert.assertEquals(0, truncated.getFieldCount("atomFieldTest"));
+
+        Document dropped = Doco.newBuilder().limitPolicy(LimitPolicy.DROP_FIELD).build().toDocument(foo);
+        Assert.assertEquals(0, dropped.getFieldCount("justText"));
+        Assert.assertEquals(0, dropped.getFieldCount("atomFieldTest"));
+        Assert.assertEquals("1", dropped.getId());
+    }
+
+    @Test
+    public void testViolationsAreRecorded() throws Exception {
+        Foo foo = newFoo(1);
+        foo.setTextFieldTest(Strings.repeat("t", SearchApiLimits.MAXIMUM_TEXT_LENGTH + 10));
+        foo.setAtomFieldTest(Strings.repeat("a", SearchApiLimits.MAXIMUM_ATOM_LENGTH + 1));
+
+        DocumentLimits limits = new DocumentLimits(LimitPolicy.TRUNCATE);
+        new DocumentParser().parseDocument(foo, null, Foo.class, PrefetchedRefs.NONE, limits);
+        Assert.assertFalse(limits.isRejected());
+        Assert.assertTrue(limits.getEstimatedBytes() <= SearchApiLimits.MAXIMUM_DOCUMENT_LENGTH);
+
+        Map<Kind, Action> actions = new HashMap<Kind, Action>();
+        for (LimitViolation violation : limits.getViolations()) {
+            if (!actions.containsKey(violation.getKind())) {
+                actions.put(violation.getKind(), violation.getAction());
+            }
+        }
+        Assert.assertEquals(Action.TRUNCATED, actions.get(Kind.TEXT_TOO_LONG));
+        Assert.assertEquals(Action.TRUNCATED, actions.get(Kind.DOCUMENT_TOO_LARGE));
+        Assert.assertEquals(Action.DROPPED, actions.get(Kind.ATOM_TOO_LONG));
+    }
+
+    @Test
+    public void testPutAllSkipsRejectedDocuments() {
+        Foo invalid = newFoo(2);
+        invalid.setTextFieldTest(Strings.repeat("t", SearchApiLimits.MAXIMUM_TEXT_LENGTH + 1));
+        Doco doco = new Doco();
+
+        List<PutResult> results = doco.putAll(Arrays.asList(newFoo(1), invalid, newFoo(3)), null);
+        Assert.assertEquals(StatusCode.OK, results.get(0).getOperationResult().getCode());
+        Assert.assertEquals(StatusCode.INVALID_REQUEST, results.get(1).getOperationResult().getCode());
+        Assert.assertTrue(results.get(1).isRejected());
+        Assert.assertEquals("2", results.get(1).getDocumentId());
+        Assert.assertEquals(Kind.TEXT_TOO_LONG, results.get(1).getLimitViolations().get(0).getKind());
+        Assert.assertEquals(StatusCode.OK, results.get(2).getOperationResult().getCode());
+        Assert.assertEquals(2, doco.getIndex(Foo.class).getRange(GetRequest.newBuilder()).getResults().size());
+
+        PutResult truncated = Doco.newBuilder().limitPolicy(LimitPolicy.TRUNCATE).build().putAll(Arrays.asList(invalid), null).get(0);
+        Assert.assertEquals(StatusCode.OK, truncated.getOperationResult().getCode());
+        Assert.assertFalse(truncated.isRejected());
+        Assert.assertEquals(Action.TRUNCATED, truncated.getLimitViolations().get(0).getAction());
+    }
+
+    @Test
+    public void testUtf8Truncation() {
+        String value = "a\u00e9\u20ac\ud83d\ude00";
+        Assert.assertEquals(10, DocumentLimits.utf8Length(value));
+        Assert.assertEquals("a\u00e9", DocumentLimits.truncate(value, 5));
+        Assert.assertEquals("a\u00e9\u20ac", DocumentLimits.truncate(value, 9));
+        Assert.assertEquals(value, DocumentLimits.truncate(value, 10));
+    }
+
+    private static Foo newFoo(int code) {
+        Foo foo = new Foo();
+        foo.setCode(code);
+        foo.setTextFieldTest("text");
+        return foo;
+    }
+}
@@ -2,6 +2,14 @@ package com.vidolima.doco;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -9,12 +17,15 @@ import org.junit.Test;
 import com.google.appengine.api.datastore.GeoPt;
 import com.google.appengine.api.search.Document;
 import com.googlecode.objectify.Key;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyFactory;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Ref;
 import com.googlecode.objectify.annotation.Entity;
 import com.googlecode.objectify.annotation.Id;
 import com.vidolima.doco.annotation.DocumentField;
 import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
 import com.vidolima.doco.annotation.DocumentRef;
 import com.vidolima.doco.annotation.FieldType;
 import com.vidolima.doco.utils.AppEngineTestUtils;
@@ -26,6 +37,8 @@ public class DocumentRefTest {
     static {
         ObjectifyService.register(B.class);
         ObjectifyService.register(C.class);
+        ObjectifyService.register(D.class);
+        ObjectifyService.register(N.class);
     }
 
     @Before
@@ -61,6 +74,211 @@ public class DocumentRefTest {
         assertEquals(cId, document.getOnlyField("B_C_cId").getText());
     }
 
+    @Test
+    public void testRefsOfBatchAreLoadedOnce() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("shared C")).now();
+        Key<B> b1Key = ObjectifyService.ofy().save().entity(new B(1L, Ref.create(cKey))).now();
+        Key<B> b2Key = ObjectifyService.ofy().save().entity(new B(2L, Ref.create(cKey))).now();
+        List<A> batch = Arrays.asList(new A("a1", 1L, Ref.create(b1Key)), new A("a2", 2L, Ref.create(b1Key)),
+            new A("a3", 3L, Ref.create(b2Key)));
+
+        PrefetchedRefs loaded = new RefPrefetcher(MappingRegistry.getDefault()).prefetch(batch);
+        // both B entities and the C entity they share
+        assertEquals(3, loaded.getEntityCount());
+        assertEquals(1L, ((B) loaded.getEntity(b1Key)).number);
+        assertEquals("shared C", ((C) loaded.getEntity(cKey)).cId);
+
+        List<Document> documents = new Doco().toDocuments(batch);
+        assertEquals(1L, documents.get(1).getOnlyField("B_number").getNumber().longValue());
+        assertEquals(2L, documents.get(2).getOnlyField("B_number").getNumber().longValue());
+        assertEquals("shared C", documents.get(2).getOnlyField("B_C_cId").getText());
+    }
+
+    @Test
+    public void testCachedFragmentsAreReused() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("cached C")).now();
+        Key<B> bKey = ObjectifyService.ofy().save().entity(new B(7L, Ref.create(cKey))).now();
+        FragmentCache cache = new FragmentCache(100);
+        Doco doco = Doco.newBuilder().fragmentCache(cache).build();
+
+        doco.toDocument(new A("a1", 1L, Ref.create(bKey)));
+        assertEquals(2, cache.size());
+
+        // the fields of the deleted entities are still cached
+        ObjectifyService.ofy().delete().keys(bKey, cKey).now();
+        List<Document> documents = doco.toDocuments(Arrays.asList(new A("a2", 2L, Ref.create(bKey))));
+        assertEquals(7L, documents.get(0).getOnlyField("B_number").getNumber().longValue());
+        assertEquals("cached C", documents.get(0).getOnlyField("B_C_cId").getText());
+
+        // B includes the fields of C, so it goes with it
+        cache.invalidate(cKey);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFragmentsEvictedDuringBatchAreNotLoaded() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("kept C")).now();
+        Key<B> b1Key = ObjectifyService.ofy().save().entity(new B(8L, Ref.create(cKey))).now();
+        Key<B> b2Key = ObjectifyService.ofy().save().entity(new B(9L, Ref.create(cKey))).now();
+        FragmentCache cache = new FragmentCache(2);
+        Doco doco = Doco.newBuilder().fragmentCache(cache).build();
+        doco.toDocument(new A("a1", 1L, Ref.create(b1Key)));
+        // only the cached fields of B1 remain
+        ObjectifyService.ofy().delete().key(b1Key).now();
+
+        // building the fields of B2 evicts the ones of B1 before the second document is built
+        List<Document> documents = doco.toDocuments(Arrays.asList(new A("a2", 2L, Ref.create(b2Key)),
+            new A("a3", 3L, Ref.create(b1Key))));
+        assertFalse(cache.contains(b1Key));
+        assertEquals(9L, documents.get(0).getOnlyField("B_number").getNumber().longValue());
+        assertEquals(8L, documents.get(1).getOnlyField("B_number").getNumber().longValue());
+        assertEquals("kept C", documents.get(1).getOnlyField("B_C_cId").getText());
+    }
+
+    @Test
+    public void testFragmentsAreEvicted() {
+        ClassMapping mapping = MappingRegistry.getDefault().getMapping(C.class);
+        Key<C> key1 = Key.create(C.class, "1");
+        Key<C> key2 = Key.create(C.class, "2");
+        List<com.google.appengine.api.search.Field> fields = Collections.emptyList();
+        Set<Key<?>> none = Collections.emptySet();
+
+        FragmentCache lru = new FragmentCache(1);
+        lru.put(key1, "C", false, mapping, fields, none);
+        lru.put(key2, "C", false, mapping, fields, none);
+        assertNull(lru.get(key1, "C", false, mapping));
+        assertNotNull(lru.get(key2, "C", false, mapping));
+        assertNull(lru.get(key2, "C", true, mapping));
+        assertNull(lru.get(key2, "C", false, MappingRegistry.getDefault().getMapping(B.class)));
+
+        FragmentCache expiring = new FragmentCache(10, 1, TimeUnit.NANOSECONDS);
+        expiring.put(key1, "C", false, mapping, fields, none);
+        assertNull(expiring.get(key1, "C", false, mapping));
+    }
+
+    @Test
+    public void testRefsAreLoadedWithTheObjectifyFactory() {
+        final List<Objectify> begun = new ArrayList<Objectify>();
+        ObjectifyFactory factory = new ObjectifyFactory() {
+            @Override
+            public Objectify begin() {
+                Objectify ofy = super.begin();
+                begun.add(ofy);
+                return ofy;
+            }
+        };
+        factory.register(B.class);
+        factory.register(C.class);
+
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("factory C")).now();
+        Key<B> bKey = ObjectifyService.ofy().save().entity(new B(11L, Ref.create(cKey))).now();
+
+        Doco doco = Doco.newBuilder().objectifyFactory(factory).build();
+        Document document = doco.toDocument(new A("text", 1L, Ref.create(bKey)));
+        assertEquals("factory C", document.getOnlyField("B_C_cId").getText());
+        assertFalse(begun.isEmpty());
+    }
+
+    @Test
+    public void testCyclesOfRefsStop() {
+        Key<N> n1Key = Key.create(N.class, 1L);
+        Key<N> n2Key = Key.create(N.class, 2L);
+        N n1 = new N(1L, 10L, Ref.create(n2Key));
+        ObjectifyService.ofy().save().entities(n1, new N(2L, 20L, Ref.create(n1Key))).now();
+
+        FragmentCache cache = new FragmentCache(100);
+        for (Doco doco : Arrays.asList(new Doco(), Doco.newBuilder().fragmentCache(cache).build())) {
+            for (int i = 0; i < 2; i++) {
+                Document document = doco.toDocument(n1);
+                assertEquals(10L, document.getOnlyField("value").getNumber().longValue());
+                assertEquals(20L, document.getOnlyField("N_value").getNumber().longValue());
+                assertEquals(10L, document.getOnlyField("N_N_value").getNumber().longValue());
+                // 2 is already on the chain 1 -> 2 -> 1
+                assertEquals(0, document.getFieldCount("N_N_N_value"));
+            }
+        }
+
+        Document document = Doco.newBuilder().fragmentCache(cache).build().toDocument(
+            ObjectifyService.ofy().load().key(n2Key).now());
+        assertEquals(10L, document.getOnlyField("N_value").getNumber().longValue());
+        assertEquals(20L, document.getOnlyField("N_N_value").getNumber().longValue());
+        assertEquals(0, document.getFieldCount("N_N_N_value"));
+    }
+
+    @Test
+    public void testDependentsAreReindexed() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("indexed C")).now();
+        B b = new B(5L, Ref.create(cKey));
+        Key<B> bKey = ObjectifyService.ofy().save().entity(b).now();
+        D d1 = new D(1L, Ref.create(bKey));
+        D d2 = new D(2L, Ref.create(bKey));
+        ObjectifyService.ofy().save().entities(d1, d2).now();
+
+        InMemoryDependencyIndex dependencyIndex = new InMemoryDependencyIndex();
+        Doco doco = Doco.newBuilder().dependencyIndex(dependencyIndex).build();
+        doco.putAll(Arrays.asList(d1, d2));
+        assertEquals(2, dependencyIndex.getDependents(bKey).size());
+        assertEquals(2, dependencyIndex.getDependents(cKey).size());
+
+        b.geoPt = new GeoPt(-1f, -2f);
+        ObjectifyService.ofy().save().entity(b).now();
+        ObjectifyService.ofy().delete().entity(d2).now();
+
+        ReindexPage page = doco.reindexDependents(bKey, null, 1);
+        assertEquals(1, page.getResults().size());
+        assertEquals("1", page.getResults().get(0).getDocumentId());
+        assertTrue(page.hasMore());
+        page = doco.reindexDependents(bKey, page.getCursor(), 1);
+        assertTrue(page.getResults().isEmpty());
+        assertEquals(1, page.getProcessedCount());
+        assertFalse(page.hasMore());
+        assertEquals(1, dependencyIndex.size());
+
+        Document document = doco.getIndex(D.class).get("1");
+        assertEquals(-1, document.getOnlyField("B_geoPt").getGeoPoint().getLatitude(), 0.0001);
+    }
+
+    @Test
+    public void testReindexPagesSkipNoDependent() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("paged C")).now();
+        Key<B> bKey = ObjectifyService.ofy().save().entity(new B(6L, Ref.create(cKey))).now();
+        List<D> ds = new ArrayList<D>();
+        for (long id = 1; id <= 5; id++) {
+            ds.add(new D(id, Ref.create(bKey)));
+        }
+        ObjectifyService.ofy().save().entities(ds).now();
+
+        InMemoryDependencyIndex dependencyIndex = new InMemoryDependencyIndex();
+        Doco doco = Doco.newBuilder().dependencyIndex(dependencyIndex).build();
+        doco.putAll(ds);
+        // the first dependent of the first page no longer exists
+        ObjectifyService.ofy().delete().entity(ds.get(0)).now();
+
+        List<String> reindexed = new ArrayList<String>();
+        int processed = 0;
+        ReindexPage page = null;
+        do {
+            page = doco.reindexDependents(bKey, page == null ? null : page.getCursor(), 2);
+            processed += page.getProcessedCount();
+            for (PutResult result : page.getResults()) {
+                reindexed.add(result.getDocumentId());
+            }
+        } while (page.hasMore());
+
+        assertEquals(5, processed);
+        assertEquals(Arrays.asList("2", "3", "4", "5"), reindexed);
+        assertEquals(4, dependencyIndex.getDependents(bKey).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDependentsWithoutObjectifyIdsAreRejected() {
+        Key<C> cKey = ObjectifyService.ofy().save().entity(new C("unloadable C")).now();
+        InMemoryDependencyIndex dependencyIndex = new InMemoryDependencyIndex();
+        dependencyIndex.record(E.class, "1", Collections.<Key<?>> singleton(cKey));
+
+        Doco.newBuilder().dependencyIndex(dependencyIndex).build().reindexDependents(cKey, null, 10);
+    }
+
     static class A {
         public A(String text, long number, Ref<B> bRef) {
             this.text = text;
@@ -87,6 +305,9 @@ public class DocumentRefTest {
         @DocumentRef(type = C.class)
         Ref<C> cRef;
 
+        B() {
+        }
+
         public B(long num, Ref<C> cRef) {
             this.number = num;
             this.cRef = cRef;
@@ -100,8 +321,55 @@ public class DocumentRefTest {
         @Id
         String cId;
 
+        C() {
+        }
+
         public C(String id) {
             this.cId = id;
         }
     }
+
+    @Entity
+    @DocumentIndex
+    static class D {
+        @Id
+        @DocumentId
+        Long id;
+        @DocumentRef(type = B.class)
+        Ref<B> bRef;
+
+        D() {
+        }
+
+        D(Long id, Ref<B> bRef) {
+            this.id = id;
+            this.bRef = bRef;
+        }
+    }
+
+    @Entity
+    static class N {
+        @Id
+        @DocumentId
+        Long id;
+        @DocumentField(type = FieldType.NUMBER)
+        long value;
+        @DocumentRef(type = N.class)
+        Ref<N> next;
+
+        N() {
+        }
+
+        N(Long id, long value, Ref<N> next) {
+            this.id = id;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    @DocumentIndex
+    static class E {
+        @DocumentId
+        Integer id;
+    }
 }
@@ -0,0 +1,67 @@
+package com.vidolima.doco;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FieldAccessorTest {
+
+    static class Numbers {
+        private int intValue;
+        private double doubleValue;
+        private Long boxedValue;
+        private String text;
+        private final long finalValue = 7L;
+    }
+
+    private static FieldAccessor accessor(String name) throws Exception {
+        java.lang.reflect.Field field = Numbers.class.getDeclaredField(name);
+        field.setAccessible(true);
+        return FieldAccessor.create(field);
+    }
+
+    @Test
+    public void testPrimitiveAccessors() throws Exception {
+        Numbers numbers = new Numbers();
+
+        FieldAccessor intAccessor = accessor("intValue");
+        intAccessor.setDouble(numbers, 42d);
+        Assert.assertEquals(42, numbers.intValue);
+        Assert.assertEquals(42d, intAccessor.getDouble(numbers), 0d);
+        Assert.assertEquals(Integer.valueOf(42), intAccessor.get(numbers));
+
+        FieldAccessor doubleAccessor = accessor("doubleValue");
+        doubleAccessor.set(numbers, Double.valueOf(1.5d));
+        Assert.assertEquals(1.5d, numbers.doubleValue, 0d);
+        Assert.assertEquals(1.5d, doubleAccessor.getDouble(numbers), 0d);
+    }
+
+    @Test
+    public void testObjectAccessors() throws Exception {
+        Numbers numbers = new Numbers();
+
+        FieldAccessor boxedAccessor = accessor("boxedValue");
+        boxedAccessor.set(numbers, Long.valueOf(3L));
+        Assert.assertEquals(Long.valueOf(3L), numbers.boxedValue);
+        Assert.assertEquals(3d, boxedAccessor.getDouble(numbers), 0d);
+
+        FieldAccessor textAccessor = accessor("text");
+        textAccessor.set(numbers, "doco");
+        Assert.assertEquals("doco", textAccessor.get(numbers));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetWrongType() throws Exception {
+        accessor("text").set(new Numbers(), Integer.valueOf(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetNullPrimitive() throws Exception {
+        accessor("intValue").set(new Numbers(), null);
+    }
+
+    @Test
+    public void testFinalFieldIsRead() throws Exception {
+        FieldAccessor finalAccessor = accessor("finalValue");
+        Assert.assertEquals(7L, finalAccessor.getLong(new Numbers()));
+    }
+}
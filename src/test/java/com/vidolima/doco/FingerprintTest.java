@@ -0,0 +1,103 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.GetRequest;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.StatusCode;
+import com.vidolima.doco.utils.AppEngineTestUtils;
+
+public class FingerprintTest {
+
+    private AppEngineTestUtils testUtils = new AppEngineTestUtils();
+
+    @Before
+    public void setupTests() {
+        testUtils.setUp();
+    }
+
+    @After
+    public void teardownTests() {
+        testUtils.tearDown();
+    }
+
+    @Test
+    public void testFingerprintIsStable() {
+        Foo foo = newFoo(1, "text");
+        Doco doco = new Doco();
+        String fingerprint = DocumentFingerprint.of(doco.toDocument(foo));
+
+        Assert.assertEquals(fingerprint, DocumentFingerprint.of(doco.toDocument(newFoo(1, "text"))));
+        Assert.assertFalse(fingerprint.equals(DocumentFingerprint.of(doco.toDocument(newFoo(1, "other")))));
+        Assert.assertFalse(fingerprint.equals(DocumentFingerprint.of(doco.toDocument(newFoo(2, "text")))));
+
+        Document ab = Document.newBuilder().setId("1").addField(Field.newBuilder().setName("a").setAtom("x"))
+            .addField(Field.newBuilder().setName("b").setNumber(1)).build();
+        Document ba = Document.newBuilder().setId("1").addField(Field.newBuilder().setName("b").setNumber(1))
+            .addField(Field.newBuilder().setName("a").setAtom("x")).build();
+        Assert.assertEquals(DocumentFingerprint.of(ab), DocumentFingerprint.of(ba));
+    }
+
+    @Test
+    public void testUnchangedDocumentsAreSkipped() {
+        Doco doco = new Doco();
+        FingerprintStore store = new LruFingerprintStore(100);
+        List<Foo> foos = new ArrayList<Foo>();
+        for (int i = 0; i < 5; i++) {
+            foos.add(newFoo(i, "text" + i));
+        }
+
+        for (PutResult result : doco.putAll(foos, store)) {
+            Assert.assertFalse(result.isSkipped());
+            Assert.assertEquals(StatusCode.OK, result.getOperationResult().getCode());
+            Assert.assertNotNull(result.getFingerprint());
+        }
+
+        foos.get(3).setTextFieldTest("changed");
+        List<PutResult> results = doco.putAll(foos, store);
+        for (int i = 0; i < results.size(); i++) {
+            Assert.assertEquals(i != 3, results.get(i).isSkipped());
+            Assert.assertEquals(String.valueOf(i), results.get(i).getDocumentId());
+        }
+
+        Document stored = doco.getIndex(Foo.class).get("3");
+        Assert.assertEquals("changed", stored.getOnlyField("justText").getText());
+        Assert.assertEquals(DocumentFingerprint.of(doco.toDocument(foos.get(3))), results.get(3).getFingerprint());
+    }
+
+    @Test
+    public void testObjectifyStoreKeepsFingerprints() {
+        Doco doco = new Doco();
+        Index index = doco.getIndex(Foo.class);
+        FingerprintStore store = new ObjectifyFingerprintStore();
+
+        Assert.assertTrue(store.getAll(index, Arrays.asList("1")).isEmpty());
+        store.putAll(index, Collections.singletonMap("1", "abc"));
+        Assert.assertEquals(Collections.singletonMap("1", "abc"), store.getAll(index, Arrays.asList("1", "2")));
+
+        List<PutResult> results = doco.putAll(Arrays.asList(newFoo(1, "text")), store);
+        Assert.assertFalse(results.get(0).isSkipped());
+        Assert.assertTrue(doco.putAll(Arrays.asList(newFoo(1, "text")), store).get(0).isSkipped());
+
+        store.removeAll(index, Arrays.asList("1"));
+        Assert.assertTrue(store.getAll(index, Arrays.asList("1")).isEmpty());
+        Assert.assertEquals(1, index.getRange(GetRequest.newBuilder()).getResults().size());
+    }
+
+    private static Foo newFoo(int code, String text) {
+        Foo foo = new Foo();
+        foo.setCode(code);
+        foo.setTextFieldTest(text);
+        return foo;
+    }
+}
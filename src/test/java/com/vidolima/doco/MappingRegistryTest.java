@@ -0,0 +1,100 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.IllegalAnnotationDeclarationException;
+
+public class MappingRegistryTest {
+
+    @Test
+    public void testMappingIsBuiltOnce() {
+        MappingRegistry registry = new MappingRegistry();
+        Assert.assertSame(registry.getMapping(Foo.class), registry.getMapping(Foo.class));
+    }
+
+    @Test
+    public void testMappingResolvesNamesAndTypes() {
+        ClassMapping mapping = new MappingRegistry().getMapping(Foo.class);
+
+        Assert.assertEquals(1, mapping.getIdFields().size());
+        Assert.assertEquals("code", mapping.getIdFields().get(0).getName());
+
+        List<String> names = new ArrayList<String>();
+        FieldType previous = null;
+        for (FieldMapping field : mapping.getFields()) {
+            names.add(field.getName());
+            // fields are grouped by FieldType
+            if (previous != null) {
+                Assert.assertTrue(previous.ordinal() <= field.getFieldType().ordinal());
+            }
+            previous = field.getFieldType();
+        }
+        Assert.assertTrue(names.contains("txtName"));
+        Assert.assertTrue(names.contains("justText"));
+        Assert.assertTrue(names.contains(Foo.ARRAY_LIST_TEST));
+    }
+
+    @Test
+    public void testMappingOfSubClassContainsSuperClassFields() {
+        ClassMapping mapping = new MappingRegistry().getMapping(Bar.class);
+
+        List<String> names = new ArrayList<String>();
+        for (FieldMapping field : mapping.getFields()) {
+            names.add(field.getName());
+        }
+        Assert.assertTrue(names.contains("subClassNumberField"));
+        Assert.assertTrue(names.contains("atomFieldTest"));
+        Assert.assertEquals(1, mapping.getIdFields().size());
+    }
+
+    @Test
+    public void testSubclassesAreKnownByDiscriminator() {
+        MappingRegistry registry = new MappingRegistry();
+        Assert.assertNull(registry.getSubclass(Foo.class, "Bar"));
+
+        Assert.assertEquals("Bar", registry.getMapping(Bar.class).getDiscriminator());
+        Assert.assertEquals(Bar.class, registry.getSubclass(Foo.class, "Bar"));
+        Assert.assertNull(registry.getSubclass(Foo.class, "Baz"));
+    }
+
+    @Test
+    public void testSubclassesCompiledWithTheClassAreRegisteredWithIt() {
+        MappingRegistry registry = new MappingRegistry();
+
+        ClassMapping mapping = registry.getMapping(Foo.class);
+        Assert.assertNull(mapping.getDiscriminator());
+        Assert.assertEquals(Arrays.<Class<?>> asList(Bar.class), mapping.getSubclasses());
+        Assert.assertEquals(Bar.class, registry.getSubclass(Foo.class, "Bar"));
+    }
+
+    @Test(expected = IllegalAnnotationDeclarationException.class)
+    public void testDiscriminatorMustBeUnique() {
+        MappingRegistry registry = new MappingRegistry();
+        registry.getMapping(Circle.class);
+        registry.getMapping(Square.class);
+    }
+
+    @DocumentIndex
+    static class Shape {
+
+        @DocumentId
+        String id;
+    }
+
+    @DocumentIndexSubClass(name = "Shape")
+    static class Circle extends Shape {
+    }
+
+    @DocumentIndexSubClass(name = "Shape", discriminator = "Circle")
+    static class Square extends Shape {
+    }
+}
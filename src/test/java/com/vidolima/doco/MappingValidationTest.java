@@ -0,0 +1,138 @@
+package com.vidolima.doco;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.googlecode.objectify.Ref;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentEmbed;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.DocumentIndexSubClass;
+import com.vidolima.doco.annotation.DocumentRef;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.MappingValidationException;
+
+public class MappingValidationTest {
+
+    @Test
+    public void testValidClassesAreRegistered() {
+        Doco.register(Foo.class, Bar.class, Valid.class);
+        Doco.register(Foo.class);
+    }
+
+    @Test
+    public void testAllProblemsAreReported() {
+        try {
+            Doco.register(Foo.class, Invalid.class, InvalidSubClass.class, NotIndexed.class);
+            Assert.fail("The mappings should be invalid.");
+        } catch (MappingValidationException e) {
+            List<String> problems = e.getProblems();
+            assertReported(problems, Invalid.class.getName() + ": no @DocumentId");
+            assertReported(problems, Invalid.class.getName() + ".list: a HASHSET can not be assigned");
+            assertReported(problems, Invalid.class.getName() + ": the document field 'Target_name' is defined by both");
+            assertReported(problems, Target.class.getName() + ".date: a DocumentField typed as DATE");
+            assertReported(problems, Base.class.getName() + ".count: a DocumentField typed as TEXT");
+            assertReported(problems, Cyclic.class.getName() + ": cyclic");
+            assertReported(problems, NotIndexed.class.getName() + ": there is no @DocumentIndex");
+            Assert.assertEquals(problems.toString(), 7, problems.size());
+            for (String problem : problems) {
+                Assert.assertFalse(problem, problem.startsWith(Foo.class.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void testPackageIsScanned() {
+        List<Class<?>> classes = ClassScanner.findIndexedClasses("com.vidolima.doco", getClass().getClassLoader());
+        Assert.assertTrue(classes.contains(Foo.class));
+        Assert.assertTrue(classes.contains(Invalid.class));
+        Assert.assertFalse(classes.contains(Target.class));
+        Assert.assertTrue(ClassScanner.findIndexedClasses("com.vidolima.doco.utils", getClass().getClassLoader())
+            .isEmpty());
+
+        try {
+            Doco.registerPackage("com.vidolima.doco");
+            Assert.fail("The package has invalid mappings.");
+        } catch (MappingValidationException e) {
+            assertReported(e.getProblems(), Invalid.class.getName());
+            assertReported(e.getProblems(), Base.class.getName());
+        }
+    }
+
+    private static void assertReported(List<String> problems, String prefix) {
+        for (String problem : problems) {
+            if (problem.startsWith(prefix)) {
+                return;
+            }
+        }
+        Assert.fail(prefix + " was not reported in " + problems);
+    }
+
+    @DocumentIndex
+    static class Valid {
+
+        @DocumentId
+        private String id;
+
+        @DocumentCollection(type = DocumentCollectionType.HASHSET, fieldType = FieldType.ATOM)
+        private java.util.Set<String> tags;
+
+        @DocumentEmbed
+        private DocumentEmbedTest.B b;
+    }
+
+    @DocumentIndex
+    static class Invalid {
+
+        @DocumentCollection(type = DocumentCollectionType.HASHSET)
+        private java.util.List<String> list;
+
+        @DocumentRef(type = Target.class)
+        private Ref<Target> ref;
+
+        @DocumentField(name = "Target_name")
+        private String clash;
+
+        @DocumentEmbed
+        private Cyclic cyclic;
+    }
+
+    static class Target {
+
+        @DocumentField
+        private String name;
+
+        @DocumentField(type = FieldType.DATE)
+        private String date;
+    }
+
+    static class Cyclic {
+
+        @DocumentEmbed
+        private Cyclic next;
+    }
+
+    static class Base {
+
+        @DocumentId
+        private String id;
+
+        @DocumentField(type = FieldType.TEXT)
+        private Integer count;
+    }
+
+    @DocumentIndexSubClass
+    static class InvalidSubClass extends Base {
+
+        @DocumentField
+        private String name;
+    }
+
+    static class NotIndexed {
+    }
+}
@@ -0,0 +1,119 @@
+package com.vidolima.doco;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.GeoPt;
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.GeoPoint;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.FieldType;
+
+public class MultiValuedFieldTest {
+
+    @Test
+    public void testMultiValuedFieldsRoundTrip() {
+        Measured measured = newMeasured();
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(measured);
+        Assert.assertEquals(3, document.getFieldCount("weights"));
+        Assert.assertEquals(2, document.getFieldCount("timestamps"));
+        Assert.assertEquals(2, document.getFieldCount("locations"));
+        Assert.assertEquals(2, document.getFieldCount("instants"));
+        Assert.assertEquals(4, document.getFieldCount("counts"));
+
+        Measured read = doco.fromDocument(document, Measured.class);
+        Assert.assertEquals(measured.weights, read.weights);
+        Assert.assertEquals(measured.timestamps, read.timestamps);
+        Assert.assertEquals(measured.locations, read.locations);
+        Assert.assertEquals(measured.instants, read.instants);
+        Assert.assertArrayEquals(measured.counts, read.counts);
+        Assert.assertArrayEquals(measured.ids, read.ids);
+        Assert.assertArrayEquals(measured.scores, read.scores, 0);
+        Assert.assertNull(read.ratios);
+    }
+
+    @Test
+    public void testNullValuesAreSkipped() {
+        Measured measured = newMeasured();
+        measured.weights.add(1, null);
+
+        Document document = new Doco().toDocument(measured);
+        Assert.assertEquals(3, document.getFieldCount("weights"));
+    }
+
+    @Test
+    public void testRepeatedNumbersAndDatesAreStoredAsAtoms() {
+        Document document = new Doco().toDocument(newMeasured());
+
+        List<String> counts = new ArrayList<String>();
+        for (Field field : document.getFields("counts")) {
+            Assert.assertEquals(Field.FieldType.ATOM, field.getType());
+            counts.add(field.getAtom());
+        }
+        Assert.assertEquals(Arrays.asList("4", "3", "2", "1"), counts);
+        Assert.assertEquals("3000000000", document.getOnlyField("ids").getAtom());
+        Assert.assertEquals("1970-01-01T00:00:01Z", document.getFields("timestamps").iterator().next().getAtom());
+        Assert.assertEquals(Field.FieldType.GEO_POINT, document.getFields("locations").iterator().next().getType());
+    }
+
+    private static Measured newMeasured() {
+        Measured measured = new Measured();
+        measured.id = "1";
+        measured.weights = new ArrayList<Double>(Arrays.asList(0.5, 1.5, 2.0));
+        measured.timestamps = new ArrayList<Date>(Arrays.asList(new Date(1000L), new Date(2000L)));
+        measured.locations = new HashSet<GeoPt>(Arrays.asList(new GeoPt(1f, 2f), new GeoPt(-3f, 4f)));
+        measured.instants = new ArrayList<Instant>(Arrays.asList(Instant.ofEpochMilli(5L), Instant.ofEpochMilli(6L)));
+        measured.counts = new int[] { 4, 3, 2, 1 };
+        measured.ids = new long[] { 3000000000L };
+        measured.scores = new double[] { 0.25, -0.75 };
+        return measured;
+    }
+
+    @DocumentIndex
+    static class Measured {
+
+        @DocumentId
+        String id;
+
+        @DocumentCollection(fieldType = FieldType.NUMBER)
+        List<Double> weights;
+
+        @DocumentCollection(fieldType = FieldType.DATE)
+        List<Date> timestamps;
+
+        @DocumentCollection(type = DocumentCollectionType.HASHSET, fieldType = FieldType.GEO_POINT)
+        Set<GeoPt> locations;
+
+        @DocumentCollection(fieldType = FieldType.DATE)
+        List<Instant> instants;
+
+        @DocumentCollection(fieldType = FieldType.NUMBER)
+        int[] counts;
+
+        @DocumentCollection(fieldType = FieldType.NUMBER)
+        long[] ids;
+
+        @DocumentCollection(fieldType = FieldType.NUMBER)
+        double[] scores;
+
+        @DocumentCollection(fieldType = FieldType.NUMBER)
+        float[] ratios;
+
+        @DocumentCollection(fieldType = FieldType.GEO_POINT)
+        List<GeoPoint> points;
+    }
+}
@@ -1,6 +1,18 @@
 package com.vidolima.doco;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentCollectionType;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
 import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.ObjectParseException;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -17,8 +29,79 @@ public class ObjectParserTest {
         Assert.assertEquals("myIndex", ObjectParser.getIndexName(FooNamed.class));
     }
 
+    @Test
+    public void testSubclassIsReadWithoutBeingRegistered() throws Exception {
+        Document document = Document.newBuilder().setId("2")
+            .addField(Field.newBuilder().setName(DocumentParser.TYPE_FIELD_NAME).setAtom("Bar"))
+            .addField(Field.newBuilder().setName("subClassNumberField").setNumber(50)).build();
+
+        Foo foo = new ObjectParser(new MappingRegistry()).parseObject(document, Foo.class);
+        Assert.assertEquals(Bar.class, foo.getClass());
+        Assert.assertEquals(50L, ((Bar) foo).getSubClassNumberField());
+    }
+
+    @Test(expected = ObjectParseException.class)
+    public void testUnknownDiscriminatorIsRejected() throws Exception {
+        Document document = Document.newBuilder().setId("3")
+            .addField(Field.newBuilder().setName(DocumentParser.TYPE_FIELD_NAME).setAtom("Baz")).build();
+
+        new ObjectParser(new MappingRegistry()).parseObject(document, Foo.class);
+    }
+
+    @Test
+    public void testFieldsAreRoutedToTheirSlots() throws Exception {
+        Document document = Document.newBuilder().setId("1")
+            .addField(Field.newBuilder().setName("tags").setAtom("a"))
+            .addField(Field.newBuilder().setName("title").setText("doco"))
+            .addField(Field.newBuilder().setName("unmapped").setText("ignored"))
+            .addField(Field.newBuilder().setName("tags").setAtom("b"))
+            .addField(Field.newBuilder().setName("repeated").setText("one"))
+            .addField(Field.newBuilder().setName("repeated").setText("two"))
+            .addField(Field.newBuilder().setName("count").setNumber(3))
+            .addField(Field.newBuilder().setName("tags").setAtom("c"))
+            .build();
+
+        Slotted slotted = new ObjectParser().parseObject(document, Slotted.class);
+        Assert.assertEquals("1", slotted.id);
+        Assert.assertEquals("doco", slotted.title);
+        Assert.assertEquals("doco", slotted.sameTitle);
+        Assert.assertNull(slotted.repeated);
+        Assert.assertEquals(3, slotted.count);
+        Assert.assertEquals(7, slotted.missing);
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b", "c")), slotted.tags);
+        Assert.assertNull(slotted.noTags);
+    }
+
     @DocumentIndex(name="myIndex")
     private static class FooNamed  {
 
     }
+
+    @DocumentIndex
+    static class Slotted {
+
+        @DocumentId
+        private String id;
+
+        @DocumentField
+        private String title;
+
+        @DocumentField(name = "title")
+        private String sameTitle;
+
+        @DocumentField
+        private String repeated;
+
+        @DocumentField(type = FieldType.NUMBER)
+        private int count;
+
+        @DocumentField(type = FieldType.NUMBER)
+        private int missing = 7;
+
+        @DocumentCollection(type = DocumentCollectionType.HASHSET, fieldType = FieldType.ATOM)
+        private Set<String> tags;
+
+        @DocumentCollection(type = DocumentCollectionType.ARRAYLIST)
+        private java.util.List<String> noTags = new java.util.ArrayList<String>();
+    }
 }
@@ -0,0 +1,102 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.vidolima.doco.exception.DocumentParseException;
+
+public class ParallelConversionTest {
+
+    private static final int SIZE = 2000;
+
+    private ForkJoinPool forkJoinPool;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        forkJoinPool = new ForkJoinPool(4);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        forkJoinPool.shutdown();
+        executor.shutdown();
+    }
+
+    private static List<Object> createObjects() {
+        List<Object> objs = new ArrayList<Object>();
+        for (int i = 0; i < SIZE; i++) {
+            Foo foo = i % 10 == 0 ? new Bar() : new Foo();
+            foo.setCode(i);
+            foo.setTextFieldTest("text " + i);
+            foo.setAtomFieldTest("atom" + i);
+            foo.setNumberFieldTest(i * 1.5d);
+            foo.setDateFieldTest(new Date(i * 86400000L));
+            foo.addToArrayListTest("item" + i);
+            objs.add(foo);
+        }
+        return objs;
+    }
+
+    private static List<String> describe(List<Document> documents) {
+        List<String> description = new ArrayList<String>();
+        for (Document document : documents) {
+            description.add(document.getId() + " " + document.getFields() + " " + document.getFacets());
+        }
+        return description;
+    }
+
+    @Test
+    public void testParallelToDocumentsMatchesSequential() {
+        Doco doco = new Doco();
+        List<Object> objs = createObjects();
+
+        List<String> sequential = describe(doco.toDocuments(objs));
+        Assert.assertEquals(SIZE, sequential.size());
+        Assert.assertEquals(sequential, describe(doco.toDocuments(objs, forkJoinPool)));
+        Assert.assertEquals(sequential, describe(doco.toDocuments(objs, executor)));
+    }
+
+    @Test
+    public void testParallelFromDocumentsMatchesSequential() {
+        Doco doco = new Doco();
+        List<Document> documents = doco.toDocuments(createObjects());
+
+        List<Foo> sequential = doco.fromDocuments(documents, Foo.class);
+        for (List<Foo> parallel : Arrays.asList(doco.fromDocuments(documents, Foo.class, forkJoinPool),
+            doco.fromDocuments(documents, Foo.class, executor))) {
+            Assert.assertEquals(SIZE, parallel.size());
+            for (int i = 0; i < SIZE; i++) {
+                Foo expected = sequential.get(i);
+                Foo actual = parallel.get(i);
+                Assert.assertEquals(Integer.valueOf(i), actual.getCode());
+                Assert.assertEquals(expected.getCode(), actual.getCode());
+                Assert.assertEquals(expected.getTextFieldTest(), actual.getTextFieldTest());
+                Assert.assertEquals(expected.getNumberFieldTest(), actual.getNumberFieldTest());
+                Assert.assertEquals(expected.getDateFieldTest(), actual.getDateFieldTest());
+                Assert.assertEquals(expected.getArrayListTest(), actual.getArrayListTest());
+            }
+        }
+    }
+
+    @Test(expected = DocumentParseException.class)
+    public void testParallelFailureIsRethrown() {
+        List<Object> objs = createObjects();
+        // a class without @DocumentId can not be converted without an explicit id
+        objs.set(SIZE - 1, new Object() {
+        });
+        new Doco().toDocuments(objs, executor);
+    }
+}
@@ -0,0 +1,108 @@
+package com.vidolima.doco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.vidolima.doco.annotation.DocumentCollection;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.PrefixField;
+import com.vidolima.doco.exception.MappingValidationException;
+
+public class PrefixFieldTest {
+
+    @Test
+    public void testPrefixesAreAddedAsAtoms() {
+        City city = new City();
+        city.id = "1";
+        city.name = "S\u00e3o Paulo";
+        city.aliases = Arrays.asList("Sampa", null);
+
+        Document document = new Doco().toDocument(city);
+        Assert.assertEquals("S\u00e3o Paulo", document.getOnlyField("name").getText());
+
+        List<String> prefixes = new ArrayList<String>();
+        for (Field field : document.getFields("name_prefix")) {
+            Assert.assertEquals(Field.FieldType.ATOM, field.getType());
+            prefixes.add(field.getAtom());
+        }
+        Assert.assertEquals(Arrays.asList("s", "sa", "sao", "p", "pa", "pau", "paul", "paulo"), prefixes);
+
+        List<String> aliases = new ArrayList<String>();
+        for (Field field : document.getFields("alias")) {
+            aliases.add(field.getAtom());
+        }
+        Assert.assertEquals(Arrays.asList("sa", "sam", "samp"), aliases);
+    }
+
+    @Test
+    public void testPrefixesAreBounded() {
+        City city = new City();
+        city.id = "1";
+        city.aliases = Arrays.asList("Mississippi River Valley", "Missouri");
+
+        Document document = new Doco().toDocument(city);
+        Assert.assertEquals(5, document.getFieldCount("alias"));
+        Assert.assertEquals(0, document.getFieldCount("name_prefix"));
+    }
+
+    @Test
+    public void testPrefixQuery() {
+        Doco doco = new Doco();
+        Assert.assertEquals("name_prefix:\"sa\" AND name_prefix:\"pa\"", doco.prefixQuery(City.class, "name",
+            "  S\u00e3  Pa"));
+        Assert.assertEquals("alias:\"samp\"", doco.prefixQuery(City.class, "aliases", "Sampaio s"));
+        Assert.assertNull(doco.prefixQuery(City.class, "aliases", "s"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrefixQueryOfUnknownField() {
+        new Doco().prefixQuery(City.class, "id", "s");
+    }
+
+    @Test
+    public void testInvalidPrefixFieldsAreReported() {
+        try {
+            Doco.register(Invalid.class);
+            Assert.fail();
+        } catch (MappingValidationException e) {
+            Assert.assertEquals(2, e.getProblems().size());
+        }
+    }
+
+    @DocumentIndex
+    static class City {
+
+        @DocumentId
+        String id;
+
+        @DocumentField
+        @PrefixField
+        String name;
+
+        @DocumentCollection
+        @PrefixField(name = "alias", minLength = 2, maxLength = 4, maxTerms = 5)
+        List<String> aliases;
+    }
+
+    @DocumentIndex
+    static class Invalid {
+
+        @DocumentId
+        String id;
+
+        @PrefixField
+        long code;
+
+        @DocumentField(name = "label")
+        @PrefixField(name = "label")
+        String name;
+    }
+}
@@ -0,0 +1,104 @@
+package com.vidolima.doco;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Query;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.utils.AppEngineTestUtils;
+
+public class ProjectionTest {
+
+    private AppEngineTestUtils testUtils = new AppEngineTestUtils();
+
+    @Before
+    public void setupTests() {
+        testUtils.setUp();
+    }
+
+    @After
+    public void teardownTests() {
+        testUtils.tearDown();
+    }
+
+    @Test
+    public void testFieldsToReturnUseDocumentNames() {
+        MappingRegistry registry = MappingRegistry.getDefault();
+        ProjectionMapping projection = Projection.of("number", "text", "bRef.cRef.cId", "bRef.geoPt").resolve(
+            registry.getMapping(DocumentEmbedTest.A.class), registry);
+
+        Assert.assertEquals(Arrays.asList("number", "text", "B_C_cId", "B_geoPt"),
+            Arrays.asList(projection.getFieldsToReturn()));
+        Assert.assertEquals(2, projection.getFields().size());
+
+        projection = Projection.of("bRef").resolve(registry.getMapping(DocumentEmbedTest.A.class), registry);
+        Assert.assertEquals(Arrays.asList("B_number", "B_geoPt", "B_C_cId"),
+            Arrays.asList(projection.getFieldsToReturn()));
+        Assert.assertTrue(projection.getFields().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnmappedFieldIsRejected() {
+        MappingRegistry registry = MappingRegistry.getDefault();
+        Projection.of("bRef.missing").resolve(registry.getMapping(DocumentEmbedTest.A.class), registry);
+    }
+
+    @Test
+    public void testOnlyProjectedFieldsAreFilled() {
+        Foo foo = new Foo();
+        foo.setCode(7);
+        foo.setAtomFieldTest("atom");
+        foo.setNumberFieldTest(12d);
+        foo.setTextFieldTest("a long text");
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(foo);
+        Foo projected = doco.fromDocument(document, Foo.class, Projection.of(ListView.class));
+
+        Assert.assertEquals(Integer.valueOf(7), projected.getCode());
+        Assert.assertEquals("atom", projected.getAtomFieldTest());
+        Assert.assertEquals(Double.valueOf(12d), projected.getNumberFieldTest());
+        Assert.assertNull(projected.getTextFieldTest());
+    }
+
+    @Test
+    public void testSearchReturnsOnlyProjectedFields() {
+        Doco doco = new Doco();
+        for (int i = 0; i < 3; i++) {
+            Foo foo = new Foo();
+            foo.setCode(i);
+            foo.setAtomFieldTest("atom" + i);
+            foo.setTextFieldTest("text" + i);
+            doco.putAll(Arrays.asList(foo));
+        }
+
+        Query query = doco.project(Query.newBuilder().build(""), Foo.class, Projection.of("atomFieldTest"));
+        Assert.assertEquals(Arrays.asList("atomFieldTest"), query.getOptions().getFieldsToReturn());
+        Document document = doco.getIndex(Foo.class).search(query).getResults().iterator().next();
+        Assert.assertEquals(0, document.getFieldCount("justText"));
+
+        int count = 0;
+        for (Foo foo : doco.stream(Query.newBuilder().build(""), Foo.class, Projection.of("atomFieldTest"))) {
+            Assert.assertEquals("atom" + foo.getCode(), foo.getAtomFieldTest());
+            Assert.assertNull(foo.getTextFieldTest());
+            count++;
+        }
+        Assert.assertEquals(3, count);
+    }
+
+    /**
+     * The fields of {@link Foo} shown in a list.
+     */
+    static class ListView {
+        @DocumentField(type = FieldType.ATOM)
+        String atomFieldTest;
+        @DocumentField(type = FieldType.NUMBER)
+        Double numberFieldTest;
+    }
+}
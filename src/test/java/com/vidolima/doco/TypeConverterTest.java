@@ -0,0 +1,222 @@
+package com.vidolima.doco;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.appengine.api.datastore.GeoPt;
+import com.google.appengine.api.search.Document;
+import com.vidolima.doco.annotation.DocumentField;
+import com.vidolima.doco.annotation.DocumentId;
+import com.vidolima.doco.annotation.DocumentIndex;
+import com.vidolima.doco.annotation.FieldType;
+import com.vidolima.doco.exception.MappingValidationException;
+import com.vidolima.doco.utils.AppEngineTestUtils;
+
+public class TypeConverterTest {
+
+    private AppEngineTestUtils testUtils = new AppEngineTestUtils();
+
+    @BeforeClass
+    public static void registerConverters() {
+        Doco.registerConverter(Money.class, FieldType.NUMBER, new TypeConverter<Money, Double>() {
+            @Override
+            public Double toSearchValue(Money value) {
+                return value.cents / 100d;
+            }
+
+            @Override
+            public Money fromSearchValue(Double searchValue) {
+                return new Money(Math.round(searchValue * 100));
+            }
+        });
+    }
+
+    @Before
+    public void setupTests() {
+        testUtils.setUp();
+    }
+
+    @After
+    public void teardownTests() {
+        testUtils.tearDown();
+    }
+
+    @Test
+    public void testBuiltInConvertersRoundTrip() {
+        Converted converted = new Converted();
+        converted.id = "1";
+        converted.price = new BigDecimal("12.5");
+        converted.exactPrice = new BigDecimal("0.10");
+        converted.created = Instant.ofEpochMilli(1400000000123L);
+        converted.day = LocalDate.of(2014, 1, 28);
+        converted.uuid = UUID.randomUUID();
+        converted.state = FooEnumTest.FOO_TWO;
+        converted.location = new GeoPt(-23.5f, -46.6f);
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(converted);
+        Assert.assertEquals(12.5, document.getOnlyField("price").getNumber(), 0);
+        Assert.assertEquals("0.10", document.getOnlyField("exactPrice").getAtom());
+        Assert.assertEquals(new Date(1400000000123L), document.getOnlyField("created").getDate());
+        Assert.assertEquals(converted.uuid.toString(), document.getOnlyField("uuid").getAtom());
+        Assert.assertEquals("FOO_TWO", document.getOnlyField("state").getText());
+        Assert.assertEquals(-23.5, document.getOnlyField("location").getGeoPoint().getLatitude(), 0);
+
+        Converted read = doco.fromDocument(document, Converted.class);
+        Assert.assertEquals(0, converted.price.compareTo(read.price));
+        Assert.assertEquals(converted.exactPrice, read.exactPrice);
+        Assert.assertEquals(converted.created, read.created);
+        Assert.assertEquals(converted.day, read.day);
+        Assert.assertEquals(converted.uuid, read.uuid);
+        Assert.assertEquals(converted.state, read.state);
+        Assert.assertEquals(converted.location, read.location);
+    }
+
+    @Test
+    public void testNullValuesAreNotConverted() {
+        Converted converted = new Converted();
+        converted.id = "1";
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(converted);
+        Assert.assertEquals(0, document.getFieldCount("uuid"));
+        Assert.assertEquals(0, document.getFieldCount("day"));
+        Assert.assertEquals("null", document.getOnlyField("state").getText());
+
+        Converted read = doco.fromDocument(document, Converted.class);
+        Assert.assertNull(read.uuid);
+        Assert.assertNull(read.day);
+        Assert.assertNull(read.state);
+    }
+
+    @Test
+    public void testRegisteredConverterIsUsed() {
+        Priced priced = new Priced();
+        priced.id = 7L;
+        priced.price = new Money(1999);
+
+        Doco doco = new Doco();
+        Document document = doco.toDocument(priced);
+        Assert.assertEquals(19.99, document.getOnlyField("price").getNumber(), 0.001);
+        Assert.assertEquals(1999, doco.fromDocument(document, Priced.class).price.cents);
+
+        Doco.register(Priced.class, Converted.class);
+    }
+
+    @Test
+    public void testBuilderConvertersBelongToTheBuiltDoco() {
+        try {
+            Doco.newBuilder().register(Rewarded.class).build();
+            Assert.fail("Points has no converter yet.");
+        } catch (MappingValidationException e) {
+            Assert.assertTrue(e.getMessage().contains("points"));
+        }
+
+        Doco doco = Doco.newBuilder().converter(Points.class, FieldType.NUMBER, new PointsConverter(10))
+            .register(Rewarded.class).build();
+        Doco.registerConverter(Points.class, FieldType.NUMBER, new PointsConverter(1));
+
+        Rewarded rewarded = new Rewarded();
+        rewarded.id = 3L;
+        rewarded.points = new Points(5);
+
+        Document document = doco.toDocument(rewarded);
+        Assert.assertEquals(50, document.getOnlyField("points").getNumber(), 0);
+        Assert.assertEquals(5, doco.fromDocument(document, Rewarded.class).points.value);
+        Assert.assertEquals(5, new Doco().toDocument(rewarded).getOnlyField("points").getNumber(), 0);
+    }
+
+    @DocumentIndex
+    static class Converted {
+
+        @DocumentId
+        private String id;
+
+        @DocumentField(type = FieldType.NUMBER)
+        private BigDecimal price;
+
+        @DocumentField(type = FieldType.ATOM)
+        private BigDecimal exactPrice;
+
+        @DocumentField(type = FieldType.DATE)
+        private Instant created;
+
+        @DocumentField(type = FieldType.DATE)
+        private LocalDate day;
+
+        @DocumentField(type = FieldType.ATOM)
+        private UUID uuid;
+
+        @DocumentField
+        private FooEnumTest state;
+
+        @DocumentField(type = FieldType.GEO_POINT)
+        private GeoPt location;
+    }
+
+    @DocumentIndex
+    static class Priced {
+
+        @DocumentId
+        private Long id;
+
+        @DocumentField(type = FieldType.NUMBER)
+        private Money price;
+    }
+
+    @DocumentIndex
+    static class Rewarded {
+
+        @DocumentId
+        private Long id;
+
+        @DocumentField(type = FieldType.NUMBER)
+        private Points points;
+    }
+
+    static final class Points {
+
+        private final int value;
+
+        Points(int value) {
+            this.value = value;
+        }
+    }
+
+    static final class PointsConverter implements TypeConverter<Points, Double> {
+
+        private final int scale;
+
+        PointsConverter(int scale) {
+            this.scale = scale;
+        }
+
+        @Override
+        public Double toSearchValue(Points value) {
+            return (double) value.value * scale;
+        }
+
+        @Override
+        public Points fromSearchValue(Double searchValue) {
+            return new Points((int) (searchValue / scale));
+        }
+    }
+
+    static final class Money {
+
+        private final long cents;
+
+        Money(long cents) {
+            this.cents = cents;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.vidolima.doco.utils;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalSearchServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 
 /**
@@ -16,7 +17,8 @@ public class AppEngineTestUtils {
     private final LocalServiceTestHelper datastoreServiceTestHelper;
 
     public AppEngineTestUtils() {
-        datastoreServiceTestHelper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+        datastoreServiceTestHelper = new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig(),
+            new LocalSearchServiceTestConfig());
     }
 
     public void setUp() {